@@ -0,0 +1,98 @@
+package distance;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Kernels using the Java Vector API, one lane per attribute. Lanes are
+ * summed separately and then reduced, so results can differ from the
+ * scalar kernels in the last bits. The edit distance diagonals use one
+ * lane per cell and give the same cells as the scalar kernel. Needs Java 16+ with
+ * --add-modules jdk.incubator.vector, and is loaded by Kernels.
+ *
+ * @author Shalisa Pattarawuttiwong
+ */
+class VectorKernels extends Kernels {
+
+	private static final VectorSpecies<Double> SPECIES = 
+			DoubleVector.SPECIES_PREFERRED;
+
+	@Override
+	double squaredEuclidean(double[] x, int xOff, 
+			double[] y, int yOff, int len) {
+		DoubleVector acc = DoubleVector.zero(SPECIES);
+		final int bound = SPECIES.loopBound(len);
+		int i = 0;
+		for (; i < bound; i += SPECIES.length()) {
+			final DoubleVector d = DoubleVector.fromArray(SPECIES, y, yOff + i)
+					.sub(DoubleVector.fromArray(SPECIES, x, xOff + i));
+			acc = d.fma(d, acc);
+		}
+		double sum = acc.reduceLanes(VectorOperators.ADD);
+		for (; i < len; i++) {
+			final double d = y[yOff + i] - x[xOff + i];
+			sum += d * d;
+		}
+		return sum;
+	}
+
+	@Override
+	double manhattan(double[] x, int xOff, 
+			double[] y, int yOff, int len) {
+		DoubleVector acc = DoubleVector.zero(SPECIES);
+		final int bound = SPECIES.loopBound(len);
+		int i = 0;
+		for (; i < bound; i += SPECIES.length()) {
+			acc = acc.add(DoubleVector.fromArray(SPECIES, x, xOff + i)
+					.sub(DoubleVector.fromArray(SPECIES, y, yOff + i)).abs());
+		}
+		double sum = acc.reduceLanes(VectorOperators.ADD);
+		for (; i < len; i++) {
+			sum += Math.abs(x[xOff + i] - y[yOff + i]);
+		}
+		return sum;
+	}
+
+	@Override
+	void editDiagonal(double[] xIn, double[] xOut, 
+			double[] yIn, double[] yOut, int yShift, 
+			double[] d2, double[] d1, double[] cur, int lo, int hi) {
+		final int bound = lo + SPECIES.loopBound(hi - lo + 1);
+		int i = lo;
+		for (; i < bound; i += SPECIES.length()) {
+			final DoubleVector xi = DoubleVector.fromArray(SPECIES, xIn, i - 1);
+			final DoubleVector xo = DoubleVector.fromArray(SPECIES, xOut, i - 1);
+			final DoubleVector yi = DoubleVector.fromArray(SPECIES, yIn, i + yShift);
+			final DoubleVector yo = DoubleVector.fromArray(SPECIES, yOut, i + yShift);
+			final DoubleVector diag = DoubleVector.fromArray(SPECIES, d2, i - 1);
+			final DoubleVector sub = xi.sub(yi).abs().add(xo.sub(yo).abs())
+					.add(diag);
+			final DoubleVector del = xi.add(xo)
+					.add(DoubleVector.fromArray(SPECIES, d1, i - 1));
+			final DoubleVector ins = yi.add(yo)
+					.add(DoubleVector.fromArray(SPECIES, d1, i));
+			// windows with the same bits cost nothing
+			final VectorMask<Double> same = xi.reinterpretAsLongs()
+					.eq(yi.reinterpretAsLongs())
+					.and(xo.reinterpretAsLongs().eq(yo.reinterpretAsLongs()))
+					.cast(SPECIES);
+			sub.min(del.min(ins)).blend(diag, same).intoArray(cur, i);
+		}
+		for (; i <= hi; i++) {
+			final double a = xIn[i-1];
+			final double b = xOut[i-1];
+			final double c = yIn[i + yShift];
+			final double d = yOut[i + yShift];
+			if (Double.doubleToLongBits(a) == Double.doubleToLongBits(c)
+					&& Double.doubleToLongBits(b) == Double.doubleToLongBits(d)) {
+				cur[i] = d2[i-1];
+			} else {
+				cur[i] = Math.min((Math.abs(a - c) + Math.abs(b - d) + d2[i-1]),
+						Math.min((a + b + d1[i-1]), (c + d + d1[i])));
+			}
+		}
+	}
+
+}
@@ -4,6 +4,7 @@ import java.util.Arrays;
 
 import weka.core.Instances;
 import distance.DistanceFunction;
+import distance.DistanceMatrix;
 
 /**
  * Implementation of Hierarchical Agglomerative Clustering.
@@ -32,11 +33,24 @@ public class HierAgglo implements ClusterAlg {
      */
     protected int numClusters = 2; // default value of k
 
+    /**
+     * Precomputed distance matrix of the data. If null, the matrix
+     * is calculated with the distance function.
+     */
+    protected DistanceMatrix distMatrix;
+
     /**
      * The labels for each instance in the data, where 
      */
     
     private int[][] allClusters;
+
+    /**
+     * The largest difference between a distance calculated by the 
+     * agglomeration method in the last cluster() call and the distance
+     * stored in the matrix
+     */
+    private double maxDeviation = 0.0;
     
     /**
      * Set the number of clusters to generate
@@ -46,14 +60,40 @@ public class HierAgglo implements ClusterAlg {
          this.numClusters = k;
     }
 
+    /**
+     * Use a precomputed distance matrix of the data instead of calculating
+     * it with the distance function. The matrix is overwritten by cluster().
+     * @param m Distance matrix of the data
+     */
+    public void setDistMatrix(DistanceMatrix m) {
+    	if (m.size() != data.numInstances()) {
+    		throw new IllegalArgumentException("The distance matrix does "
+    				+ "not match the number of instances");
+    	}
+    	this.distMatrix = m;
+    }
+
+    /**
+     * Get the largest difference between a distance calculated by the
+     * agglomeration method and the distance stored in the matrix during
+     * the last cluster() call. This is 0 unless the matrix rounds the
+     * distances, as a single precision matrix does.
+     * @return Maximum deviation from the calculated distances
+     */
+    public double getMaxDeviation() {
+    	return this.maxDeviation;
+    }
+
     /**
      * Runs the hierarchical agglomerative clustering algorithm.
      */
     @Override
     public void cluster() {
     	// distance matrix between data values.
-    	final double[][] distMatrix = distFn.distMatrix(data);
-    	final int numInstances = distMatrix.length;
+    	final DistanceMatrix distMatrix = (this.distMatrix != null) ? 
+    			this.distMatrix : distFn.distMatrix(data);
+    	final int numInstances = distMatrix.size();
+    	maxDeviation = 0.0;
     	//Initialize: first all in own clusters. Last all in same cluster
     	allClusters = new int[numInstances][numInstances];
         
@@ -76,18 +116,21 @@ public class HierAgglo implements ClusterAlg {
     		final int[] pair = findMostSimilarClusters(distMatrix, indexUsed);
     		final int i = Math.min(pair[0], pair[1]);
     		final int j = Math.max(pair[0], pair[1]);
-    		final double d = distMatrix[i][j]; // get distance between the two 
+    		final double d = distMatrix.get(i, j); // get distance between the two 
     	
     		// cluster i is the new cluster
     		// agglomerates former clusters i and j, update distMatrix
     		for (int k = 0; k < numInstances; k++) {
     			if (k != i && k != j && indexUsed[k]) {
     				final double dist = agglomerationMethod.computeDist(
-    						distMatrix[i][k],distMatrix[j][k], 
-    						distMatrix[i][j], numPerCluster[i],
+    						distMatrix.get(i, k), distMatrix.get(j, k), 
+    						d, numPerCluster[i],
     						numPerCluster[j], numPerCluster[k]);
-    				distMatrix[i][k] = dist;
-    				distMatrix[k][i] = dist;
+    				distMatrix.set(i, k, dist);
+    				final double dev = Math.abs(dist - distMatrix.get(i, k));
+    				if (dev > maxDeviation) {
+    					maxDeviation = dev;
+    				}
     			}
     		}
     		numPerCluster[i] = numPerCluster[i] + numPerCluster[j];
@@ -95,8 +138,9 @@ public class HierAgglo implements ClusterAlg {
     		// erase cluster j
     		indexUsed[j] = false;
     		for (int k = 0; k < numInstances; k++) {
-    			distMatrix[j][k] = Double.POSITIVE_INFINITY;
-    			distMatrix[k][j] = Double.POSITIVE_INFINITY; 
+    			if (k != j) {
+    				distMatrix.set(j, k, Double.POSITIVE_INFINITY);
+    			}
     		}
     	
     		// update clustering - first copy from previous row     		
@@ -133,18 +177,20 @@ public class HierAgglo implements ClusterAlg {
      * @param indexUsed
      * @return
      */
-    private static int[] findMostSimilarClusters(final double [][] distMatrix, 
+    private static int[] findMostSimilarClusters(final DistanceMatrix distMatrix, 
     		final boolean[] indexUsed) {
     	final int[] mostSimilarPair = new int[2];
     	double smallestDist = Double.POSITIVE_INFINITY;
-    	for (int cluster = 0; cluster < distMatrix.length; cluster++) {
+    	for (int cluster = 0; cluster < distMatrix.size(); cluster++) {
     		if (indexUsed[cluster]) {
     			for (int neighbor = 0; neighbor < cluster; neighbor++) {
-    				if (indexUsed[neighbor] && 
-    						distMatrix[cluster][neighbor] < smallestDist) {  
-    					smallestDist = distMatrix[cluster][neighbor];
-    					mostSimilarPair[0] = cluster;
-    					mostSimilarPair[1] = neighbor;
+    				if (indexUsed[neighbor]) {
+    					final double dist = distMatrix.get(cluster, neighbor);
+    					if (dist < smallestDist) {  
+    						smallestDist = dist;
+    						mostSimilarPair[0] = cluster;
+    						mostSimilarPair[1] = neighbor;
+    					}
     				}
     			}
     		}
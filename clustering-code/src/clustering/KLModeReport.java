@@ -0,0 +1,109 @@
+package clustering;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.util.concurrent.TimeUnit;
+
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+
+import com.google.gson.Gson;
+
+import weka.core.Instances;
+import distance.DiscreteHMMDistance;
+import distance.DistanceMatrix;
+import evaluation.DistinguishingPairs;
+import evaluation.DistinguishingPairsAdj;
+
+/**
+ * Compares the quality of the clusters found with the discrete HMM
+ * distance when its Kullback-Leibler distances are estimated by Monte
+ * Carlo and when they are approximated by the KL rates of the symbol
+ * chains of the HMMs. For each number of clusters k, the data is
+ * clustered by hierarchical agglomerative clustering with average
+ * linkage on the distance matrix of each mode, with HMMs of k states as
+ * in runClustering, and the Rand index and adjusted Rand index of each
+ * clustering against the ground truth and against each other are
+ * reported, along with the time taken for each distance matrix.
+ * <p>
+ * Usage: KLModeReport data.arff ground_truth.json min_k max_k [num_threads]
+ *
+ * @author Shalisa Pattarawuttiwong
+ */
+public class KLModeReport {
+
+	/**
+	 * Reads in the ground truth written by the simulation pipeline
+	 * @param filename name of the ground truth .json file
+	 * @return the cluster of each instance
+	 */
+	public static int[] readGroundTruth(String filename) throws Exception {
+		JSONParser parser = new JSONParser();
+		JSONObject jsonObject = (JSONObject) parser.parse(
+				new FileReader(filename));
+		String gt_list = jsonObject.get("ground truth").toString();
+		return new Gson().fromJson(gt_list, int[].class);
+	}
+
+	/**
+	 * Clusters the data into k clusters with average linkage on the
+	 * distance matrix of the HMM distance.
+	 * @return the cluster of each instance
+	 */
+	private static int[] cluster(Instances data, DiscreteHMMDistance hmmDist,
+			DistanceMatrix distMatrix, int k) {
+		HierAgglo hierAgglo = new HierAgglo(data, hmmDist, new AverageLinkage());
+		hierAgglo.setDistMatrix(distMatrix);
+		hierAgglo.cluster();
+		hierAgglo.setNumClusters(k);
+		return hierAgglo.getClusters();
+	}
+
+	/**
+	 * Given a .arff file, its ground truth and a range of numbers of
+	 * clusters, prints the report.
+	 * @param args data.arff ground_truth.json min_k max_k [num_threads]
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 4) {
+			System.out.println("Usage: KLModeReport data.arff "
+					+ "ground_truth.json min_k max_k [num_threads]");
+			return;
+		}
+		BufferedReader reader = new BufferedReader(new FileReader(args[0]));
+		Instances data = new Instances(reader);
+		reader.close();
+		int[] ground_truth = readGroundTruth(args[1]);
+		int min_k = Integer.parseInt(args[2]);
+		int max_k = Integer.parseInt(args[3]);
+		int num_threads = (args.length > 4) ? Integer.parseInt(args[4]) : 1;
+
+		DistinguishingPairs dp = new DistinguishingPairs();
+		DistinguishingPairsAdj dpAdj = new DistinguishingPairsAdj();
+		System.out.println("NUM INSTANCES: " + data.numInstances());
+		System.out.println("k\tmode\tseconds\tRand Index\tAdj Rand Index");
+		for (int k = min_k; k <= max_k; k++) {
+			int[][] clusters = new int[2][];
+			for (int mode = 0; mode < 2; mode++) {
+				DiscreteHMMDistance hmmDist = new DiscreteHMMDistance();
+				hmmDist.setNumStates(k);
+				hmmDist.setNumThreads(num_threads);
+				hmmDist.setMarkovApproximation(mode == 1);
+				long startTime = System.nanoTime();
+				DistanceMatrix distMatrix = hmmDist.distMatrix(data);
+				long endTime = System.nanoTime();
+				clusters[mode] = cluster(data, hmmDist, distMatrix, k);
+				System.out.println(k + "\t"
+						+ ((mode == 1) ? "markov" : "monte carlo") + "\t"
+						+ TimeUnit.NANOSECONDS.toMillis(endTime - startTime) / 1000.0
+						+ "\t" + dp.evaluate(clusters[mode], ground_truth)
+						+ "\t" + dpAdj.evaluate(clusters[mode], ground_truth));
+			}
+			System.out.println(k + "\tagreement\t-\t"
+					+ dp.evaluate(clusters[0], clusters[1]) + "\t"
+					+ dpAdj.evaluate(clusters[0], clusters[1]));
+		}
+	}
+
+}
@@ -3,7 +3,10 @@ package clustering;
 import java.util.*;
 
 import weka.core.Instances;
+import distance.BoundedDistance;
 import distance.DistanceFunction;
+import distance.PrimitiveDistance;
+import distance.PrimitiveInstances;
 import weka.core.Instance;
 
 /**
@@ -50,6 +53,12 @@ public class KMeans implements ClusterAlg {
      * Random number generator
      */
     private Random rand;
+
+    /**
+     * The values of the data, if the distance function can be
+     * calculated on them
+     */
+    private PrimitiveInstances store;
     
     /**
      * Constructor for KMeans that takes data and
@@ -127,10 +136,12 @@ public class KMeans implements ClusterAlg {
     	// keep track of min distance squared of elements of data
     	// to elements of centroids
     	double[] minDistSquared = new double[data.numInstances()];
+    	// distance from first center to all others
+    	double[] dists = new double[data.numInstances()];
+    	instDistances(idx, dists);
     	for (int i = 0; i < data.numInstances(); i++) {
     		if (i != idx) {
-    			// distance from first center to all others
-    			double d = distFn.distance(center, data.instance(i));
+    			double d = dists[i];
     			minDistSquared[i] = d*d; 
     		}
     	}
@@ -177,9 +188,10 @@ public class KMeans implements ClusterAlg {
     			
     			// update minDistSquared
     			if (chosen + 1 < this.numClusters) {
+    				instDistances(nextIdx, minDistSquared, dists);
     				for (int j = 0; j < data.numInstances(); j++) {
     					if (!taken[j]) {
-    						double dist = distFn.distance(nextCenter, data.instance(j));
+    						double dist = dists[j];
     						double distSq = dist*dist;
     						if (distSq < minDistSquared[j]) {
     							minDistSquared[j] = distSq;
@@ -196,6 +208,62 @@ public class KMeans implements ClusterAlg {
 
     }
     
+    /**
+     * The distances between the a-th instance of the data and each
+     * instance of the data.
+     */
+    private void instDistances(int a, double[] out) {
+    	if (store != null) {
+    		((PrimitiveDistance) distFn).distancesTo(store, a, store, out);
+    	} else {
+    		distFn.distancesTo(data.instance(a), data, out);
+    	}
+    }
+
+    /**
+     * The distances between the a-th instance of the data and each
+     * instance of the data whose squared distance may be below 
+     * minDistSquared. The others may be +Infinity.
+     */
+    private void instDistances(int a, double[] minDistSquared, double[] out) {
+    	if (store != null && distFn instanceof BoundedDistance) {
+    		((BoundedDistance) distFn).distancesTo(store, a, store, 
+    				BoundedDistance.squaredCutoffs(minDistSquared), out);
+    	} else {
+    		instDistances(a, out);
+    	}
+    }
+
+    /**
+     * Assigns each instance of the data to the cluster of its closest
+     * centroid, the first one of those at the same distance. The 
+     * distances are calculated one centroid at a time; if the distance
+     * function is bounded, each is abandoned once it exceeds the
+     * closest distance found so far for its instance.
+     */
+    private void assignToCentroids() {
+    	final double[] minDistance = new double[data.numInstances()];
+    	final double[] dists = new double[data.numInstances()];
+    	final PrimitiveInstances cents = (store != null) ? 
+    			new PrimitiveInstances(centroids) : null;
+    	for (int j = 0; j < centroids.length; j++) {
+    		if (cents != null && j > 0 && distFn instanceof BoundedDistance) {
+    			((BoundedDistance) distFn).distancesTo(cents, j, store, 
+    					minDistance, dists);
+    		} else if (cents != null) {
+    			((PrimitiveDistance) distFn).distancesTo(cents, j, store, dists);
+    		} else {
+    			distFn.distancesTo(centroids[j], data, dists);
+    		}
+    		for (int i = 0; i < data.numInstances(); i++) {
+    			if (j == 0 || dists[i] < minDistance[i]) {
+    				minDistance[i] = dists[i];
+    				clusters[i] = j;
+    			}
+    		}
+    	}
+    }
+    
     /**
      * Allows the user to choose the initial centroids.
      * @param pickedCent Set of integers representing indices of the data
@@ -286,6 +354,9 @@ public class KMeans implements ClusterAlg {
 	@Override
 	public void cluster() {		
         int instanceLength = this.data.numAttributes();
+        // copy the values of the data once for the distance function
+        store = (distFn instanceof PrimitiveDistance) ? 
+        		new PrimitiveInstances(data) : null;
 
         if (this.centroids == null) {
         	//randomizeInitCentroids();
@@ -295,20 +366,7 @@ public class KMeans implements ClusterAlg {
         int iterationCount = 0;
         this.clusters = new int[this.data.numInstances()];
 		// assign each object to the group with the closest centroid
-		for (int i = 0; i < this.data.numInstances(); i++) {
-			int tmpCluster = 0;
-			double minDistance = distFn.distance(
-					centroids[0], data.instance(i)); 
-			for (int j = 1; j < centroids.length; j++) {
-				double dist = distFn.distance(
-						centroids[j], data.instance(i));
-				if (dist < minDistance) {
-					minDistance = dist;
-					tmpCluster = j;
-				}
-			}
-			this.clusters[i] = tmpCluster;
-		}
+		assignToCentroids();
 		iterationCount++;
         
         boolean centroidsChanged = true;
@@ -364,20 +422,7 @@ public class KMeans implements ClusterAlg {
 
         	// recalculate labels of the data
         	clusters = new int[data.numInstances()];
-        	for (int i = 0; i < data.numInstances(); i++) {
-        		int tmpCluster = 0;
-        		double minDistance = distFn.distance(
-        				centroids[0], data.instance(i));
-        		for (int j = 0; j < centroids.length; j++) {
-        			double dist = distFn.distance(
-        					centroids[j], data.instance(i));
-        			if (dist < minDistance) {
-        				minDistance = dist;
-        				tmpCluster = j;
-        			}
-        		}
-        		clusters[i] = tmpCluster;
-        	}
+        	assignToCentroids();
         }
         
         // check for emptiness one last time
@@ -401,20 +446,7 @@ public class KMeans implements ClusterAlg {
     	if (empty) {
         	// recalculate labels of the data
         	clusters = new int[data.numInstances()];
-        	for (int i = 0; i < data.numInstances(); i++) {
-        		int tmpCluster = 0;
-        		double minDistance = distFn.distance(
-        				centroids[0], data.instance(i));
-        		for (int j = 0; j < centroids.length; j++) {
-        			double dist = distFn.distance(
-        					centroids[j], data.instance(i));
-        			if (dist < minDistance) {
-        				minDistance = dist;
-        				tmpCluster = j;
-        			}
-        		}
-        		clusters[i] = tmpCluster;
-        	}
+        	assignToCentroids();
     	}
 	}
 }
@@ -4,7 +4,11 @@ import java.util.*;
 
 import weka.core.Instance;
 import weka.core.Instances;
+import distance.BoundedDistance;
 import distance.DistanceFunction;
+import distance.DistanceMatrix;
+import distance.PrimitiveDistance;
+import distance.PrimitiveInstances;
 
 /**
  * Implementation of K-Medoids clustering.
@@ -51,6 +55,24 @@ public class KMedoids implements ClusterAlg {
      */
     private Random rand;
     
+    /**
+     * Precomputed distance matrix of the data, used for distances
+     * between instances and medoids. If null, the distance function
+     * is used.
+     */
+    protected DistanceMatrix distMatrix;
+    
+    /**
+     * Index of each instance of the data in the distance matrix
+     */
+    private IdentityHashMap<Instance, Integer> instIdx;
+
+    /**
+     * The values of the data, if the distance function can be
+     * calculated on them
+     */
+    private PrimitiveInstances store;
+    
     /**
      * Constructor for KMedoids that takes data and
      * a similarity function.
@@ -89,6 +111,78 @@ public class KMedoids implements ClusterAlg {
     	} else this.iterations = i;
     }
     
+    /**
+     * Use a precomputed distance matrix of the data for the distances
+     * between instances and medoids.
+     * @param m Distance matrix of the data
+     */
+    public void setDistMatrix(DistanceMatrix m) {
+    	if (m.size() != data.numInstances()) {
+    		throw new IllegalArgumentException("The distance matrix does "
+    				+ "not match the number of instances");
+    	}
+    	this.distMatrix = m;
+    	indexInstances();
+    }
+
+    /**
+     * Maps each instance of the data to its index.
+     */
+    private void indexInstances() {
+    	this.instIdx = new IdentityHashMap<Instance, Integer>();
+    	for (int i = 0; i < data.numInstances(); i++) {
+    		instIdx.put(data.instance(i), i);
+    	}
+    }
+    
+    /**
+     * The distance between the i-th instance of the data and a medoid,
+     * looked up in the distance matrix if one was given. Distances
+     * above cutoff may be returned as +Infinity.
+     */
+    private double medoidDistance(int i, Instance medoid, double cutoff) {
+    	Integer m = (instIdx != null) ? instIdx.get(medoid) : null;
+    	if (m != null) {
+    		if (distMatrix != null) {
+    			return distMatrix.get(i, m);
+    		}
+    		if (store != null && distFn instanceof BoundedDistance) {
+    			return ((BoundedDistance) distFn).distance(store, i, store, m, 
+    					cutoff);
+    		}
+    		if (store != null) {
+    			return ((PrimitiveDistance) distFn).distance(store, i, store, m);
+    		}
+    	}
+    	return distFn.distance(data.instance(i), medoid);
+    }
+
+    /**
+     * The distances between the a-th instance of the data and each
+     * instance of the data.
+     */
+    private void instDistances(int a, double[] out) {
+    	if (store != null) {
+    		((PrimitiveDistance) distFn).distancesTo(store, a, store, out);
+    	} else {
+    		distFn.distancesTo(data.instance(a), data, out);
+    	}
+    }
+
+    /**
+     * The distances between the a-th instance of the data and each
+     * instance of the data whose squared distance may be below 
+     * minDistSquared. The others may be +Infinity.
+     */
+    private void instDistances(int a, double[] minDistSquared, double[] out) {
+    	if (store != null && distFn instanceof BoundedDistance) {
+    		((BoundedDistance) distFn).distancesTo(store, a, store, 
+    				BoundedDistance.squaredCutoffs(minDistSquared), out);
+    	} else {
+    		instDistances(a, out);
+    	}
+    }
+    
     /**
      * Creates an instance that contains the average values 
      * for the attributes of the data.
@@ -117,8 +211,33 @@ public class KMedoids implements ClusterAlg {
     public Instance closestInst(Instance inst) {
     	int closest = 0;
     	double min = Double.POSITIVE_INFINITY;
+    	if (store != null && distFn instanceof BoundedDistance) {
+    		// instances farther than the closest so far are abandoned,
+    		// most of them before their DP tables are calculated
+    		final PrimitiveInstances query = 
+    				new PrimitiveInstances(new Instance[]{inst});
+    		for (int i = 0; i < data.numInstances(); i++) {
+    			if (inst.equals(data.instance(i))) {
+    				continue;
+    			}
+    			double d = ((BoundedDistance) distFn).distance(query, 0, 
+    					store, i, min);
+    			if (d < min) {
+    				closest = i;
+    				min = d;
+    			}
+    		}
+    		return data.instance(closest);
+    	}
+    	final double[] dists = new double[data.numInstances()];
+    	if (store != null) {
+    		((PrimitiveDistance) distFn).distancesTo(
+    				new PrimitiveInstances(new Instance[]{inst}), 0, store, dists);
+    	} else {
+    		distFn.distancesTo(inst, data, dists);
+    	}
     	for (int i = 0; i < data.numInstances(); i++) {
-    		double d = distFn.distance(inst, data.instance(i));
+    		double d = dists[i];
     		if (d < min && !inst.equals(data.instance(i))) {
     			closest = i;
     			min = d; // if d < min, make min = d.
@@ -186,10 +305,12 @@ public class KMedoids implements ClusterAlg {
     	// keep track of min distance squared of elements of data
     	// to elements of medoids
     	double[] minDistSquared = new double[data.numInstances()];
+    	// distance from first center to all others
+    	double[] dists = new double[data.numInstances()];
+    	instDistances(idx, dists);
     	for (int i = 0; i < data.numInstances(); i++) {
     		if (i != idx) {
-    			// distance from first center to all others
-    			double d = distFn.distance(center, data.instance(i));
+    			double d = dists[i];
     			minDistSquared[i] = d*d; 
     		}
     	}
@@ -236,10 +357,10 @@ public class KMedoids implements ClusterAlg {
     			
     			// update minDistSquared
     			if (chosen + 1 < this.numClusters) {
+    				instDistances(nextIdx, minDistSquared, dists);
     				for (int j = 0; j < data.numInstances(); j++) {
     					if (!taken[j]) {
-    						double dist = distFn.distance(nextCenter, 
-    								data.instance(j));
+    						double dist = dists[j];
     						double distSq = dist*dist;
     						if (distSq < minDistSquared[j]) {
     							minDistSquared[j] = distSq;
@@ -274,6 +395,13 @@ public class KMedoids implements ClusterAlg {
 	public void cluster() {
 		// initialize clusters to have max values
 		clusters = new int[data.numInstances()];
+		// copy the values of the data once for the distance function
+		if (distFn instanceof PrimitiveDistance) {
+			store = new PrimitiveInstances(data);
+			if (instIdx == null) {
+				indexInstances();
+			}
+		}
 
         if (this.medoids == null) {
         	//randomizeInitMedoids();
@@ -288,10 +416,12 @@ public class KMedoids implements ClusterAlg {
 			
 			// assign instances to medoids
 			for (int i = 0; i < data.numInstances(); i++) {
-				double bestDist = distFn.distance(data.instance(i), medoids[0]);
+				double bestDist = medoidDistance(i, medoids[0], 
+						Double.POSITIVE_INFINITY);
 				int bestIndex = 0;
 				for (int j = 1; j < medoids.length; j++) {
-					double dist = distFn.distance(data.instance(i), medoids[j]);
+					// only a distance below bestDist matters
+					double dist = medoidDistance(i, medoids[j], bestDist);
 						if (dist < bestDist) {
 							bestDist = dist;
 							bestIndex = j;
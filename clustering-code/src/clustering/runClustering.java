@@ -1,6 +1,7 @@
 package clustering;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
@@ -65,6 +66,114 @@ public class runClustering {
 			String arffpath = jsonObject.get("arffpath").toString();
 			String cluster_outpath = jsonObject.get("cluster_outpath").toString();
 			String gt_outpath = jsonObject.get("gt_outpath").toString();
+			// optional: threads used to calculate the distance matrix
+			int num_threads = 1;
+			if (jsonObject.get("num_threads") != null) {
+				num_threads = Integer.parseInt(jsonObject.get("num_threads").toString());
+			}
+			// optional: file to keep the distance matrix in, off the heap
+			String matrix_path = null;
+			if (jsonObject.get("matrix_path") != null) {
+				matrix_path = jsonObject.get("matrix_path").toString();
+			}
+			// optional: "float" to store the distance matrix in single precision
+			boolean single_precision = false;
+			if (jsonObject.get("matrix_precision") != null) {
+				String matrix_precision = jsonObject.get("matrix_precision").toString();
+				if (matrix_precision.equalsIgnoreCase("float")) {
+					single_precision = true;
+				} else if (!matrix_precision.equalsIgnoreCase("double")) {
+					throw new IllegalArgumentException("No valid matrix precision "
+							+ "chosen in .json config file.");
+				}
+			}
+			// optional: edit distance alignments at most this many windows apart
+			int band_width = -1;
+			if (jsonObject.get("band_width") != null) {
+				band_width = Integer.parseInt(jsonObject.get("band_width").toString());
+			}
+			// optional: share the edit distance DP columns of common first windows
+			boolean shared_prefixes = false;
+			if (jsonObject.get("shared_prefixes") != null) {
+				shared_prefixes = Boolean.parseBoolean(
+						jsonObject.get("shared_prefixes").toString());
+			}
+			// optional: euclidean/manhattan distances over runs of equal windows
+			boolean run_length = false;
+			if (jsonObject.get("run_length") != null) {
+				run_length = Boolean.parseBoolean(jsonObject.get("run_length").toString());
+			}
+			// optional: score a fixed set of sequences of each HMM
+			boolean sample_once = false;
+			if (jsonObject.get("sample_once") != null) {
+				sample_once = Boolean.parseBoolean(
+						jsonObject.get("sample_once").toString());
+			}
+			// optional: approximate the HMM distances without sampling
+			boolean markov_kl = false;
+			if (jsonObject.get("markov_kl") != null) {
+				markov_kl = Boolean.parseBoolean(
+						jsonObject.get("markov_kl").toString());
+			}
+			// optional: stop sampling each HMM distance estimate once it
+			// is within kl_tolerance, after min_sequences to max_sequences
+			double kl_tolerance = 0.0;
+			if (jsonObject.get("kl_tolerance") != null) {
+				kl_tolerance = Double.parseDouble(
+						jsonObject.get("kl_tolerance").toString());
+			}
+			int min_sequences = 2;
+			if (jsonObject.get("min_sequences") != null) {
+				min_sequences = Integer.parseInt(
+						jsonObject.get("min_sequences").toString());
+			}
+			int max_sequences = 10;
+			if (jsonObject.get("max_sequences") != null) {
+				max_sequences = Integer.parseInt(
+						jsonObject.get("max_sequences").toString());
+			}
+			if (min_sequences > max_sequences) {
+				throw new IllegalArgumentException("min_sequences cannot exceed "
+						+ "max_sequences in .json config file.");
+			}
+			// optional: train the HMMs on the observed symbols, and on
+			// bootstrap resamples of them
+			boolean train_observed = false;
+			if (jsonObject.get("train_observed") != null) {
+				train_observed = Boolean.parseBoolean(
+						jsonObject.get("train_observed").toString());
+			}
+			int bootstrap_samples = 0;
+			if (jsonObject.get("bootstrap_samples") != null) {
+				bootstrap_samples = Integer.parseInt(
+						jsonObject.get("bootstrap_samples").toString());
+			}
+			// optional: stop the Baum-Welch training of each HMM once an
+			// iteration improves it by at most training_tolerance, or
+			// after max_training_iterations iterations
+			double training_tolerance = 0.0;
+			if (jsonObject.get("training_tolerance") != null) {
+				training_tolerance = Double.parseDouble(
+						jsonObject.get("training_tolerance").toString());
+			}
+			int max_training_iterations = 
+					BaumWelchTrainer.DEFAULT_MAX_ITERATIONS;
+			if (jsonObject.get("max_training_iterations") != null) {
+				max_training_iterations = Integer.parseInt(
+						jsonObject.get("max_training_iterations").toString());
+			}
+			// optional: directory of saved distance matrices, in the 
+			// precision of matrix_precision
+			DistanceMatrixCache cache = null;
+			if (jsonObject.get("cache_dir") != null) {
+				if (matrix_path != null) {
+					throw new IllegalArgumentException("Only one of matrix_path "
+							+ "and cache_dir can be chosen in .json config file.");
+				}
+				cache = new DistanceMatrixCache(
+						new File(jsonObject.get("cache_dir").toString()), 
+						single_precision);
+			}
 			
 	        readInInstances(arffpath);
 			JSONParser subparser = new JSONParser();
@@ -92,21 +201,61 @@ public class runClustering {
 		        DistanceFunction distFn;
 		        if (dist_measure.equalsIgnoreCase("euclidean")) {
 		        	EuclideanDistance eucDist = new EuclideanDistance();
+		        	eucDist.setRunLength(run_length);
 		        	distFn = eucDist;
 		        } else if (dist_measure.equalsIgnoreCase("manhattan")) {
 		        	ManhattanDistance manDist = new ManhattanDistance();
+		        	manDist.setRunLength(run_length);
 		        	distFn = manDist;
 		        } else if (dist_measure.equalsIgnoreCase("edit")) {
 		        	EditDistance editDist = new EditDistance();
+		        	editDist.setBandWidth(band_width);
+		        	editDist.setSharedPrefixes(shared_prefixes);
 		        	distFn = editDist;
 		        } else if (dist_measure.equalsIgnoreCase("hmm")) {
 		        	DiscreteHMMDistance hmmDist = new DiscreteHMMDistance();
 		        	hmmDist.setNumStates(k);
+		        	hmmDist.setSampleOnce(sample_once);
+		        	hmmDist.setMarkovApproximation(markov_kl);
+		        	hmmDist.setKLTolerance(kl_tolerance);
+		        	hmmDist.setMinSequences(min_sequences);
+		        	hmmDist.setMaxSequences(max_sequences);
+		        	hmmDist.setTrainOnObserved(train_observed);
+		        	hmmDist.setBootstrapSamples(bootstrap_samples);
+		        	hmmDist.setTrainingTolerance(training_tolerance);
+		        	hmmDist.setMaxTrainingIterations(max_training_iterations);
 		        	distFn = hmmDist;
 			    } else {
 		        	throw new IllegalArgumentException("No valid distance function "
 		        			+ "chosen in .json config file.");
 		        }
+		        if (distFn instanceof AbstractDistance) {
+		        	((AbstractDistance) distFn).setNumThreads(num_threads);
+		        }
+		        
+		        DistanceMatrix distMatrix = null;
+		        // whether the distances were read from the cache, rather
+		        // than calculated into distMatrix
+		        boolean saved = false;
+		        if (cache != null && !cluster_alg.equalsIgnoreCase("kmeans")) {
+		        	if (cache.contains(data, distFn)) {
+		        		System.out.println("Using saved distance matrix");
+		        		saved = true;
+		        	}
+		        	distMatrix = cache.distMatrix(data, distFn);
+		        } else if (matrix_path != null && !cluster_alg.equalsIgnoreCase("kmeans")) {
+		        	distMatrix = MappedDistanceMatrix.create(new File(matrix_path), 
+		        			data.numInstances(), single_precision);
+		        	distFn.distMatrix(data, distMatrix);
+		        } else if (single_precision && !cluster_alg.equalsIgnoreCase("kmeans")) {
+		        	distMatrix = new CondensedFloatDistanceMatrix(data.numInstances());
+		        	distFn.distMatrix(data, distMatrix);
+		        }
+		        if (single_precision && !saved 
+		        		&& distFn instanceof AbstractDistance && distMatrix != null) {
+		        	System.out.println("Max deviation of single precision distances: "
+		        			+ ((AbstractDistance) distFn).getMaxDeviation());
+		        }
 
 		        if (cluster_alg.equalsIgnoreCase("kmeans")) {
 		        	KMeans kmeans = new KMeans(data, distFn);
@@ -119,6 +268,9 @@ public class runClustering {
 		        	KMedoids kmedoids = new KMedoids(data, distFn);
 			        kmedoids.setNumClusters(k);
 			        kmedoids.setNumIterations(100);
+			        if (distMatrix != null) {
+			        	kmedoids.setDistMatrix(distMatrix);
+			        }
 			        kmedoids.cluster();
 			        clusters.put(k, kmedoids.getClusters());
 			        
@@ -152,7 +304,14 @@ public class runClustering {
 				}
 		            	
 				HierAgglo hierAgglo = new HierAgglo(data, distFn, aggloMethod);
+				if (distMatrix != null) {
+					hierAgglo.setDistMatrix(distMatrix);
+				}
 		            	hierAgglo.cluster();
+				if (single_precision) {
+					System.out.println("Max deviation of single precision linkage "
+							+ "distances: " + hierAgglo.getMaxDeviation());
+				}
 		            
 		            for (int i = k; i <= max_k; i++) {
 		            	hierAgglo.setNumClusters(i);
@@ -219,6 +378,11 @@ public class runClustering {
 			        	System.out.println("Collapsed Pairs: " + cp_eval);
 			        }
 		        } 
+		        if (distFn instanceof DiscreteHMMDistance && !markov_kl) {
+		        	System.out.println("KL estimates by number of sequences: "
+		        			+ Arrays.toString(((DiscreteHMMDistance) distFn)
+		        			.getSampleCounts()));
+		        }
 		        long endTime = System.nanoTime();
 		        System.out.print("Time elapsed (seconds): ");
 		        System.out.println(TimeUnit.NANOSECONDS.toSeconds(endTime - startTime));
@@ -0,0 +1,834 @@
+package distance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import be.ac.ulg.montefiore.run.jahmm.Hmm;
+import be.ac.ulg.montefiore.run.jahmm.Observation;
+import be.ac.ulg.montefiore.run.jahmm.ObservationInteger;
+import be.ac.ulg.montefiore.run.jahmm.toolbox.MarkovGenerator;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * Abstract super class for the HMM distances between instances of
+ * discrete symbols. An HMM is trained for each instance and the distance
+ * between two instances is the symmetrized Kullback-Leibler distance
+ * between their HMMs. Subclasses only differ in how the HMM is
+ * initialized before training (initialHMM()) and in the length of the
+ * sequences the Kullback-Leibler distances are estimated on.
+ *
+ * @author Shalisa Pattarawuttiwong
+ *
+ */
+public abstract class AbstractDiscreteHMMDistance extends AbstractDistance {
+
+    /**
+     * The number of sequences kldistance() generates
+     */
+    static final int NB_SEQUENCES = 10;
+
+    /**
+     * The length of the sequences kldistance() generates
+     */
+    private final int sequencesLength;
+
+    /**
+     * The number of HMM states to generate.
+     */
+    protected int states;
+
+    /**
+     * Whether the distances between instances of the trained data
+     * score a fixed set of sequences of each HMM
+     */
+    protected boolean sampleOnce = false;
+
+    /**
+     * Whether the HMMs are trained on the observed symbols of the
+     * instances rather than on sequences generated by the initial HMM
+     */
+    protected boolean trainOnObserved = false;
+
+    /**
+     * The number of bootstrap resamples of the observed symbols the
+     * HMMs are also trained on, if trainOnObserved
+     */
+    protected int bootstrapSamples = 0;
+
+    /**
+     * The smallest improvement of the log likelihood for which the
+     * training of an HMM goes on, 0 to always run maxTrainingIterations
+     * iterations, and the largest number of iterations
+     */
+    protected double trainingTolerance = 0.0;
+    protected int maxTrainingIterations =
+    		BaumWelchTrainer.DEFAULT_MAX_ITERATIONS;
+
+    /**
+     * Whether the Kullback-Leibler distances are approximated by the
+     * KL rates between the symbol chains of the HMMs, without sampling
+     */
+    protected boolean markovApproximation = false;
+
+    /**
+     * The relative half-width of the confidence interval at which a
+     * Kullback-Leibler estimate stops sampling, 0 to always sample
+     * NB_SEQUENCES sequences
+     */
+    protected double klTolerance = 0.0;
+
+    /**
+     * The fewest and most sequences a Kullback-Leibler estimate samples
+     * if klTolerance is above 0
+     */
+    protected int minSequences = 2;
+    protected int maxSequences = NB_SEQUENCES;
+
+    /**
+     * The number of Kullback-Leibler estimates that sampled each
+     * number of sequences
+     */
+    private AtomicLongArray sampleCounts = new AtomicLongArray(NB_SEQUENCES + 1);
+
+    /**
+     * Instance
+     */
+    protected Instance x;
+
+    /**
+     * Instance
+     */
+    protected Instance y;
+
+    /**
+     * The HMMs trained for the instances of the last data set
+     * passed to trainModels()
+     */
+    private transient HmmCache cache;
+
+	/**
+	 * Constructor for AbstractDiscreteHMMDistance.
+	 * @param sequencesLength length of the sequences kldistance()
+	 * 		generates
+	 */
+	protected AbstractDiscreteHMMDistance(int sequencesLength, Instance a,
+			Instance b, int m) {
+		this.sequencesLength = sequencesLength;
+		this.states = m;
+		this.x = a;
+		this.y = b;
+	}
+
+	/**
+	 * Constructor for AbstractDiscreteHMMDistance.
+	 * @param sequencesLength length of the sequences kldistance()
+	 * 		generates
+	 */
+	protected AbstractDiscreteHMMDistance(int sequencesLength) {
+		this.sequencesLength = sequencesLength;
+	}
+
+    /**
+     * Set the number of HMM states to generate
+     * @param m Number of states
+     */
+    public void setNumStates(int m)
+    		throws IllegalArgumentException{
+    	if (m <= 0) {
+    		throw new IllegalArgumentException("Cannot set the number "
+    				+ "of states to fewer than 1");
+    	} else this.states = m;
+    }
+
+    /**
+     * Get the number of HMM states to generate
+     * @return m Number of states
+     */
+    public int getNumStates() {
+    	return this.states;
+    }
+
+    /**
+     * Set whether the distances between instances of the data passed
+     * to trainModels() estimate the Kullback-Leibler distances on a
+     * fixed set of sequences generated once by each HMM, rather than on
+     * sequences generated anew for each pair. A distance matrix then
+     * generates n sets of sequences rather than n(n-1).
+     * @param s true to generate the sequences once per HMM
+     */
+    public void setSampleOnce(boolean s) {
+    	this.sampleOnce = s;
+    }
+
+    /**
+     * Get whether the sequences are generated once per HMM
+     * @return true if the sequences are generated once per HMM
+     */
+    public boolean getSampleOnce() {
+    	return this.sampleOnce;
+    }
+
+    /**
+     * Set whether the HMMs are trained on the observed symbols of each
+     * instance rather than on 200 sequences of 100 symbols generated by
+     * the initial HMM, so that training scales with the length of the
+     * series. An instance without two consecutive symbols to train on
+     * is trained on generated sequences.
+     * @param t true to train on the observed symbols
+     */
+    public synchronized void setTrainOnObserved(boolean t) {
+    	this.trainOnObserved = t;
+    	// HMMs trained the other way
+    	this.cache = null;
+    }
+
+    /**
+     * Get whether the HMMs are trained on the observed symbols
+     * @return true if trained on the observed symbols
+     */
+    public boolean getTrainOnObserved() {
+    	return this.trainOnObserved;
+    }
+
+    /**
+     * Set the number of moving block bootstrap resamples of the observed
+     * symbols the HMMs are trained on as well, if they are trained on
+     * the observed symbols.
+     * @param b Number of resamples
+     */
+    public synchronized void setBootstrapSamples(int b)
+    		throws IllegalArgumentException {
+    	if (b < 0) {
+    		throw new IllegalArgumentException("Cannot set the number "
+    				+ "of bootstrap samples to fewer than 0");
+    	} else {
+    		this.bootstrapSamples = b;
+    		this.cache = null;
+    	}
+    }
+
+    /**
+     * Get the number of bootstrap resamples of the observed symbols
+     * @return Number of resamples
+     */
+    public int getBootstrapSamples() {
+    	return this.bootstrapSamples;
+    }
+
+    /**
+     * Set the smallest improvement of the log likelihood of its training
+     * sequences for which the Baum-Welch training of an HMM goes on
+     * (see BaumWelchTrainer). 0 always runs the largest number of
+     * iterations.
+     * @param t Tolerance
+     */
+    public synchronized void setTrainingTolerance(double t)
+    		throws IllegalArgumentException {
+    	if (!(t >= 0)) {
+    		throw new IllegalArgumentException("Cannot set the tolerance "
+    				+ "to a negative value");
+    	} else {
+    		this.trainingTolerance = t;
+    		this.cache = null;
+    	}
+    }
+
+    /**
+     * Get the smallest improvement of the log likelihood for which
+     * training goes on
+     * @return Tolerance
+     */
+    public double getTrainingTolerance() {
+    	return this.trainingTolerance;
+    }
+
+    /**
+     * Set the largest number of Baum-Welch iterations an HMM is
+     * trained for, 9 by default as in jahmm
+     * @param m Number of iterations
+     */
+    public synchronized void setMaxTrainingIterations(int m)
+    		throws IllegalArgumentException {
+    	if (m <= 0) {
+    		throw new IllegalArgumentException("Cannot set the number "
+    				+ "of iterations to fewer than 1");
+    	} else {
+    		this.maxTrainingIterations = m;
+    		this.cache = null;
+    	}
+    }
+
+    /**
+     * Get the largest number of Baum-Welch iterations
+     * @return Number of iterations
+     */
+    public int getMaxTrainingIterations() {
+    	return this.maxTrainingIterations;
+    }
+
+    /**
+     * Set whether the Kullback-Leibler distances are approximated by
+     * the KL rates between the first order Markov chains of the symbols
+     * the HMMs emit (see SymbolChain) rather than estimated on sampled
+     * sequences. The distances are then deterministic for given HMMs,
+     * and those between instances of the data passed to trainModels()
+     * cost O(M^2) for M symbols. Takes precedence over sampleOnce.
+     * @param m true to approximate the distances without sampling
+     */
+    public void setMarkovApproximation(boolean m) {
+    	this.markovApproximation = m;
+    }
+
+    /**
+     * Get whether the distances are approximated without sampling
+     * @return true if approximated by the KL rates of symbol chains
+     */
+    public boolean getMarkovApproximation() {
+    	return this.markovApproximation;
+    }
+
+    /**
+     * Set the relative half-width of the 95% confidence interval of
+     * the mean log likelihood ratio at which each Kullback-Leibler
+     * estimate stops sampling sequences, between minSequences and
+     * maxSequences sequences (see SequentialEstimate). 0 always samples
+     * NB_SEQUENCES sequences.
+     * @param t Tolerance
+     */
+    public synchronized void setKLTolerance(double t)
+    		throws IllegalArgumentException {
+    	if (!(t >= 0)) {
+    		throw new IllegalArgumentException("Cannot set the tolerance "
+    				+ "to a negative value");
+    	} else {
+    		this.klTolerance = t;
+    		// sequences sampled for another number of sequences
+    		this.cache = null;
+    	}
+    }
+
+    /**
+     * Get the tolerance of the Kullback-Leibler estimates
+     * @return Tolerance
+     */
+    public double getKLTolerance() {
+    	return this.klTolerance;
+    }
+
+    /**
+     * Set the fewest sequences a Kullback-Leibler estimate samples
+     * before it may stop, at most the most sequences by the time
+     * distances are calculated
+     * @param m Number of sequences
+     */
+    public synchronized void setMinSequences(int m)
+    		throws IllegalArgumentException {
+    	if (m < 2) {
+    		throw new IllegalArgumentException("Cannot set the number "
+    				+ "of sequences to fewer than 2");
+    	} else this.minSequences = m;
+    }
+
+    /**
+     * Get the fewest sequences a Kullback-Leibler estimate samples
+     * @return Number of sequences
+     */
+    public int getMinSequences() {
+    	return this.minSequences;
+    }
+
+    /**
+     * Set the most sequences a Kullback-Leibler estimate samples
+     * if the tolerance is above 0, at least the fewest sequences by the
+     * time distances are calculated
+     * @param m Number of sequences
+     */
+    public synchronized void setMaxSequences(int m)
+    		throws IllegalArgumentException {
+    	if (m < 2) {
+    		throw new IllegalArgumentException("Cannot set the number "
+    				+ "of sequences to fewer than 2");
+    	} else {
+    		this.maxSequences = m;
+    		this.sampleCounts = new AtomicLongArray(
+    				Math.max(m, NB_SEQUENCES) + 1);
+    		this.cache = null;
+    	}
+    }
+
+    /**
+     * Get the most sequences a Kullback-Leibler estimate samples
+     * @return Number of sequences
+     */
+    public int getMaxSequences() {
+    	return this.maxSequences;
+    }
+
+    /**
+     * Get the number of Kullback-Leibler estimates, two per distance,
+     * that sampled each number of sequences since the counts were last
+     * reset: element s counts the estimates of s sequences.
+     * @return the counts, indexed by number of sequences
+     */
+    public long[] getSampleCounts() {
+    	final AtomicLongArray counts = this.sampleCounts;
+    	long[] out = new long[counts.length()];
+    	for (int s = 0; s < out.length; s++) {
+    		out[s] = counts.get(s);
+    	}
+    	return out;
+    }
+
+    /**
+     * Reset the number of estimates of each number of sequences to 0
+     */
+    public void resetSampleCounts() {
+    	final AtomicLongArray counts = this.sampleCounts;
+    	for (int s = 0; s < counts.length(); s++) {
+    		counts.set(s, 0);
+    	}
+    }
+
+    /**
+     * The number of sequences a Kullback-Leibler estimate samples at most
+     */
+    private int numSequences() {
+    	return (klTolerance > 0) ? maxSequences : NB_SEQUENCES;
+    }
+
+    /**
+     * Checks that the fewest sequences are at most the most sequences.
+     * They are checked before distances are calculated rather than in
+     * their setters, so that they can be set in either order.
+     */
+    private void checkSequences() {
+    	if (minSequences > maxSequences) {
+    		throw new IllegalArgumentException("Cannot sample at least "
+    				+ minSequences + " and at most " + maxSequences
+    				+ " sequences");
+    	}
+    }
+
+    /**
+     * An empty Kullback-Leibler estimate with the current tolerance
+     */
+    private SequentialEstimate newEstimate() {
+    	return new SequentialEstimate(klTolerance, minSequences);
+    }
+
+    /**
+     * Counts an estimate of a number of sequences
+     */
+    private void countSamples(int n) {
+    	final AtomicLongArray counts = this.sampleCounts;
+    	if (n < counts.length()) {
+    		counts.incrementAndGet(n);
+    	}
+    }
+
+    /**
+     * The number of HMM states and how the HMMs are trained change
+     * the distances calculated.
+     */
+    @Override
+    public String getParameters() {
+    	String params = "states=" + this.states;
+    	if (this.markovApproximation) {
+    		params += ",markov";
+    	} else if (this.sampleOnce) {
+    		params += ",sample_once";
+    	}
+    	if (this.klTolerance > 0 && !this.markovApproximation) {
+    		params += ",kl_tolerance=" + this.klTolerance + ",sequences="
+    				+ this.minSequences + "-" + this.maxSequences;
+    	}
+    	if (this.trainOnObserved) {
+    		params += ",observed,bootstrap=" + this.bootstrapSamples;
+    	}
+    	if (this.maxTrainingIterations
+    			!= BaumWelchTrainer.DEFAULT_MAX_ITERATIONS) {
+    		params += ",iterations=" + this.maxTrainingIterations;
+    	}
+    	if (this.trainingTolerance > 0) {
+    		params += ",training_tolerance=" + this.trainingTolerance;
+    	}
+    	return params;
+    }
+
+	/* Generate several observation sequences using a HMM */
+	static <O extends Observation> List<List<O>> generateSequences(Hmm<O> hmm)
+	{
+	  MarkovGenerator<O> mg = new MarkovGenerator<O>(hmm);
+	  List<List<O>> sequences = new ArrayList<List<O>>();
+
+	  for (int i = 0; i < 200; i++)
+	    sequences.add(mg.observationSequence(100));
+
+	  return sequences;
+	}
+
+	/**
+	 * Given the symbols of an Instance, initializes an HMM with
+	 * initialHMM(), then trains it on sequences it generates or, if
+	 * trainOnObserved, on the symbols themselves, until the training
+	 * tolerance or the largest number of iterations is reached.
+	 *
+	 * @param symbols the symbols of an Instance
+	 * @param states number of states of the generated HMM
+	 * @param alphabet the symbols of all the data
+	 * @return HMM<ObservationInteger>
+	 */
+	private Hmm<ObservationInteger> initHMM(int[] symbols, int states
+			,SymbolAlphabet alphabet) {
+		Hmm<ObservationInteger> hmm = initialHMM(symbols, states, alphabet);
+		BaumWelchTrainer bwt = new BaumWelchTrainer();
+		bwt.setMaxIterations(maxTrainingIterations);
+		bwt.setTolerance(trainingTolerance);
+		int[][] sequences = trainOnObserved ?
+				TrainingSequences.observed(symbols) : new int[0][];
+		if (sequences.length == 0) {
+			sequences = FlatHmm.toArrays(generateSequences(hmm));
+		} else {
+			// an observed series can be long enough for alpha to underflow
+			bwt.setScaled(true);
+			if (bootstrapSamples > 0) {
+				sequences = TrainingSequences.bootstrap(sequences,
+						bootstrapSamples, new Random());
+			}
+		}
+		Hmm<ObservationInteger> learntHmm = bwt.learn(hmm, sequences);
+		//System.out.println(learntHmm.toString());
+		return learntHmm;
+	}
+
+	/**
+	 * The HMM initHMM() trains, before training.
+	 *
+	 * @param symbols the symbols of an Instance
+	 * @param states number of states of the generated HMM
+	 * @param alphabet the symbols of all the data
+	 * @return HMM<ObservationInteger>
+	 */
+	abstract Hmm<ObservationInteger> initialHMM(int[] symbols, int states
+			,SymbolAlphabet alphabet);
+
+    /**
+     * Taken from the jahmm library,
+     * Computes the Kullback-Leibler distance between two HMMs.
+     * Edited for NaN valued errors, and to score the sequences with
+     * FlatHmm rather than ForwardBackwardNaNCalculator, and to stop
+     * sampling once the estimate is within klTolerance.
+     *
+     * @param hmm1 The first HMM against which the distance is computed.
+     *             The distance is mesured with regard to this HMM (this must
+     *             be defined since the Kullback-Leibler distance is not
+     *             symetric).
+     * @param flat1 hmm1 in flat arrays
+     * @param flat2 The second HMM against which the distance is computed,
+     *             in flat arrays.
+     * @param rows array of 2 * states values for the forward algorithm
+     * @return The distance between <code>hmm1</code> and <code>hmm2</code> with
+     *      regard to <code>hmm1</code>
+     */
+
+    private double kldistance(Hmm<ObservationInteger> hmm1, FlatHmm flat1,
+    		FlatHmm flat2, double[] rows) {
+        int sequencesLength = this.sequencesLength;
+        int nbSequences = numSequences();
+        SequentialEstimate distance = newEstimate();
+
+        for (int i = 0; i < nbSequences && !distance.done(); i++) {
+
+                int[] oseq = FlatHmm.toArray(new MarkovGenerator<ObservationInteger>(
+                		hmm1).observationSequence(sequencesLength));
+
+                distance.add((flat1.lnProbability(oseq, rows) -
+                                flat2.lnProbability(oseq, rows)) / sequencesLength);
+        }
+
+        countSamples(distance.count());
+        return distance.mean();
+    }
+
+	/**
+	 * Calculates the symmetrized Hidden Markov Model
+	 * distance between two Instances using jahmm's
+	 * KullbackLeiblerDistanceCalculator class.
+	 *
+	 * @param x Instance
+	 * @param y Instance
+	 * @return The distance between x and y
+	 */
+	//@Override
+	public double distance(Instance x, Instance y) {
+		checkSequences();
+		// use the HMMs trained for the data if both are instances of it
+		final HmmCache c = cache;
+		if (c != null) {
+			final int i = c.indexOf(x);
+			final int j = c.indexOf(y);
+			if (i >= 0 && j >= 0) {
+				return cachedDistance(c, i, j);
+			}
+		}
+		// initializes HMMs for x and y
+		SymbolAlphabet alphabet = new SymbolAlphabet(new Instance[]{x, y});
+		Hmm<ObservationInteger> xHmm =
+				initHMM(alphabet.sequence(x), states, alphabet);
+		Hmm<ObservationInteger> yHmm =
+				initHMM(alphabet.sequence(y), states, alphabet);
+
+		return distance(xHmm, yHmm);
+	}
+
+	/**
+	 * The symmetrized Kullback-Leibler distance between two HMMs
+	 */
+	private double distance(Hmm<ObservationInteger> xHmm,
+			Hmm<ObservationInteger> yHmm) {
+		if (markovApproximation) {
+			SymbolChain xChain = new SymbolChain(xHmm, sequencesLength);
+			SymbolChain yChain = new SymbolChain(yHmm, sequencesLength);
+			return (xChain.klRate(yChain) + yChain.klRate(xChain)) / 2.0;
+		}
+		FlatHmm xFlat = new FlatHmm(xHmm);
+		FlatHmm yFlat = new FlatHmm(yHmm);
+		double[] rows = new double[2 * states];
+		double distxy = kldistance(xHmm, xFlat, yFlat, rows);
+		double distyx = kldistance(yHmm, yFlat, xFlat, rows);
+
+		return (distxy + distyx) / 2.0;
+	}
+
+	/**
+	 * The distance between the i-th and j-th instances of the data of
+	 * the cache, with their cached HMMs, and their cached symbol chains
+	 * if markovApproximation or cached sequences if sampleOnce.
+	 */
+	private double cachedDistance(HmmCache c, int i, int j) {
+		if (markovApproximation) {
+			if (i == j) {
+				return 0.0;
+			}
+			SymbolChain x = c.chain(i, states, trainer(), sequencesLength);
+			SymbolChain y = c.chain(j, states, trainer(), sequencesLength);
+			return (x.klRate(y) + y.klRate(x)) / 2.0;
+		}
+		if (!sampleOnce) {
+			return distance(c.model(i, states, trainer()),
+					c.model(j, states, trainer()));
+		}
+		if (i == j) {
+			return 0.0;
+		}
+		HmmCache.Sampled x = c.sampled(i, states, trainer(),
+				numSequences(), sequencesLength);
+		HmmCache.Sampled y = c.sampled(j, states, trainer(),
+				numSequences(), sequencesLength);
+		double[] rows = new double[2 * states];
+		SequentialEstimate xy = newEstimate();
+		SequentialEstimate yx = newEstimate();
+		double distxy = x.kldistance(y, rows, xy);
+		double distyx = y.kldistance(x, rows, yx);
+		countSamples(xy.count());
+		countSamples(yx.count());
+
+		return (distxy + distyx) / 2.0;
+	}
+
+	/**
+	 * The rows of the distance matrix are calculated a row at a time
+	 * if sampleOnce, on the cached sequences of the HMMs.
+	 */
+	@Override
+	protected boolean fillsRows() {
+		return sampleOnce && !markovApproximation;
+	}
+
+	/**
+	 * Calculates the distances between the i-th instance and each
+	 * instance before it as cachedDistance() does, but looking up the
+	 * sequences of the i-th HMM once for the row and scoring them under
+	 * each HMM before it, and theirs under it, with one array for the
+	 * rows of the forward algorithm.
+	 */
+	@Override
+	protected void rowDistances(Instances data, PrimitiveInstances store,
+			int i, double[] out) {
+		if (i == 0) {
+			return;
+		}
+		final HmmCache c = modelCache(data);
+		final HmmCache.Trainer trainer = trainer();
+		final int nbSequences = numSequences();
+		final HmmCache.Sampled x = c.sampled(i, states, trainer,
+				nbSequences, sequencesLength);
+		final double[] rows = new double[2 * states];
+		for (int j = 0; j < i; j++) {
+			final HmmCache.Sampled y = c.sampled(j, states, trainer,
+					nbSequences, sequencesLength);
+			final SequentialEstimate xy = newEstimate();
+			final SequentialEstimate yx = newEstimate();
+			final double distxy = x.kldistance(y, rows, xy);
+			final double distyx = y.kldistance(x, rows, yx);
+			countSamples(xy.count());
+			countSamples(yx.count());
+			out[j] = (distxy + distyx) / 2.0;
+		}
+	}
+
+	/**
+	 * Trains the HMM of each instance of the data once, with the symbols
+	 * of all the data mapped to integers together. distance() then uses
+	 * these HMMs for any pair of instances of the data, so a distance
+	 * matrix trains n HMMs rather than n(n-1). If sampleOnce, the
+	 * sequences of each HMM are generated as well. The HMMs are kept
+	 * until another data set is trained, so instances must not be
+	 * changed in place meanwhile.
+	 *
+	 * @param data
+	 */
+	public void trainModels(Instances data) {
+		checkSequences();
+		if (sampleOnce && !markovApproximation) {
+			modelCache(data).sampleAll(states, trainer(), numSequences(),
+					sequencesLength, numThreads);
+		} else {
+			modelCache(data).trainAll(states, trainer(), numThreads);
+		}
+	}
+
+	/**
+	 * The cache of HMMs of the data, replacing the cache of any
+	 * other data
+	 */
+	private synchronized HmmCache modelCache(Instances data) {
+		if (cache == null || !cache.holds(data)) {
+			cache = new HmmCache(data);
+		}
+		return cache;
+	}
+
+	/**
+	 * The number of HMMs trained by trainModels() that are kept
+	 */
+	int numCachedModels() {
+		final HmmCache c = cache;
+		return (c == null) ? 0 : c.size();
+	}
+
+	/**
+	 * Trains the HMMs of the cache with initHMM()
+	 */
+	private HmmCache.Trainer trainer() {
+		return new HmmCache.Trainer() {
+			public Hmm<ObservationInteger> train(int[] symbols, int states,
+					SymbolAlphabet alphabet) {
+				return initHMM(symbols, states, alphabet);
+			}
+		};
+	}
+
+	/**
+	 * The symbols are numbered over the whole data, and the HMMs emit
+	 * and the symbol chains are smoothed over all of them, so the
+	 * distances between the first instances change when instances with
+	 * new symbols are appended.
+	 */
+	@Override
+	public boolean dependsOnData() {
+		return true;
+	}
+
+	/**
+	 * Trains the HMM of each instance once before filling the rows
+	 * of the distance matrix, all of which are calculated again.
+	 */
+	@Override
+	public void extendDistMatrix(Instances data, DistanceMatrix disMatrix,
+			int numOld) {
+		if (disMatrix.size() != data.numInstances()) {
+			throw new IllegalArgumentException("The distance matrix does "
+					+ "not match the number of instances");
+		}
+		trainModels(data);
+		super.extendDistMatrix(data, disMatrix, numOld);
+	}
+
+	/**
+	 * Calculates the distances between query and each instance of the
+	 * data with the HMMs trained for the data, as trainModels() does,
+	 * so that repeated queries on the same data, e.g. the centroids of
+	 * each k-means iteration, train one HMM per query rather than one
+	 * per instance. The query is mapped into the alphabet of the data,
+	 * each of its symbols the data does not have to the nearest symbol
+	 * it does (see SymbolAlphabet.nearestSymbol()). Its distances may
+	 * therefore differ from those of distance(), whose alphabet holds
+	 * the symbols of both instances. If the query is an instance of the
+	 * data, its trained HMMs are used.
+	 *
+	 * @param query Instance
+	 * @param data
+	 * @param out array of at least data.numInstances() distances
+	 */
+	@Override
+	public void distancesTo(Instance query, Instances data, double[] out) {
+		if (out.length < data.numInstances()) {
+			throw new IllegalArgumentException("The output array is "
+					+ "shorter than the number of instances");
+		}
+		trainModels(data);
+		final HmmCache c = modelCache(data);
+		final int q = c.indexOf(query);
+		if (q >= 0) {
+			// the query is an instance of the trained data
+			for (int i = 0; i < data.numInstances(); i++) {
+				out[i] = (i == q) ? 0.0 : cachedDistance(c, q, i);
+			}
+			return;
+		}
+		final HmmCache.Trainer trainer = trainer();
+		final SymbolAlphabet alphabet = c.alphabet();
+		final Hmm<ObservationInteger> xHmm =
+				initHMM(alphabet.nearestSequence(query), states, alphabet);
+		if (markovApproximation) {
+			final SymbolChain x = new SymbolChain(xHmm, sequencesLength);
+			for (int i = 0; i < data.numInstances(); i++) {
+				final SymbolChain y = c.chain(i, states, trainer,
+						sequencesLength);
+				out[i] = (x.klRate(y) + y.klRate(x)) / 2.0;
+			}
+			return;
+		}
+		final double[] rows = new double[2 * states];
+		if (sampleOnce) {
+			final int nbSequences = numSequences();
+			final HmmCache.Sampled x = new HmmCache.Sampled(xHmm,
+					nbSequences, sequencesLength);
+			for (int i = 0; i < data.numInstances(); i++) {
+				final HmmCache.Sampled y = c.sampled(i, states, trainer,
+						nbSequences, sequencesLength);
+				final SequentialEstimate xy = newEstimate();
+				final SequentialEstimate yx = newEstimate();
+				final double distxy = x.kldistance(y, rows, xy);
+				final double distyx = y.kldistance(x, rows, yx);
+				countSamples(xy.count());
+				countSamples(yx.count());
+				out[i] = (distxy + distyx) / 2.0;
+			}
+			return;
+		}
+		final FlatHmm xFlat = new FlatHmm(xHmm);
+		for (int i = 0; i < data.numInstances(); i++) {
+			final Hmm<ObservationInteger> yHmm = c.model(i, states, trainer);
+			final FlatHmm yFlat = new FlatHmm(yHmm);
+			final double distxy = kldistance(xHmm, xFlat, yFlat, rows);
+			final double distyx = kldistance(yHmm, yFlat, xFlat, rows);
+			out[i] = (distxy + distyx) / 2.0;
+		}
+	}
+
+}
@@ -1,5 +1,12 @@
 package distance;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import weka.core.Instance;
 import weka.core.Instances;
 
 /**
@@ -10,6 +17,153 @@ import weka.core.Instances;
  */
 public abstract class AbstractDistance implements DistanceFunction {
 
+	/**
+	 * Side length of the square tiles the lower triangle of the
+	 * distance matrix is split into when it is computed in parallel.
+	 */
+	private static final int TILE_SIZE = 32;
+
+	/**
+	 * The number of threads used to calculate the distance matrix.
+	 * 1 calculates the matrix serially.
+	 */
+	protected int numThreads = 1;
+
+	/**
+	 * The largest difference between a distance calculated by the last
+	 * call filling a distance matrix and the distance stored in it
+	 */
+	private double maxDeviation = 0.0;
+
+	/**
+	 * The data last copied by primitiveInstances(), and its copy
+	 */
+	private transient Instances primitiveData;
+	private transient PrimitiveInstances primitiveStore;
+
+	/**
+	 * Set the number of threads used to calculate the distance matrix
+	 * @param t Number of threads
+	 */
+	public void setNumThreads(int t)
+			throws IllegalArgumentException {
+		if (t <= 0) {
+			throw new IllegalArgumentException("Cannot set the number "
+					+ "of threads to fewer than 1");
+		} else this.numThreads = t;
+	}
+
+	/**
+	 * Get the number of threads used to calculate the distance matrix
+	 * @return Number of threads
+	 */
+	public int getNumThreads() {
+		return this.numThreads;
+	}
+
+	/**
+	 * Get the largest difference between a distance calculated by the
+	 * last call filling a distance matrix and the distance stored in the
+	 * matrix. This is 0 unless the matrix rounds the distances, as a
+	 * single precision matrix does.
+	 * @return Maximum deviation from the calculated distances
+	 */
+	public double getMaxDeviation() {
+		return this.maxDeviation;
+	}
+
+	/**
+	 * Describes the settings that change the distances calculated,
+	 * such as the number of HMM states. Saved distance matrices are
+	 * looked up by the class of the distance function and this string.
+	 *
+	 * @return the settings of the distance function
+	 */
+	public String getParameters() {
+		return "";
+	}
+
+	/**
+	 * The values of the data copied into PrimitiveInstances. The copy of 
+	 * the last data is kept and reused while the data has the same
+	 * number of instances, so instances must not be changed in place
+	 * between calls.
+	 *
+	 * @param data
+	 * @return the values of the data
+	 */
+	protected synchronized PrimitiveInstances primitiveInstances(Instances data) {
+		if (data != primitiveData 
+				|| primitiveStore.numInstances() != data.numInstances()) {
+			primitiveStore = new PrimitiveInstances(data);
+			primitiveData = data;
+		}
+		return primitiveStore;
+	}
+
+	/**
+	 * Calculates the distances between query and each instance of the
+	 * data. Distance functions working on PrimitiveInstances use a copy
+	 * of the data kept between calls.
+	 */
+	@Override
+	public void distancesTo(Instance query, Instances data, double[] out) {
+		if (out.length < data.numInstances()) {
+			throw new IllegalArgumentException("The output array is "
+					+ "shorter than the number of instances");
+		}
+		if (this instanceof PrimitiveDistance) {
+			((PrimitiveDistance) this).distancesTo(
+					new PrimitiveInstances(new Instance[]{query}), 0,
+					primitiveInstances(data), out);
+		} else {
+			for (int i = 0; i < data.numInstances(); i++) {
+				out[i] = distance(query, data.instance(i));
+			}
+		}
+	}
+
+	/**
+	 * Whether the distance between two instances depends on the other
+	 * instances of the data, e.g. through symbols numbered over the whole
+	 * data. The distances between the first instances of a matrix are 
+	 * then recalculated rather than kept when instances are appended.
+	 * 
+	 * @return true if distances change with the rest of the data
+	 */
+	public boolean dependsOnData() {
+		return false;
+	}
+
+	/**
+	 * Whether the distance matrix is filled a row at a time by 
+	 * rowDistances(), for distance functions that calculate the 
+	 * distances from one instance to many faster than one at a time.
+	 * 
+	 * @return true to fill the matrix by rows
+	 */
+	protected boolean fillsRows() {
+		return false;
+	}
+
+	/**
+	 * Calculates the distances between the i-th instance and each
+	 * instance before it, out[j] = distance(store, i, store, j) for 
+	 * j < i. Only called if fillsRows().
+	 * 
+	 * @param data
+	 * @param store values of the data, null unless this is a 
+	 * 		PrimitiveDistance
+	 * @param i index of the row
+	 * @param out array of at least i distances
+	 */
+	protected void rowDistances(Instances data, PrimitiveInstances store, 
+			int i, double[] out) {
+		for (int j = 0; j < i; j++) {
+			out[j] = ((PrimitiveDistance) this).distance(store, i, store, j);
+		}
+	}
+
 	/**
 	 * Calculates the distance matrix containing the distances
 	 * of a set of instances (data).
@@ -17,21 +171,216 @@ public abstract class AbstractDistance implements DistanceFunction {
 	 * @return the distance matrix using the distance function
 	 */
 	@Override
-	public double[][] distMatrix(Instances data) {
-		final double[][] disMatrix = new double[data.numInstances()][data.numInstances()];
-		// fill diagonal
-		for (int i = 0; i < disMatrix.length; i++) {
-			disMatrix[i][i] = 0.0;
-		}
-		// Assuming symmetric measure, complete half and mirror across diagonal
-		for (int i = 0; i < disMatrix.length; i++) {
-			for (int j = 0; j < i; j++) {
-				final double dist = distance(data.instance(i), data.instance(j));
-				disMatrix[i][j] = dist;
-				disMatrix[j][i] = dist;
+	public DistanceMatrix distMatrix(Instances data) {
+		final DistanceMatrix disMatrix = 
+				new CondensedDistanceMatrix(data.numInstances());
+		distMatrix(data, disMatrix);
+		return disMatrix;
+	}
+
+	/**
+	 * Calculates the distance matrix containing the distances
+	 * of a set of instances (data) into the given matrix.
+	 */
+	@Override
+	public void distMatrix(Instances data, DistanceMatrix disMatrix) {
+		extendDistMatrix(data, disMatrix, 0);
+	}
+
+	/**
+	 * Calculates the distance matrix of data, where prev is the distance
+	 * matrix of its first prev.size() instances. Only the distances
+	 * involving the instances appended after those are calculated,
+	 * unless dependsOnData().
+	 * A CondensedDistanceMatrix or CondensedFloatDistanceMatrix is copied,
+	 * a MappedDistanceMatrix is extended in its file.
+	 *
+	 * @param prev distance matrix of the first instances of data
+	 * @param data
+	 * @return the distance matrix of data
+	 */
+	public DistanceMatrix extendDistMatrix(DistanceMatrix prev, Instances data)
+			throws IOException {
+		final int n = data.numInstances();
+		DistanceMatrix disMatrix;
+		if (prev instanceof CondensedDistanceMatrix) {
+			disMatrix = ((CondensedDistanceMatrix) prev).resize(n);
+		} else if (prev instanceof CondensedFloatDistanceMatrix) {
+			disMatrix = ((CondensedFloatDistanceMatrix) prev).resize(n);
+		} else if (prev instanceof MappedDistanceMatrix) {
+			disMatrix = ((MappedDistanceMatrix) prev).resize(n);
+		} else {
+			disMatrix = new CondensedDistanceMatrix(n);
+			for (int i = 0; i < prev.size(); i++) {
+				for (int j = 0; j < i; j++) {
+					disMatrix.set(i, j, prev.get(i, j));
+				}
 			}
 		}
+		extendDistMatrix(data, disMatrix, prev.size());
 		return disMatrix;
 	}
 
+	/**
+	 * Calculates the rows of the distance matrix for the instances of
+	 * the data from numOld on, where the matrix already holds the 
+	 * distances between the first numOld instances. If dependsOnData(),
+	 * those are calculated again over the whole data.
+	 *
+	 * @param data
+	 * @param disMatrix distance matrix with one row per instance of data
+	 * @param numOld number of instances already in the matrix
+	 */
+	public void extendDistMatrix(Instances data, DistanceMatrix disMatrix,
+			int numOld) {
+		if (disMatrix.size() != data.numInstances()) {
+			throw new IllegalArgumentException("The distance matrix does "
+					+ "not match the number of instances");
+		}
+		if (numOld < 0 || numOld > disMatrix.size()) {
+			throw new IllegalArgumentException("The number of instances "
+					+ "already in the matrix is out of range");
+		}
+		if (dependsOnData()) {
+			numOld = 0;
+		}
+		// copy the values once rather than once per pair
+		final PrimitiveInstances store = (this instanceof PrimitiveDistance) ?
+				primitiveInstances(data) : null;
+		// Assuming symmetric measure, only half is calculated
+		if (numThreads > 1 && disMatrix.size() > TILE_SIZE) {
+			maxDeviation = fillParallel(data, store, disMatrix, numOld);
+		} else {
+			maxDeviation = fillTile(data, store, disMatrix, numOld, 
+					disMatrix.size(), 0, disMatrix.size());
+		}
+	}
+
+	/**
+	 * Fills the cells (i, j), j < i, of the distance matrix with
+	 * rowStart <= i < rowEnd and colStart <= j < colEnd, or whole rows
+	 * at a time if fillsRows(). If store is not null, the distances are
+	 * calculated on its values.
+	 *
+	 * @return the largest difference between a distance and its
+	 * 		stored value
+	 */
+	private double fillTile(Instances data, PrimitiveInstances store,
+			DistanceMatrix disMatrix,
+			int rowStart, int rowEnd, int colStart, int colEnd) {
+		double maxDev = 0.0;
+		if (fillsRows()) {
+			// tiles of whole rows
+			final double[] row = new double[rowEnd];
+			for (int i = rowStart; i < rowEnd; i++) {
+				rowDistances(data, store, i, row);
+				for (int j = 0; j < i; j++) {
+					disMatrix.set(i, j, row[j]);
+					final double dev = Math.abs(row[j] - disMatrix.get(i, j));
+					if (dev > maxDev) {
+						maxDev = dev;
+					}
+				}
+			}
+			return maxDev;
+		}
+		for (int i = rowStart; i < rowEnd; i++) {
+			for (int j = colStart; j < Math.min(i, colEnd); j++) {
+				final double d = (store != null) ?
+						((PrimitiveDistance) this).distance(store, i, store, j) :
+						distance(data.instance(i), data.instance(j));
+				disMatrix.set(i, j, d);
+				final double dev = Math.abs(d - disMatrix.get(i, j));
+				if (dev > maxDev) {
+					maxDev = dev;
+				}
+			}
+		}
+		return maxDev;
+	}
+
+	/**
+	 * Splits the rows of the lower triangle from firstRow on into square
+	 * tiles, or single rows if fillsRows(), and fills them on a fork-join
+	 * pool. Each cell is still calculated as in the serial calculation,
+	 * so the result is identical.
+	 *
+	 * @return the largest difference between a distance and its
+	 * 		stored value
+	 */
+	private double fillParallel(Instances data, PrimitiveInstances store,
+			DistanceMatrix disMatrix, int firstRow) {
+		final int n = disMatrix.size();
+		final List<int[]> tiles = new ArrayList<int[]>();
+		if (fillsRows()) {
+			// a tile per row
+			for (int i = Math.max(firstRow, 1); i < n; i++) {
+				tiles.add(new int[]{i, i + 1, 0, n});
+			}
+		} else {
+			for (int rowStart = firstRow; rowStart < n; rowStart += TILE_SIZE) {
+				final int rowEnd = Math.min(rowStart + TILE_SIZE, n);
+				for (int colStart = 0; colStart < rowEnd - 1; colStart += TILE_SIZE) {
+					tiles.add(new int[]{rowStart, rowEnd, colStart, 
+							Math.min(colStart + TILE_SIZE, n)});
+				}
+			}
+		}
+		if (tiles.isEmpty()) {
+			return 0.0;
+		}
+		ForkJoinPool pool = new ForkJoinPool(numThreads);
+		try {
+			return pool.invoke(new TileTask(data, store, disMatrix, tiles, 
+					0, tiles.size()));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Computes a range of tiles, halving the range until a single tile
+	 * is left so that idle workers can steal the other half. Pairs
+	 * differ greatly in cost (long series, HMM training), which keeps
+	 * the threads evenly loaded. Returns the largest deviation of the
+	 * stored distances in the range.
+	 */
+	private class TileTask extends RecursiveTask<Double> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Instances data;
+		private final PrimitiveInstances store;
+		private final DistanceMatrix disMatrix;
+		private final List<int[]> tiles;
+		private final int start;
+		private final int end;
+
+		TileTask(Instances data, PrimitiveInstances store, 
+				DistanceMatrix disMatrix, List<int[]> tiles, int start, int end) {
+			this.data = data;
+			this.store = store;
+			this.disMatrix = disMatrix;
+			this.tiles = tiles;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected Double compute() {
+			if (end - start == 1) {
+				final int[] tile = tiles.get(start);
+				return fillTile(data, store, disMatrix, 
+						tile[0], tile[1], tile[2], tile[3]);
+			}
+			final int mid = (start + end) >>> 1;
+			final TileTask left = new TileTask(data, store, disMatrix, tiles, 
+					start, mid);
+			final TileTask right = new TileTask(data, store, disMatrix, tiles, 
+					mid, end);
+			invokeAll(left, right);
+			return Math.max(left.join(), right.join());
+		}
+	}
+
 }
@@ -0,0 +1,342 @@
+package distance;
+
+import java.util.Arrays;
+
+import be.ac.ulg.montefiore.run.jahmm.Hmm;
+import be.ac.ulg.montefiore.run.jahmm.ObservationInteger;
+import be.ac.ulg.montefiore.run.jahmm.OpdfInteger;
+import be.ac.ulg.montefiore.run.jahmm.OpdfIntegerFactory;
+
+/**
+ * Baum-Welch training of HMMs with integer observations on flat arrays.
+ * Each iteration is jahmm's BaumWelchLearner.iterate(), with every sum
+ * taken in the same order, so the same iterations give bit for bit the
+ * same HMM. Rather than jahmm's objects per sequence (alpha, beta, xi
+ * and gamma arrays, boxed observations), the model is held in flat
+ * arrays, xi is accumulated as it is calculated, and the alpha, beta
+ * and gamma buffers are reused by every sequence and iteration.
+ * <p>
+ * Training stops after maxIterations iterations, or earlier once an
+ * iteration improves the log likelihood of the sequences by at most the
+ * tolerance. With the default tolerance of 0, it always runs
+ * maxIterations iterations, as jahmm does (9 by default). As in jahmm,
+ * alpha and beta are not scaled by default, so the probability of a long
+ * sequence underflows to 0 and the trained HMM is NaN. With scaling, each
+ * row of alpha is normalized by its sum and each row of beta by the same
+ * factor, which gives the same xi and gamma up to rounding for sequences
+ * of any length.
+ *
+ * @author Shalisa Pattarawuttiwong
+ */
+public class BaumWelchTrainer {
+
+	/**
+	 * The number of iterations of jahmm's BaumWelchLearner
+	 */
+	public static final int DEFAULT_MAX_ITERATIONS = 9;
+
+	/**
+	 * The largest number of iterations
+	 */
+	protected int maxIterations = DEFAULT_MAX_ITERATIONS;
+
+	/**
+	 * The smallest improvement of the log likelihood for which training
+	 * goes on, 0 to always run maxIterations iterations
+	 */
+	protected double tolerance = 0.0;
+
+	/**
+	 * Whether alpha and beta are scaled
+	 */
+	protected boolean scaled = false;
+
+	/**
+	 * The number of iterations run by the last call to learn()
+	 */
+	private int iterations = 0;
+
+	/**
+	 * Set the largest number of iterations
+	 * @param m Number of iterations
+	 */
+	public void setMaxIterations(int m)
+			throws IllegalArgumentException {
+		if (m <= 0) {
+			throw new IllegalArgumentException("Cannot set the number "
+					+ "of iterations to fewer than 1");
+		} else this.maxIterations = m;
+	}
+
+	/**
+	 * Get the largest number of iterations
+	 * @return Number of iterations
+	 */
+	public int getMaxIterations() {
+		return this.maxIterations;
+	}
+
+	/**
+	 * Set the smallest improvement of the log likelihood of the
+	 * sequences for which training goes on. 0 always runs the largest
+	 * number of iterations.
+	 * @param t Tolerance
+	 */
+	public void setTolerance(double t)
+			throws IllegalArgumentException {
+		if (!(t >= 0)) {
+			throw new IllegalArgumentException("Cannot set the tolerance "
+					+ "to a negative value");
+		} else this.tolerance = t;
+	}
+
+	/**
+	 * Get the smallest improvement of the log likelihood for which
+	 * training goes on
+	 * @return Tolerance
+	 */
+	public double getTolerance() {
+		return this.tolerance;
+	}
+
+	/**
+	 * Set whether alpha and beta are scaled, which long sequences need
+	 * but which no longer gives bit for bit jahmm's HMM
+	 * @param s true to scale alpha and beta
+	 */
+	public void setScaled(boolean s) {
+		this.scaled = s;
+	}
+
+	/**
+	 * Get whether alpha and beta are scaled
+	 * @return true if alpha and beta are scaled
+	 */
+	public boolean getScaled() {
+		return this.scaled;
+	}
+
+	/**
+	 * Get the number of iterations whose result the last call to
+	 * learn() returned
+	 * @return Number of iterations
+	 */
+	public int getIterations() {
+		return this.iterations;
+	}
+
+	/**
+	 * Trains an HMM on sequences of integer observations.
+	 *
+	 * @param initialHmm HMM with OpdfInteger distributions to start from
+	 * @param sequences observation sequences of at least 2 observations
+	 * @return the trained HMM
+	 */
+	public Hmm<ObservationInteger> learn(Hmm<ObservationInteger> initialHmm,
+			int[][] sequences) {
+		if (sequences.length == 0) {
+			throw new IllegalArgumentException("No observation sequences");
+		}
+		final int n = initialHmm.nbStates();
+		int m = 0;
+		for (int i = 0; i < n; i++) {
+			m = Math.max(m, ((OpdfInteger) initialHmm.getOpdf(i)).nbEntries());
+		}
+		int maxLength = 0;
+		int totalLength = 0;
+		for (int[] seq: sequences) {
+			if (seq.length <= 1) {
+				throw new IllegalArgumentException("Observation sequence "
+						+ "too short");
+			}
+			maxLength = Math.max(maxLength, seq.length);
+			totalLength += seq.length;
+		}
+
+		// the model, and the model of the next iteration
+		double[] pi = new double[n];
+		double[] a = new double[n * n];
+		double[] b = new double[n * m];
+		for (int i = 0; i < n; i++) {
+			pi[i] = initialHmm.getPi(i);
+			for (int j = 0; j < n; j++) {
+				a[i * n + j] = initialHmm.getAij(i, j);
+			}
+			final OpdfInteger opdf = (OpdfInteger) initialHmm.getOpdf(i);
+			for (int o = 0; o < opdf.nbEntries(); o++) {
+				b[i * m + o] = opdf.probability(new ObservationInteger(o));
+			}
+		}
+		double[] nextPi = new double[n];
+		double[] nextA = new double[n * n];
+		double[] nextB = new double[n * m];
+
+		// buffers reused by all sequences and iterations
+		final double[] alpha = new double[maxLength * n];
+		final double[] beta = new double[maxLength * n];
+		final double[] scale = new double[maxLength];
+		final double[] gamma = new double[totalLength * n];
+		final double[] aNum = new double[n * n];
+		final double[] aDen = new double[n];
+
+		double prevLnLikelihood = Double.NaN;
+		iterations = 0;
+		for (int it = 0; it < maxIterations; it++) {
+			Arrays.fill(aNum, 0.);
+			Arrays.fill(aDen, 0.);
+			Arrays.fill(gamma, 0.);
+			double lnL = 0.;
+			int offset = 0;
+			for (int[] seq: sequences) {
+				final int T = seq.length;
+				// forward
+				for (int i = 0; i < n; i++) {
+					alpha[i] = pi[i] * b[i * m + seq[0]];
+				}
+				if (scaled) {
+					lnL += normalize(alpha, 0, n, scale);
+				}
+				for (int t = 1; t < T; t++) {
+					final int o = seq[t];
+					for (int j = 0; j < n; j++) {
+						double sum = 0.;
+						for (int i = 0; i < n; i++) {
+							sum += alpha[(t - 1) * n + i] * a[i * n + j];
+						}
+						alpha[t * n + j] = sum * b[j * m + o];
+					}
+					if (scaled) {
+						lnL += normalize(alpha, t, n, scale);
+					}
+				}
+				// backward
+				for (int i = 0; i < n; i++) {
+					beta[(T - 1) * n + i] = 1.;
+				}
+				for (int t = T - 2; t >= 0; t--) {
+					final int o = seq[t + 1];
+					for (int i = 0; i < n; i++) {
+						double sum = 0.;
+						for (int j = 0; j < n; j++) {
+							sum += beta[(t + 1) * n + j] * a[i * n + j]
+									* b[j * m + o];
+						}
+						beta[t * n + i] = scaled ? sum / scale[t + 1] : sum;
+					}
+				}
+				double probability = 0.;
+				if (!scaled) {
+					for (int i = 0; i < n; i++) {
+						probability += alpha[(T - 1) * n + i];
+					}
+					lnL += Math.log(probability);
+				}
+
+				// xi, summed into gamma and the transition counts
+				final int last = (offset + T - 1) * n;
+				for (int t = 0; t < T - 1; t++) {
+					final int o = seq[t + 1];
+					final int g = (offset + t) * n;
+					// with scaling, P(seq) is the product of the scales,
+					// all but the next one already divided out
+					final double norm = scaled ? scale[t + 1] : probability;
+					for (int i = 0; i < n; i++) {
+						double gammaTi = 0.;
+						for (int j = 0; j < n; j++) {
+							final double xi = alpha[t * n + i] * a[i * n + j]
+									* b[j * m + o] * beta[(t + 1) * n + j]
+									/ norm;
+							gammaTi += xi;
+							aNum[i * n + j] += xi;
+							if (t == T - 2) {
+								gamma[last + j] += xi;
+							}
+						}
+						gamma[g + i] = gammaTi;
+						aDen[i] += gammaTi;
+					}
+				}
+				offset += T;
+			}
+
+			if (tolerance > 0 && lnL - prevLnLikelihood <= tolerance) {
+				// the last iteration barely improved the model
+				break;
+			}
+			prevLnLikelihood = lnL;
+
+			// transitions
+			for (int i = 0; i < n; i++) {
+				for (int j = 0; j < n; j++) {
+					// state i is not reachable if aDen[i] is 0
+					nextA[i * n + j] = (aDen[i] == 0.) ? a[i * n + j]
+							: aNum[i * n + j] / aDen[i];
+				}
+			}
+			// initial states
+			Arrays.fill(nextPi, 0.);
+			offset = 0;
+			for (int[] seq: sequences) {
+				for (int i = 0; i < n; i++) {
+					nextPi[i] = nextPi[i] + gamma[offset * n + i] / sequences.length;
+				}
+				offset += seq.length;
+			}
+			// emissions
+			Arrays.fill(nextB, 0.);
+			for (int i = 0; i < n; i++) {
+				double sum = 0.;
+				for (int k = 0; k < totalLength; k++) {
+					sum += gamma[k * n + i];
+				}
+				int k = 0;
+				for (int[] seq: sequences) {
+					for (int t = 0; t < seq.length; t++, k++) {
+						nextB[i * m + seq[t]] += gamma[k * n + i] / sum;
+					}
+				}
+			}
+
+			double[] swap = pi;
+			pi = nextPi;
+			nextPi = swap;
+			swap = a;
+			a = nextA;
+			nextA = swap;
+			swap = b;
+			b = nextB;
+			nextB = swap;
+			iterations++;
+		}
+
+		Hmm<ObservationInteger> hmm = new Hmm<ObservationInteger>(n,
+				new OpdfIntegerFactory(m));
+		for (int i = 0; i < n; i++) {
+			hmm.setPi(i, pi[i]);
+			for (int j = 0; j < n; j++) {
+				hmm.setAij(i, j, a[i * n + j]);
+			}
+			hmm.setOpdf(i, new OpdfInteger(
+					Arrays.copyOfRange(b, i * m, (i + 1) * m)));
+		}
+		return hmm;
+	}
+
+	/**
+	 * Divides row t of alpha by its sum, kept in scale[t].
+	 * @return the natural logarithm of the sum
+	 */
+	private static double normalize(double[] alpha, int t, int n,
+			double[] scale) {
+		double sum = 0.;
+		for (int i = 0; i < n; i++) {
+			sum += alpha[t * n + i];
+		}
+		for (int i = 0; i < n; i++) {
+			alpha[t * n + i] /= sum;
+		}
+		scale[t] = sum;
+		return Math.log(sum);
+	}
+
+}
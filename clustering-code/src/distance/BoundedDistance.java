@@ -0,0 +1,56 @@
+package distance;
+
+/**
+ * Interface for distance functions that can stop calculating a
+ * distance once it is known to exceed a cutoff, as in nearest-centroid
+ * searches where only distances below the best one so far matter.
+ *
+ * @author Shalisa Pattarawuttiwong
+ */
+public interface BoundedDistance extends PrimitiveDistance {
+
+	/**
+	 * The distance between the x-th instance of xs and the y-th 
+	 * instance of ys if it is at most cutoff, +Infinity otherwise.
+	 * 
+	 * @param xs instances holding x
+	 * @param x index of x in xs
+	 * @param ys instances holding y
+	 * @param y index of y in ys
+	 * @param cutoff largest distance of interest
+	 * @return distance between x and y, or +Infinity if it exceeds cutoff
+	 */
+	public double distance(PrimitiveInstances xs, int x, 
+			PrimitiveInstances ys, int y, double cutoff);
+
+	/**
+	 * The distances between the q-th instance of qs and each instance
+	 * of data, out[i] = distance(qs, q, data, i, cutoffs[i]).
+	 * 
+	 * @param qs instances holding the query
+	 * @param q index of the query in qs
+	 * @param data
+	 * @param cutoffs largest distance of interest for each instance
+	 * @param out array of at least data.numInstances() distances
+	 */
+	public void distancesTo(PrimitiveInstances qs, int q, 
+			PrimitiveInstances data, double[] cutoffs, double[] out);
+
+	/**
+	 * The cutoffs of the distances whose squares may be below the given
+	 * squared distances, as in k-means++ seeding. They are slightly
+	 * above the roots, so that rounding of d*d cannot put an abandoned
+	 * distance below its squared distance.
+	 * 
+	 * @param minDistSquared smallest squared distance of each instance
+	 * @return cutoff of each instance
+	 */
+	public static double[] squaredCutoffs(double[] minDistSquared) {
+		final double[] cutoffs = new double[minDistSquared.length];
+		for (int i = 0; i < cutoffs.length; i++) {
+			cutoffs[i] = Math.sqrt(minDistSquared[i]) * (1 + 1e-9);
+		}
+		return cutoffs;
+	}
+
+}
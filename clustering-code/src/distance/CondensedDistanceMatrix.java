@@ -0,0 +1,110 @@
+package distance;
+
+/**
+ * Distance matrix that stores only the strict upper triangle,
+ * n(n-1)/2 entries, in a single primitive array. The triangle is laid
+ * out column by column: the distance between i and j, i < j, is
+ * at j(j-1)/2 + i. Rows of the lower triangle are therefore contiguous,
+ * which is the order the distance matrix is filled and scanned in.
+ *
+ * @author Shalisa Pattarawuttiwong
+ */
+public class CondensedDistanceMatrix implements DistanceMatrix {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The number of instances
+	 */
+	private final int n;
+
+	/**
+	 * The distances of the strict upper triangle
+	 */
+	private final double[] distances;
+
+	/**
+	 * Constructor for a CondensedDistanceMatrix of n instances,
+	 * with all distances 0.
+	 * 
+	 * @param n number of instances
+	 */
+	public CondensedDistanceMatrix(int n) throws IllegalArgumentException {
+		if (n < 0) {
+			throw new IllegalArgumentException("The number of instances "
+					+ "cannot be negative");
+		}
+		final long length = numEntries(n);
+		if (length > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("Too many instances (" + n
+					+ ") to hold the distance matrix in one array");
+		}
+		this.n = n;
+		this.distances = new double[(int) length];
+	}
+
+	/**
+	 * The number of entries of the strict upper triangle of an n x n matrix.
+	 * 
+	 * @param n number of instances
+	 * @return n(n-1)/2
+	 */
+	public static long numEntries(int n) {
+		return (long) n * (n - 1) / 2;
+	}
+
+	/**
+	 * The position of the distance between i and j in the condensed
+	 * layout.
+	 * 
+	 * @param i index of the first instance
+	 * @param j index of the second instance, j != i
+	 * @return max(i,j)(max(i,j)-1)/2 + min(i,j)
+	 */
+	public static long index(int i, int j) {
+		if (i > j) {
+			return (long) i * (i - 1) / 2 + j;
+		}
+		return (long) j * (j - 1) / 2 + i;
+	}
+
+	/**
+	 * Returns a matrix of n instances that starts with the distances of 
+	 * this one. Appending instances only appends entries to the layout, 
+	 * so the distances are copied in one block.
+	 * 
+	 * @param n number of instances, at least size()
+	 * @return the larger matrix, with all new distances 0
+	 */
+	public CondensedDistanceMatrix resize(int n) {
+		if (n < this.n) {
+			throw new IllegalArgumentException("Cannot shrink a distance matrix");
+		}
+		CondensedDistanceMatrix m = new CondensedDistanceMatrix(n);
+		System.arraycopy(distances, 0, m.distances, 0, distances.length);
+		return m;
+	}
+
+	@Override
+	public int size() {
+		return n;
+	}
+
+	@Override
+	public double get(int i, int j) {
+		if (i == j) {
+			return 0.0;
+		}
+		return distances[(int) index(i, j)];
+	}
+
+	@Override
+	public void set(int i, int j, double d) {
+		if (i == j) {
+			throw new IllegalArgumentException("Cannot set the distance "
+					+ "of an instance to itself");
+		}
+		distances[(int) index(i, j)] = d;
+	}
+
+}
@@ -0,0 +1,84 @@
+package distance;
+
+/**
+ * Single precision version of CondensedDistanceMatrix, using half the
+ * memory. Distances are rounded to the nearest float when set, which
+ * is exact for distances of up to 2^24 cells in Euclidean, Manhattan 
+ * and Edit distances between cell counts.
+ *
+ * @author Shalisa Pattarawuttiwong
+ */
+public class CondensedFloatDistanceMatrix implements DistanceMatrix {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The number of instances
+	 */
+	private final int n;
+
+	/**
+	 * The distances of the strict upper triangle, laid out as in
+	 * CondensedDistanceMatrix
+	 */
+	private final float[] distances;
+
+	/**
+	 * Constructor for a CondensedFloatDistanceMatrix of n instances,
+	 * with all distances 0.
+	 * 
+	 * @param n number of instances
+	 */
+	public CondensedFloatDistanceMatrix(int n) throws IllegalArgumentException {
+		if (n < 0) {
+			throw new IllegalArgumentException("The number of instances "
+					+ "cannot be negative");
+		}
+		final long length = CondensedDistanceMatrix.numEntries(n);
+		if (length > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("Too many instances (" + n
+					+ ") to hold the distance matrix in one array");
+		}
+		this.n = n;
+		this.distances = new float[(int) length];
+	}
+
+	/**
+	 * Returns a matrix of n instances that starts with the distances of 
+	 * this one.
+	 * 
+	 * @param n number of instances, at least size()
+	 * @return the larger matrix, with all new distances 0
+	 */
+	public CondensedFloatDistanceMatrix resize(int n) {
+		if (n < this.n) {
+			throw new IllegalArgumentException("Cannot shrink a distance matrix");
+		}
+		CondensedFloatDistanceMatrix m = new CondensedFloatDistanceMatrix(n);
+		System.arraycopy(distances, 0, m.distances, 0, distances.length);
+		return m;
+	}
+
+	@Override
+	public int size() {
+		return n;
+	}
+
+	@Override
+	public double get(int i, int j) {
+		if (i == j) {
+			return 0.0;
+		}
+		return distances[(int) CondensedDistanceMatrix.index(i, j)];
+	}
+
+	@Override
+	public void set(int i, int j, double d) {
+		if (i == j) {
+			throw new IllegalArgumentException("Cannot set the distance "
+					+ "of an instance to itself");
+		}
+		distances[(int) CondensedDistanceMatrix.index(i, j)] = (float) d;
+	}
+
+}
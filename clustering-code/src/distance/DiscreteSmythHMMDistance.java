@@ -1,19 +1,10 @@
 package distance;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-
 import clustering.KMeans;
 import be.ac.ulg.montefiore.run.jahmm.Hmm;
-import be.ac.ulg.montefiore.run.jahmm.Observation;
 import be.ac.ulg.montefiore.run.jahmm.ObservationInteger;
 import be.ac.ulg.montefiore.run.jahmm.OpdfInteger;
 import be.ac.ulg.montefiore.run.jahmm.OpdfIntegerFactory;
-import be.ac.ulg.montefiore.run.jahmm.learn.BaumWelchLearner;
-import be.ac.ulg.montefiore.run.jahmm.toolbox.MarkovGenerator;
 import weka.core.Attribute;
 import weka.core.FastVector;
 import weka.core.Instance;
@@ -26,167 +17,84 @@ import weka.core.Instances;
  * @author Shalisa Pattarawuttiwong
  *
  */
-public class DiscreteSmythHMMDistance extends AbstractDistance {
+public class DiscreteSmythHMMDistance extends AbstractDiscreteHMMDistance {
 	
     /**
-     * The number of HMM states to generate.
-     */
-    protected int states;
-    
-    /**
-     * Instance 
-     */
-    protected Instance x;
-    
-    /**
-     * Instance
+     * The length of the sequences kldistance() generates
      */
-    protected Instance y;
+    private static final int SEQUENCES_LENGTH = 1000;
     
 	/**
 	 * Constructor for HMMDistance.
 	 */
 	public DiscreteSmythHMMDistance(Instance a, Instance b, int m) {
-         this.states = m;
-         this.x = a;
-         this.y = b;
+		super(SEQUENCES_LENGTH, a, b, m);
     }
 	
 	/**
 	 * Constructor for HMMDistance.
 	 */
 	public DiscreteSmythHMMDistance() {
-    }
-    
-    /**
-     * Set the number of HMM states to generate
-     * @param m Number of states
-     */
-    public void setNumStates(int m)
-    		throws IllegalArgumentException{
-    	if (m <= 0) {
-    		throw new IllegalArgumentException("Cannot set the number "
-    				+ "of states to fewer than 1");
-    	} else this.states = m;
-    }
-    
-    /**
-     * Get the number of HMM states to generate
-     * @return m Number of states
-     */
-    public int getNumStates() {
-    	return this.states;
+		super(SEQUENCES_LENGTH);
     }
 
 	/**
-	 * Given a set of cluster labels, partitions x into k clusters.
-	 * @param x Instances
-	 * @param labels cluster labels for x
+	 * Given a set of cluster labels, partitions the symbols into
+	 * k clusters.
+	 * @param symbols symbols of the clustered windows
+	 * @param labels cluster labels for the symbols
 	 * @param k number of clusters
-	 * @param multiToDiscrete mapping of symbol to integer key
-	 * @return An array of Instances, each of which contains the
-	 * 		series from one cluster, where the series within 
-	 * 		clusters are concatenated.
+	 * @return An array of the symbols of each cluster, in the order
+	 * 		of the series.
 	 */
-	private int[][] partition(Instances x, int[] labels, int k, 
-			HashMap<String, Integer> multiToDiscrete) {
+	private int[][] partition(int[] symbols, int[] labels, int k) {
 		
-		ArrayList<Instance> part = new ArrayList<Instance>();
-		
-		int[][] vals = new int[k][];
-		Map<Integer,Integer> occur = new HashMap<Integer,Integer>();
+		int[] occur = new int[k];
 		// figure out occurrences of each label
 		for (int l: labels){
-			if (occur.containsKey(l)) {
-				occur.put(l, occur.get(l) + 1);
-			} else {
-				occur.put(l, 1);
-			}
+			occur[l] += 1;
 		}
 		
 		// initialize arrays
+		int[][] vals = new int[k][];
 		for (int i = 0; i < k; i++) {
-			part.add(new Instance(occur.get(i)));
-			vals[i] = new int[occur.get(i)];
+			vals[i] = new int[occur[i]];
 		}
 		
 		// partition according to labels
 		for (int i = labels.length - 1; i >= 0; i--) {
-			double in = x.instance(i).value(0);
-			double out = x.instance(i).value(1);
-			String key = Arrays.toString(new double[]{in, out});
-			vals[labels[i]][occur.get(labels[i]) - 1] = 
-					multiToDiscrete.get(key);
-			occur.put(labels[i], occur.get(labels[i]) - 1);
+			occur[labels[i]] -= 1;
+			vals[labels[i]][occur[labels[i]]] = symbols[i];
 		}
 		return vals;
 	}
     
-	/**
-	 * Maps symbols (pairs of (in,out) cell counts) to integers.
-	 * @param x Instance 
-	 * @param y Instance 
-	 * @return HashMap for strings to integers
-	 */
-	private HashMap<String,Integer> symbolsToIntegers(Instance x, Instance y) {
-		// map unique symbols to integers
-        HashMap<String, Integer> multiToDiscrete = 
-        		new HashMap<String, Integer>();
-        
-        // unique symbols and sort
-		double[] arrayX = x.toDoubleArray();
-		double[] arrayY = y.toDoubleArray();
-		double[] arrayBoth = new double[arrayX.length + arrayY.length];
-		System.arraycopy(arrayX, 0, arrayBoth, 0, arrayX.length);
-		System.arraycopy(arrayY, 0, arrayBoth, arrayX.length, arrayY.length);
-	    
-		double[][] pairsArray = new double[arrayBoth.length/2][2];
-	    for (int i = 0; i < arrayBoth.length; i += 2) {
-	    	pairsArray[i/2][0] = arrayBoth[i];
-	    	pairsArray[i/2][1] = arrayBoth[i+1];
-	    }
-
-	    // sort symbols from increasing to decreasing
-		Arrays.sort(pairsArray, new java.util.Comparator<double[]>() {
-		    public int compare(double[] a, double[] b) {
-		        return Double.compare(a[0], b[0]);
-		    }
-		});
-		
-		// map each unique symbol to integer
-        int disVal = 0;
-        for (int i = 0; i < pairsArray.length; i++) {
-        	String pair = Arrays.toString(pairsArray[i]);
-        	if (!(multiToDiscrete.containsKey(pair))) {
-        		multiToDiscrete.put(pair,disVal);
-            	disVal += 1;
-        	} 
-        }	
-        return multiToDiscrete;
-	}
-	
 	/**
 	 * Clusters the symbols (excluding destroy states) with k-means
 	 * and manhattan distance
-	 * @param x Instance
+	 * @param symbols the symbols of an Instance
 	 * @param states Number of clusters/states (k)
-	 * @param multiToDiscrete HashMap from strings (symbols) to integers 
+	 * @param alphabet the symbols of all the data
 	 * @return k clusters 
 	 */
-	private int[][] smythInitClusters(Instance x, int states, 
-			HashMap<String,Integer> multiToDiscrete) {
-		// change instance x to to instances of (IN, OUT)
+	private int[][] smythInitClusters(int[] symbols, int states, 
+			SymbolAlphabet alphabet) {
+		// change the symbols to instances of (IN, OUT)
 		FastVector attInfo = new FastVector();
 		attInfo.addElement(new Attribute("IN", 0));
 		attInfo.addElement(new Attribute("OUT", 0));
 		
 		Instances xInsts = new Instances("cellCount",attInfo, 
-				x.numAttributes());
-		for (int a = 0; a < x.numAttributes(); a = a + 2) {
-			Instance i = new Instance(2);
-			if (x.value(a) != -1 && x.value(a+1) != -1) {
-				i.setValue(0, x.value(a));
-				i.setValue(1, x.value(a + 1));
+				symbols.length);
+		int[] kept = new int[symbols.length];
+		for (int symbol: symbols) {
+			double in = alphabet.in(symbol);
+			double out = alphabet.out(symbol);
+			if (in != -1 && out != -1) {
+				Instance i = new Instance(2);
+				i.setValue(0, in);
+				i.setValue(1, out);
+				kept[xInsts.numInstances()] = symbol;
 				xInsts.add(i);
 			}
 		}
@@ -200,40 +108,26 @@ public class DiscreteSmythHMMDistance extends AbstractDistance {
         kmeans.cluster();        
         int[] labels = kmeans.getClusters();
         
-        // labels from clusters -> values in mapping
-        return partition(xInsts, labels, states-1, multiToDiscrete); 
-	}
-	
-	/* Generate several observation sequences using a HMM */
-	static <O extends Observation> List<List<O>> generateSequences(Hmm<O> hmm)
-	{
-	  MarkovGenerator<O> mg = new MarkovGenerator<O>(hmm);
-	  List<List<O>> sequences = new ArrayList<List<O>>();
-
-	  for (int i = 0; i < 200; i++)
-	    sequences.add(mg.observationSequence(100));
-
-	  return sequences;
+        // labels from clusters -> symbols
+        return partition(kept, labels, states-1); 
 	}
 	
 	/**
-	 * Given an Instance, initializes an HMM (with Smyth's
-	 * initialization) uniform Pi and A parameters and calculates
-	 * a distribution that fits x for B.
+	 * The HMM initHMM() trains, before training.
 	 * 
-	 * @param x Instance
+	 * @param symbols the symbols of an Instance
 	 * @param states number of states of the generated HMM
+	 * @param alphabet the symbols of all the data
 	 * @return HMM<ObservationInteger>
 	 */
-	private Hmm<ObservationInteger> initHMM(Instance x, int states
-			,HashMap<String,Integer> multiToDiscrete) {
+	@Override
+	Hmm<ObservationInteger> initialHMM(int[] symbols, int states
+			,SymbolAlphabet alphabet) {
         
-		// map unique symbols to integers
-		//HashMap<String, Integer> multiToDiscrete = symbolsToIntegers(x, y); 
-        int disVal = multiToDiscrete.size();
+        int disVal = alphabet.size();
 	
-        // labels from clustering with values in mapping
-        int[][] part = smythInitClusters(x, states, multiToDiscrete); 
+        // symbols of each cluster
+        int[][] part = smythInitClusters(symbols, states, alphabet); 
          
         // for each cluster, calculate distribution of symbols
         double[][] bs = new double[states-1][disVal];
@@ -286,67 +180,7 @@ public class DiscreteSmythHMMDistance extends AbstractDistance {
 			}
 		}
 		
-		BaumWelchLearner bwl = new BaumWelchLearner();
-		Hmm<ObservationInteger> learntHmm = 
-				bwl.learn(hmm, generateSequences(hmm));
-		//System.out.println(learntHmm.toString());
-		return learntHmm;
-	}
-	
-    /**
-     * Taken from the jahmm library,
-     * Computes the Kullback-Leibler distance between two HMMs.
-     * Edited for NaN valued errors.
-     *
-     * @param hmm1 The first HMM against which the distance is computed.
-     *             The distance is mesured with regard to this HMM (this must
-     *             be defined since the Kullback-Leibler distance is not
-     *             symetric).
-     * @param hmm2 The second HMM against which the distance is computed.
-     * @return The distance between <code>hmm1</code> and <code>hmm2</code> with
-     *      regard to <code>hmm1</code>
-     */
-	
-    private <O extends Observation> double 
-    kldistance(Hmm<O> hmm1, Hmm<? super O> hmm2) {                      
-        int sequencesLength = 1000;
-        int nbSequences = 10;
-        double distance = 0.;
-            
-        for (int i = 0; i < nbSequences; i++) {
-                
-                List<O> oseq = new MarkovGenerator<O>(hmm1).
-                observationSequence(sequencesLength);
-
-                distance += (new ForwardBackwardNaNCalculator(oseq, hmm1).
-                                lnProbability() -
-                                new ForwardBackwardNaNCalculator(oseq, hmm2).
-                                lnProbability()) / sequencesLength;
-        }
-        
-        return distance / nbSequences;
-    }
-    
-	/**
-	 * Calculates the symmetrized Hidden Markov Model 
-	 * distance between two Instances using jahmm's
-	 * KullbackLeiblerDistanceCalculator class.
-	 * 
-	 * @param x Instance
-	 * @param y Instance
-	 * @return The distance between x and y
-	 */
-	//@Override 
-	public double distance(Instance x, Instance y) {
-		// initializes HMMs for x and y
-		HashMap<String, Integer> toDiscrete = symbolsToIntegers(x, y); 
-		Hmm<ObservationInteger> xHmm = initHMM(x, states, toDiscrete);
-		Hmm<ObservationInteger> yHmm = initHMM(y, states, toDiscrete);
-		
-		double distxy = kldistance(xHmm,yHmm);
-		double distyx = kldistance(yHmm,xHmm);
-
-		return (distxy + distyx) / 2.0;
+		return hmm;
 	}
 
-}
\ No newline at end of file
+}
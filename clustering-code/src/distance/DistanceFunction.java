@@ -20,6 +20,17 @@ public interface DistanceFunction extends Serializable {
 	 * @return distance between x and y
 	 */
 	public double distance(Instance x, Instance y);
+
+	/**
+	 * The distances between query and each instance of the data,
+	 * out[i] = distance(query, data.instance(i)). Implementations can
+	 * prepare the query once rather than for every instance.
+	 * 
+	 * @param query Instance
+	 * @param data
+	 * @param out array of at least data.numInstances() distances
+	 */
+	public void distancesTo(Instance query, Instances data, double[] out);
 	
 	/**
 	 * The distance matrix of the data provided.
@@ -27,6 +38,15 @@ public interface DistanceFunction extends Serializable {
 	 * @param data
 	 * @return distance matrix of the data given
 	 */
-	public double[][] distMatrix(Instances data);
+	public DistanceMatrix distMatrix(Instances data);
+
+	/**
+	 * Fills the given matrix, e.g. one stored off the heap, with the
+	 * distance matrix of the data provided.
+	 * 
+	 * @param data
+	 * @param out distance matrix with one row per instance of data
+	 */
+	public void distMatrix(Instances data, DistanceMatrix out);
 
 }
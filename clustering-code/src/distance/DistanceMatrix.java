@@ -0,0 +1,40 @@
+package distance;
+
+import java.io.Serializable;
+
+/**
+ * Interface for symmetric distance matrices with a zero diagonal,
+ * so that clustering code does not depend on how the distances
+ * are stored.
+ *
+ * @author Shalisa Pattarawuttiwong
+ */
+public interface DistanceMatrix extends Serializable {
+
+	/**
+	 * The number of instances the matrix holds distances for.
+	 * 
+	 * @return number of rows (and columns) of the matrix
+	 */
+	public int size();
+
+	/**
+	 * The distance between instances i and j. The distance of
+	 * an instance to itself is 0.
+	 * 
+	 * @param i index of the first instance
+	 * @param j index of the second instance
+	 * @return distance between i and j
+	 */
+	public double get(int i, int j);
+
+	/**
+	 * Sets the distance between instances i and j (and j and i).
+	 * 
+	 * @param i index of the first instance
+	 * @param j index of the second instance, j != i
+	 * @param d distance between i and j
+	 */
+	public void set(int i, int j, double d);
+
+}
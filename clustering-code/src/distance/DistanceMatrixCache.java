@@ -0,0 +1,245 @@
+package distance;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * Directory of distance matrices saved by content: each matrix is
+ * stored under a hash of the values of the data, the class of the
+ * distance function and its parameters. Running the same distance
+ * function on the same data again, e.g. in another experiment, maps
+ * the saved matrix instead of calculating it. Matrices saved in single
+ * precision are kept under other keys than those in double precision.
+ *
+ * @author Shalisa Pattarawuttiwong
+ */
+public class DistanceMatrixCache {
+
+	/**
+	 * Extension of the matrix files in the cache directory
+	 */
+	private static final String EXTENSION = ".dmx";
+
+	/**
+	 * The directory the matrices are saved in
+	 */
+	private final File dir;
+
+	/**
+	 * Whether the matrices are saved as floats
+	 */
+	private final boolean singlePrecision;
+
+	/**
+	 * Constructor for a DistanceMatrixCache saving matrices in dir,
+	 * which is created if it does not exist.
+	 *
+	 * @param dir cache directory
+	 */
+	public DistanceMatrixCache(File dir) throws IOException {
+		this(dir, false);
+	}
+
+	/**
+	 * Constructor for a DistanceMatrixCache saving matrices in dir in 
+	 * single or double precision.
+	 *
+	 * @param dir cache directory
+	 * @param singlePrecision save the distances as floats
+	 */
+	public DistanceMatrixCache(File dir, boolean singlePrecision) 
+			throws IOException {
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Cannot create cache directory " + dir);
+		}
+		this.dir = dir;
+		this.singlePrecision = singlePrecision;
+	}
+
+	/**
+	 * Returns the distance matrix of the data, calculating and saving it
+	 * if it is not in the cache. If the matrix of the first instances of
+	 * the data was saved before, e.g. before new circuits were appended,
+	 * only the distances involving the remaining instances are
+	 * calculated, unless the distances depend on the whole data. The matrix is mapped copy-on-write, so changes made by 
+	 * the caller (e.g. by HierAgglo) do not reach the saved file.
+	 *
+	 * @param data
+	 * @param distFn distance function
+	 * @return distance matrix of the data
+	 */
+	public DistanceMatrix distMatrix(Instances data, DistanceFunction distFn)
+			throws IOException {
+		final File f = file(data, distFn);
+		if (!f.isFile()) {
+			// calculate into a temporary file first so that an interrupted
+			// run never leaves a partial matrix under the key
+			final File tmp = File.createTempFile("dist", ".tmp", dir);
+			try {
+				final String[] keys = prefixKeys(data, distFn, singlePrecision);
+				final int numOld = (distFn instanceof AbstractDistance
+						&& !((AbstractDistance) distFn).dependsOnData()) ?
+						longestSavedPrefix(keys) : 0;
+				MappedDistanceMatrix m;
+				if (numOld > 0) {
+					Files.copy(new File(dir, keys[numOld] + EXTENSION).toPath(),
+							tmp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+					m = MappedDistanceMatrix.open(tmp, MapMode.READ_WRITE)
+							.resize(data.numInstances());
+					((AbstractDistance) distFn).extendDistMatrix(data, m, numOld);
+				} else {
+					m = MappedDistanceMatrix.create(tmp, data.numInstances(), 
+							singlePrecision);
+					distFn.distMatrix(data, m);
+				}
+				m.close();
+				if (!tmp.renameTo(f)) {
+					throw new IOException("Cannot move " + tmp + " to " + f);
+				}
+			} finally {
+				tmp.delete();
+			}
+		}
+		return MappedDistanceMatrix.open(f, MapMode.PRIVATE);
+	}
+
+	/**
+	 * The largest k < numInstances such that the distance matrix of the
+	 * first k instances of the data is saved, or 0 if there is none.
+	 */
+	private int longestSavedPrefix(String[] keys) {
+		for (int k = keys.length - 2; k > 1; k--) {
+			if (new File(dir, keys[k] + EXTENSION).isFile()) {
+				return k;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Whether the distance matrix of the data is in the cache.
+	 *
+	 * @param data
+	 * @param distFn distance function
+	 * @return true if the matrix was saved before
+	 */
+	public boolean contains(Instances data, DistanceFunction distFn) {
+		return file(data, distFn).isFile();
+	}
+
+	/**
+	 * The file the distance matrix of the data is saved in.
+	 */
+	File file(Instances data, DistanceFunction distFn) {
+		return new File(dir, key(data, distFn, singlePrecision) + EXTENSION);
+	}
+
+	/**
+	 * The SHA-256 hash (in hex) of the values of the data, the class
+	 * of the distance function and its parameters.
+	 *
+	 * @param data
+	 * @param distFn distance function
+	 * @return key of the distance matrix
+	 */
+	public static String key(Instances data, DistanceFunction distFn) {
+		return key(data, distFn, false);
+	}
+
+	/**
+	 * The key of the distance matrix of the data saved in single or
+	 * double precision. Keys in double precision are those of 
+	 * key(data, distFn).
+	 *
+	 * @param data
+	 * @param distFn distance function
+	 * @param singlePrecision whether the distances are saved as floats
+	 * @return key of the distance matrix
+	 */
+	public static String key(Instances data, DistanceFunction distFn, 
+			boolean singlePrecision) {
+		MessageDigest digest = header(data, distFn, singlePrecision);
+		for (int i = 0; i < data.numInstances(); i++) {
+			update(digest, data.instance(i));
+		}
+		return hex(digest.digest());
+	}
+
+	/**
+	 * The keys of the first k instances of the data, for k = 0, ...,
+	 * numInstances. The instances are hashed one after the other, so
+	 * these are found in a single pass over the data.
+	 */
+	static String[] prefixKeys(Instances data, DistanceFunction distFn, 
+			boolean singlePrecision) {
+		final String[] keys = new String[data.numInstances() + 1];
+		MessageDigest digest = header(data, distFn, singlePrecision);
+		for (int i = 0; i <= data.numInstances(); i++) {
+			try {
+				keys[i] = hex(((MessageDigest) digest.clone()).digest());
+			} catch (CloneNotSupportedException e) {
+				throw new IllegalStateException(e);
+			}
+			if (i < data.numInstances()) {
+				update(digest, data.instance(i));
+			}
+		}
+		return keys;
+	}
+
+	/**
+	 * Starts a hash with the distance function, its parameters, the
+	 * precision if it is single and the number of attributes of the data.
+	 */
+	private static MessageDigest header(Instances data, DistanceFunction distFn,
+			boolean singlePrecision) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		digest.update(distFn.getClass().getName().getBytes());
+		if (distFn instanceof AbstractDistance) {
+			digest.update(((AbstractDistance) distFn).getParameters().getBytes());
+		}
+		if (singlePrecision) {
+			digest.update("float".getBytes());
+		}
+		ByteBuffer buf = ByteBuffer.allocate(4);
+		buf.putInt(data.numAttributes());
+		digest.update(buf.array());
+		return digest;
+	}
+
+	/**
+	 * Adds the values of an instance to the hash.
+	 */
+	private static void update(MessageDigest digest, Instance inst) {
+		double[] values = inst.toDoubleArray();
+		ByteBuffer buf = ByteBuffer.allocate(4 + 8 * values.length);
+		buf.putInt(values.length);
+		for (double v: values) {
+			buf.putDouble(v);
+		}
+		digest.update(buf.array());
+	}
+
+	private static String hex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder();
+		for (byte b: bytes) {
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
+	}
+
+}
@@ -1,18 +1,139 @@
 package distance;
 
 import java.lang.Math;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
+import java.util.Comparator;
 
 import weka.core.Instance;
+import weka.core.Instances;
 
 /**
  * Implementation of the Edit Distance for two instances.
  * 
  * @author Shalisa Pattarawuttiwong
  */
-public class EditDistance extends AbstractDistance implements DistanceFunction {
+public class EditDistance extends AbstractDistance implements BoundedDistance {
+
+	/**
+	 * Windows i of x and j of y are only aligned if |i - j| <= bandWidth.
+	 * -1 aligns any windows.
+	 */
+	protected int bandWidth = -1;
+
+	/**
+	 * The lower bounds checked, in order, before a distance with a
+	 * cutoff is calculated
+	 */
+	protected LowerBound[] lowerBounds = {new VolumeBound(), new InOutBound()};
+
+	/**
+	 * The lower bounds add the same values as the DP table in another
+	 * order, so they are lowered by this fraction of the values added
+	 * to stay below the distance however both are rounded.
+	 */
+	private static final double BOUND_TOLERANCE = 1e-9;
+
+	/**
+	 * The number of DP cells each thread keeps to share the columns of 
+	 * the first windows between instances (16MB of doubles)
+	 */
+	private static final int MAX_SHARED_CELLS = 1 << 21;
+
+	/**
+	 * The number of windows of both instances from which a full DP table
+	 * is calculated by anti-diagonals rather than by rows
+	 */
+	static final int WAVEFRONT_WINDOWS = 256;
+
+	/**
+	 * Whether distances from one instance to many share the DP columns
+	 * of the windows the others have in common
+	 */
+	protected boolean sharedPrefixes = false;
+
+	/**
+	 * The instances last sorted by prefixOrder(), and their order
+	 */
+	private transient PrimitiveInstances orderedStore;
+	private transient int[] prefixOrder;
+
+	/**
+	 * Set the band width, restricting the alignments to windows at
+	 * most w apart: cells with |i - j| > w of the DP table are not
+	 * calculated, so a distance takes O(n w) rather than O(n^2) time.
+	 * Instances whose windows cannot all be aligned within the band 
+	 * are at an infinite distance. The distance is exact when w is at
+	 * least the number of windows.
+	 * @param w Band width, or -1 to align any windows
+	 */
+	public void setBandWidth(int w)
+			throws IllegalArgumentException {
+		if (w < -1) {
+			throw new IllegalArgumentException("Cannot set the band "
+					+ "width to fewer than 0 windows (or -1 for none)");
+		} else this.bandWidth = w;
+	}
+
+	/**
+	 * Get the band width
+	 * @return Band width, or -1 if any windows are aligned
+	 */
+	public int getBandWidth() {
+		return this.bandWidth;
+	}
+
+	/**
+	 * Share the DP columns of the first windows of instances when the
+	 * distances from one instance to many are calculated without a band,
+	 * as for a row of the distance matrix. The instances are sorted by 
+	 * their windows, and each DP table starts from the columns of the 
+	 * windows its instance has in common with the one before it, e.g. 
+	 * the windows of circuit setup. The distances are the same.
+	 * @param s Whether to share the columns of common first windows
+	 */
+	public void setSharedPrefixes(boolean s) {
+		this.sharedPrefixes = s;
+	}
+
+	/**
+	 * Get whether the DP columns of common first windows are shared
+	 * @return true if the columns are shared
+	 */
+	public boolean getSharedPrefixes() {
+		return this.sharedPrefixes;
+	}
+
+	/**
+	 * Set the lower bounds checked before a distance with a cutoff is
+	 * calculated, cheapest first. The DP table is not calculated for a
+	 * pair whose bound exceeds the cutoff. The bounds do not change the 
+	 * distances, only how many are abandoned.
+	 * @param bounds Lower bounds of the edit distance, none to always
+	 * 		calculate the DP table
+	 */
+	public void setLowerBounds(LowerBound... bounds)
+			throws IllegalArgumentException {
+		if (bounds == null || Arrays.asList(bounds).contains(null)) {
+			throw new IllegalArgumentException("Cannot set a null lower bound");
+		} else this.lowerBounds = bounds.clone();
+	}
+
+	/**
+	 * Get the lower bounds checked before a distance with a cutoff
+	 * is calculated
+	 * @return Lower bounds of the edit distance
+	 */
+	public LowerBound[] getLowerBounds() {
+		return this.lowerBounds.clone();
+	}
+
+	/**
+	 * The band width changes the distances calculated.
+	 */
+	@Override
+	public String getParameters() {
+		return (bandWidth < 0) ? "" : "band=" + bandWidth;
+	}
 
 	/**
 	 * The Edit Distance between two instances is the number of
@@ -35,75 +156,844 @@ public class EditDistance extends AbstractDistance implements DistanceFunction {
 	public double distance(Instance x, Instance y) {
 //        long startTime = System.nanoTime();
 		
-		if (x.numAttributes() % 2 != 0 || y.numAttributes() % 2 != 0) {
-			throw new IllegalArgumentException(
-					"Number of attributes are not even");
+		final double[] xAttrs = x.toDoubleArray();
+		return distance(xAttrs, 0, xAttrs.length, 
+				PrimitiveInstances.validLength(xAttrs, 0, xAttrs.length),
+				y.toDoubleArray(), 0, y.numAttributes(), bandWidth, 
+				Double.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * Calculates the edit distance between two instances if it is at
+	 * most cutoff. The DP table is abandoned as soon as the minimum of
+	 * a row exceeds cutoff: with windows of non-negative cell counts,
+	 * the distance is at least that minimum. If y has negative values 
+	 * at windows compared, the distance is calculated in full.
+	 *
+	 * @return the edit distance between the two instances, or
+	 * 		+Infinity if it exceeds cutoff
+	 */
+	public double distance(Instance x, Instance y, double cutoff) {
+		final double[] xAttrs = x.toDoubleArray();
+		return distance(xAttrs, 0, xAttrs.length, 
+				PrimitiveInstances.validLength(xAttrs, 0, xAttrs.length),
+				y.toDoubleArray(), 0, y.numAttributes(), bandWidth, cutoff);
+	}
+
+	/**
+	 * Calculates the edit distance between the x-th instance of xs
+	 * and the y-th instance of ys.
+	 *
+	 * @return the edit distance between the two instances
+	 */
+	@Override
+	public double distance(PrimitiveInstances xs, int x, 
+			PrimitiveInstances ys, int y) {
+		final Scratch scratch = SCRATCH.get();
+		scratch.setX(xs, x);
+		return scratch.distanceTo(ys, y, bandWidth, Double.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * Calculates the edit distance between the x-th instance of xs
+	 * and the y-th instance of ys if it is at most cutoff, as
+	 * distance(Instance, Instance, double) does. The DP table is not
+	 * calculated if one of the lower bounds exceeds cutoff.
+	 *
+	 * @return the edit distance between the two instances, or
+	 * 		+Infinity if it exceeds cutoff
+	 */
+	@Override
+	public double distance(PrimitiveInstances xs, int x, 
+			PrimitiveInstances ys, int y, double cutoff) {
+		if (pruned(xs, x, ys, y, cutoff)) {
+			return Double.POSITIVE_INFINITY;
 		}
-		
-		// convert to tuples of (in, out)
-		double[] xAttrs = x.toDoubleArray();
-		double[] yAttrs = y.toDoubleArray();
-		
-		List<double[]> xTup = new ArrayList<double[]>();
-		List<double[]> yTup = new ArrayList<double[]>();
-		
-		for (int numX = 0; numX < xAttrs.length; numX += 2) {
-			// Ignore all destroy states
-			if (xAttrs[numX] >= 0 && xAttrs[numX + 1] >= 0) {
-				double[] tup = new double[]{xAttrs[numX], xAttrs[numX + 1]};
-				xTup.add(tup);
+		final Scratch scratch = SCRATCH.get();
+		scratch.setX(xs, x);
+		return scratch.distanceTo(ys, y, bandWidth, cutoff);
+	}
+
+	/**
+	 * Calculates the edit distances between the q-th instance of qs 
+	 * and each instance of data. The windows of the query are found
+	 * once for all instances.
+	 */
+	@Override
+	public void distancesTo(PrimitiveInstances qs, int q, 
+			PrimitiveInstances data, double[] out) {
+		if (data.numInstances() == 0) {
+			return;
+		}
+		final Scratch scratch = SCRATCH.get();
+		scratch.setX(qs, q);
+		if (sharedPrefixes && bandWidth < 0) {
+			scratch.sharedDistancesTo(data, prefixOrder(data), 
+					data.numInstances(), out);
+			return;
+		}
+		for (int i = 0; i < data.numInstances(); i++) {
+			out[i] = scratch.distanceTo(data, i, bandWidth, 
+					Double.POSITIVE_INFINITY);
+		}
+	}
+
+	/**
+	 * The rows of the distance matrix are calculated a row at a time
+	 * when the DP columns of common first windows are shared.
+	 */
+	@Override
+	protected boolean fillsRows() {
+		return sharedPrefixes && bandWidth < 0;
+	}
+
+	/**
+	 * Calculates the edit distances between the i-th instance and each
+	 * instance before it, sharing the DP columns of their common first
+	 * windows.
+	 */
+	@Override
+	protected void rowDistances(Instances data, PrimitiveInstances store, 
+			int i, double[] out) {
+		if (i == 0) {
+			return;
+		}
+		final int[] order = prefixOrder(store);
+		final int[] before = new int[i];
+		int count = 0;
+		for (int k = 0; k < order.length; k++) {
+			if (order[k] < i) {
+				before[count++] = order[k];
+			}
+		}
+		final Scratch scratch = SCRATCH.get();
+		scratch.setX(store, i);
+		scratch.sharedDistancesTo(store, before, count, out);
+	}
+
+	/**
+	 * The indices of the instances sorted by their values, so that 
+	 * instances with the same first windows are next to each other. The
+	 * order of the last instances sorted is kept.
+	 */
+	private synchronized int[] prefixOrder(final PrimitiveInstances store) {
+		if (store != orderedStore) {
+			final Integer[] order = new Integer[store.numInstances()];
+			for (int i = 0; i < order.length; i++) {
+				order[i] = i;
 			}
+			final double[] values = store.values();
+			Arrays.sort(order, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer a, Integer b) {
+					final int aOff = store.offset(a);
+					final int bOff = store.offset(b);
+					final int len = Math.min(store.length(a), store.length(b));
+					for (int k = 0; k < len; k++) {
+						final int c = Double.compare(values[aOff + k], 
+								values[bOff + k]);
+						if (c != 0) {
+							return c;
+						}
+					}
+					return Integer.compare(store.length(a), store.length(b));
+				}
+			});
+			prefixOrder = new int[order.length];
+			for (int i = 0; i < order.length; i++) {
+				prefixOrder[i] = order[i];
+			}
+			orderedStore = store;
 		}
-		for (int numY = 0; numY < yAttrs.length; numY += 2) {
-			if (xAttrs[numY] >= 0 && xAttrs[numY + 1] >= 0) {
-				double[] tup = new double[]{yAttrs[numY], yAttrs[numY + 1]};
-				yTup.add(tup);
+		return prefixOrder;
+	}
+
+	/**
+	 * Calculates the edit distances between the q-th instance of qs 
+	 * and each instance of data that are at most their cutoffs. 
+	 * Instances whose lower bounds exceed their cutoffs are skipped.
+	 */
+	@Override
+	public void distancesTo(PrimitiveInstances qs, int q, 
+			PrimitiveInstances data, double[] cutoffs, double[] out) {
+		if (data.numInstances() == 0) {
+			return;
+		}
+		final Scratch scratch = SCRATCH.get();
+		scratch.setX(qs, q);
+		for (int i = 0; i < data.numInstances(); i++) {
+			if (pruned(qs, q, data, i, cutoffs[i])) {
+				out[i] = Double.POSITIVE_INFINITY;
+			} else {
+				out[i] = scratch.distanceTo(data, i, bandWidth, cutoffs[i]);
 			}
 		}
-		
-		int lengthX = xTup.size();
-		int lengthY = yTup.size();
-		
-	    // build a distance matrix 
-	    double[][] disMatrix = new double[lengthX + 1][lengthY + 1];
-	    
-	    disMatrix[0][0] = 0;
-	    
-	    // fill in 0th row with the value of each attribute of x
-	    // + previous attributes of x
-	    for (int i = 1; i <= lengthX; i++) {
-	    	//disMatrix[i][0] = x.value(i - 1) + disMatrix[i-1][0];
-	    	disMatrix[i][0] = xTup.get(i-1)[0] + xTup.get(i-1)[1] 
-	    			+ disMatrix[i-1][0];
-	    }
-
-	    // fill in 0th col with the value of each attribute of y
-	    // + previous attributes of y
-	    for (int j = 1; j <= lengthY; j++) {
-	    	disMatrix[0][j] = yTup.get(j-1)[0] + yTup.get(j-1)[1] 
-	    			+ disMatrix[0][j-1];
-	    }
-
-	    for (int i = 1; i <= lengthX; i++) {
-	    	for (int j = 1; j <= lengthY; j++) {
-	    		// -1 because 0th row/col filled 
-				if (Arrays.equals(xTup.get(i - 1), yTup.get(j - 1))) {  
-	    			disMatrix[i][j] = disMatrix[i - 1][j - 1];
-	    		} else {
-	    			double min = Math.min((
-	    					Math.abs(xTup.get(i-1)[0] - yTup.get(j-1)[0]) 
-	        		  		+ Math.abs(xTup.get(i-1)[1] - yTup.get(j-1)[1])
-	    					+ disMatrix[i-1][j-1]),
-	        		  		Math.min((xTup.get(i-1)[0] + xTup.get(i-1)[1] 
-	        		  				+ disMatrix[i-1][j]),
-	        		  				(yTup.get(j-1)[0] + yTup.get(j-1)[1] 
-	        		  						+ disMatrix[i][j-1])));
-	    			disMatrix[i][j] = min;
-	    			
-		  	    }
-	    	}
-	    }
-	    return disMatrix[lengthX][lengthY];
+	}
+
+	/**
+	 * Whether a lower bound of the distance between x and y exceeds
+	 * cutoff, checking the bounds in order.
+	 */
+	private boolean pruned(PrimitiveInstances xs, int x, 
+			PrimitiveInstances ys, int y, double cutoff) {
+		if (cutoff == Double.POSITIVE_INFINITY) {
+			return false;
+		}
+		for (LowerBound bound: lowerBounds) {
+			if (bound.lowerBound(xs, x, ys, y) > cutoff) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * The number of windows of y compared with the windows of x by the
+	 * edit distance when the windows kept of x are its leading windows
+	 * (those before its first destroy state) and the windows of y at 
+	 * the same positions are not negative, or -1 otherwise. The lower 
+	 * bounds hold for such pairs only.
+	 */
+	static int comparedWindows(PrimitiveInstances xs, int x, 
+			PrimitiveInstances ys, int y) {
+		final int lengthX = xs.leadingWindows(x);
+		if (2 * lengthX != xs.validLength(x) || xs.length(x) % 2 != 0
+				|| ys.length(y) % 2 != 0 || ys.length(y) > xs.length(x)) {
+			// destroy states between windows of x, or invalid instances
+			return -1;
+		}
+		final int lengthY = Math.min(lengthX, ys.length(y) / 2);
+		return (ys.leadingWindows(y) >= lengthY) ? lengthY : -1;
+	}
+
+	/**
+	 * Lower bound on the difference between the total cell counts of 
+	 * x and y. A substitution costs at least the difference of the 
+	 * totals of its windows, and an insertion or deletion costs the 
+	 * total of its window.
+	 */
+	public static class VolumeBound implements LowerBound {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public double lowerBound(PrimitiveInstances xs, int x,
+				PrimitiveInstances ys, int y) {
+			final int lengthY = comparedWindows(xs, x, ys, y);
+			if (lengthY < 0) {
+				return Double.NEGATIVE_INFINITY;
+			}
+			final int lengthX = xs.leadingWindows(x);
+			final double totalX = xs.inSum(x, lengthX) + xs.outSum(x, lengthX);
+			final double totalY = ys.inSum(y, lengthY) + ys.outSum(y, lengthY);
+			return Math.abs(totalX - totalY) 
+					- BOUND_TOLERANCE * (totalX + totalY);
+		}
+	}
+
+	/**
+	 * Lower bound on the differences between the total in and the total
+	 * out cell counts of x and y, which is at least the VolumeBound:
+	 * every operation costs at least the difference it makes to the in
+	 * total plus the difference it makes to the out total.
+	 */
+	public static class InOutBound implements LowerBound {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public double lowerBound(PrimitiveInstances xs, int x,
+				PrimitiveInstances ys, int y) {
+			final int lengthY = comparedWindows(xs, x, ys, y);
+			if (lengthY < 0) {
+				return Double.NEGATIVE_INFINITY;
+			}
+			final int lengthX = xs.leadingWindows(x);
+			final double inX = xs.inSum(x, lengthX);
+			final double outX = xs.outSum(x, lengthX);
+			final double inY = ys.inSum(y, lengthY);
+			final double outY = ys.outSum(y, lengthY);
+			return Math.abs(inX - inY) + Math.abs(outX - outY)
+					- BOUND_TOLERANCE * (inX + outX + inY + outY);
+		}
+	}
+
+	/**
+	 * The edit distance between the values xv[xOff, xOff + xLen) and
+	 * yv[yOff, yOff + yLen), where x has no valid windows after xValid,
+	 * or +Infinity if it exceeds cutoff.
+	 */
+	private static double distance(double[] xv, int xOff, int xLen, int xValid,
+			double[] yv, int yOff, int yLen, int band, double cutoff) {
+		final Scratch scratch = SCRATCH.get();
+		scratch.setX(xv, xOff, xLen, xValid);
+		return scratch.distanceTo(yv, yOff, yLen, band, cutoff);
+	}
+
+	/**
+	 * Buffers of each thread, grown as needed and reused between calls
+	 * so that calculating a distance allocates nothing.
+	 */
+	private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<Scratch>() {
+		@Override
+		protected Scratch initialValue() {
+			return new Scratch();
+		}
+	};
+
+	/**
+	 * The windows of an instance x that are not in a destroy state, as
+	 * tuples of (in, out), along with their positions in x, and the 
+	 * buffers to calculate its distance to other instances. The windows 
+	 * of y at the same positions are compared with them. 
+	 * 
+	 * Idle windows of (0, 0) cost nothing to insert or delete, and
+	 * substituting one costs as much as inserting or deleting the other
+	 * window, so without a band or negative weights they are left out of 
+	 * the DP table. Every alignment then adds the same costs as before in
+	 * the same order, less additions of 0, so the distance is the same
+	 * to the last bit. For instances of PrimitiveInstances, the windows
+	 * are read from their runs of equal windows, so that a run of idle 
+	 * windows of y is left out at once rather than window by window.
+	 */
+	private static class Scratch {
+
+		/**
+		 * The number of attributes of x
+		 */
+		private int numAttributes;
+
+		/**
+		 * The number of windows of x kept
+		 */
+		private int lengthX;
+
+		/**
+		 * Whether the windows of x kept are its first lengthX windows,
+		 * so that the windows of y compared with them are its first
+		 * windows as well
+		 */
+		private boolean leadingX;
+
+		/**
+		 * The index of the in value of each window in x
+		 */
+		private int[] positions = new int[0];
+
+		private double[] xIn = new double[0];
+		private double[] xOut = new double[0];
+
+		/**
+		 * The number of windows of x kept that are not idle, and their
+		 * (in, out)
+		 */
+		private int activeX;
+		private double[] xActiveIn = new double[0];
+		private double[] xActiveOut = new double[0];
+
+		private double[] yIn = new double[0];
+		private double[] yOut = new double[0];
+
+		/**
+		 * Whether a window of y last gathered is negative (or NaN)
+		 */
+		private boolean negativeY;
+
+		/**
+		 * The columns of the DP tables of sharedDistancesTo(), one after
+		 * the other, for y without negative windows (compared with the
+		 * windows of x that are not idle) and for the others (compared
+		 * with all windows of x). Column j holds the distances between 
+		 * each prefix of x and the first j windows of the last y of its 
+		 * kind. The first columns are kept, the later ones take turns in
+		 * the last two.
+		 */
+		private final double[][] columns = {new double[0], new double[0]};
+
+		/**
+		 * The windows of the last y of each kind, and their number
+		 */
+		private final double[][] lastIn = {new double[0], new double[0]};
+		private final double[][] lastOut = {new double[0], new double[0]};
+		private final int[] lastLength = new int[2];
+
+		/**
+		 * The previous and current rows of the DP table
+		 */
+		private double[] prev = new double[1];
+		private double[] cur = new double[1];
+
+		/**
+		 * The windows of y reversed, and a third diagonal, for 
+		 * wavefront()
+		 */
+		private double[] yRevIn = new double[0];
+		private double[] yRevOut = new double[0];
+		private double[] diag = new double[1];
+
+		/**
+		 * Finds the windows of x.
+		 */
+		void setX(double[] xv, int xOff, int xLen, int xValid) {
+			if (xLen % 2 != 0) {
+				throw new IllegalArgumentException(
+						"Number of attributes are not even");
+			}
+			ensureCapacity(xValid / 2);
+			numAttributes = xLen;
+			int n = 0;
+			for (int a = 0; a < xValid; a += 2) {
+				// Ignore all destroy states
+				if (xv[xOff + a] >= 0 && xv[xOff + a + 1] >= 0) {
+					positions[n] = a;
+					xIn[n] = xv[xOff + a];
+					xOut[n] = xv[xOff + a + 1];
+					n++;
+				}
+			}
+			lengthX = n;
+			leadingX = (n == 0 || positions[n - 1] == 2 * (n - 1));
+			activeX = 0;
+			for (int i = 0; i < lengthX; i++) {
+				if (xIn[i] != 0 || xOut[i] != 0) {
+					xActiveIn[activeX] = xIn[i];
+					xActiveOut[activeX] = xOut[i];
+					activeX++;
+				}
+			}
+		}
+
+		/**
+		 * Finds the windows of the x-th instance of xs from its runs.
+		 */
+		void setX(PrimitiveInstances xs, int x) {
+			final int xLen = xs.length(x);
+			final int xValid = xs.validLength(x);
+			if (xLen % 2 != 0) {
+				throw new IllegalArgumentException(
+						"Number of attributes are not even");
+			}
+			ensureCapacity(xValid / 2);
+			numAttributes = xLen;
+			final double[] runIns = xs.runIns();
+			final double[] runOuts = xs.runOuts();
+			final int[] runCounts = xs.runCounts();
+			int n = 0;
+			activeX = 0;
+			int a = 0;
+			for (int r = xs.runOffset(x); a < xValid; r++) {
+				final double in = runIns[r];
+				final double out = runOuts[r];
+				final int count = Math.min(runCounts[r], (xValid - a) / 2);
+				// Ignore all destroy states
+				if (in >= 0 && out >= 0) {
+					final boolean idle = (in == 0 && out == 0);
+					for (int k = 0; k < count; k++) {
+						positions[n] = a + 2 * k;
+						xIn[n] = in;
+						xOut[n] = out;
+						n++;
+						if (!idle) {
+							xActiveIn[activeX] = in;
+							xActiveOut[activeX] = out;
+							activeX++;
+						}
+					}
+				}
+				a += 2 * count;
+			}
+			lengthX = n;
+			leadingX = (n == 0 || positions[n - 1] == 2 * (n - 1));
+		}
+
+		/**
+		 * Grows the buffers to hold x and y of the given number of
+		 * windows.
+		 */
+		private void ensureCapacity(int windows) {
+			if (positions.length < windows) {
+				final int capacity = windows;
+				positions = new int[capacity];
+				xIn = new double[capacity];
+				xOut = new double[capacity];
+				xActiveIn = new double[capacity];
+				xActiveOut = new double[capacity];
+				yIn = new double[capacity];
+				yOut = new double[capacity];
+				prev = new double[capacity + 1];
+				cur = new double[capacity + 1];
+				yRevIn = new double[capacity];
+				yRevOut = new double[capacity];
+				diag = new double[capacity + 1];
+			}
+		}
+
+		/**
+		 * Copies the windows of y at the positions of the windows of x
+		 * into yIn and yOut, and whether one of them is negative (or NaN)
+		 * into negativeY.
+		 * 
+		 * @return the number of windows of y compared
+		 */
+		private int gatherY(double[] yv, int yOff, int yLen) {
+			if (yLen % 2 != 0) {
+				throw new IllegalArgumentException(
+						"Number of attributes are not even");
+			}
+			if (yLen > numAttributes) {
+				throw new IllegalArgumentException("The second instance has "
+						+ "more attributes than the first");
+			}
+			
+			// windows of y where x is not in a destroy state
+			int lengthY = 0;
+			boolean negative = false;
+			while (lengthY < lengthX && positions[lengthY] < yLen) {
+				yIn[lengthY] = yv[yOff + positions[lengthY]];
+				yOut[lengthY] = yv[yOff + positions[lengthY] + 1];
+				negative |= !(yIn[lengthY] >= 0 && yOut[lengthY] >= 0);
+				lengthY++;
+			}
+			negativeY = negative;
+			return lengthY;
+		}
+
+		/**
+		 * Leaves the idle windows out of the first lengthY windows of y.
+		 * 
+		 * @return the number of windows of y left
+		 */
+		private int compactY(int lengthY) {
+			int activeY = 0;
+			for (int j = 0; j < lengthY; j++) {
+				if (yIn[j] != 0 || yOut[j] != 0) {
+					yIn[activeY] = yIn[j];
+					yOut[activeY] = yOut[j];
+					activeY++;
+				}
+			}
+			return activeY;
+		}
+
+		/**
+		 * Copies the windows of the y-th instance of ys compared with
+		 * the windows of x that are not idle into yIn and yOut, as 
+		 * gatherY() and compactY() do, but a run of equal windows at a
+		 * time. Only if leadingX, when the windows compared are the 
+		 * first windows of y.
+		 * 
+		 * @return the number of windows of y left, or -1 if one of the
+		 * 		windows compared is negative (or NaN)
+		 */
+		private int gatherActiveRuns(PrimitiveInstances ys, int y) {
+			final int yLen = ys.length(y);
+			if (yLen % 2 != 0) {
+				throw new IllegalArgumentException(
+						"Number of attributes are not even");
+			}
+			if (yLen > numAttributes) {
+				throw new IllegalArgumentException("The second instance has "
+						+ "more attributes than the first");
+			}
+			final double[] runIns = ys.runIns();
+			final double[] runOuts = ys.runOuts();
+			final int[] runCounts = ys.runCounts();
+			int remaining = Math.min(lengthX, yLen / 2);
+			int activeY = 0;
+			for (int r = ys.runOffset(y); remaining > 0; r++) {
+				final double in = runIns[r];
+				final double out = runOuts[r];
+				if (!(in >= 0 && out >= 0)) {
+					return -1;
+				}
+				final int count = Math.min(runCounts[r], remaining);
+				remaining -= count;
+				if (in != 0 || out != 0) {
+					for (int k = 0; k < count; k++) {
+						yIn[activeY] = in;
+						yOut[activeY] = out;
+						activeY++;
+					}
+				}
+			}
+			return activeY;
+		}
+
+		/**
+		 * The edit distance between x and the y-th instance of ys, as
+		 * distanceTo(ys.values(), ...) calculates it, with the windows of
+		 * y found from its runs where the idle windows are left out.
+		 */
+		double distanceTo(PrimitiveInstances ys, int y, int band,
+				double cutoff) {
+			if (band < 0 && leadingX) {
+				final int activeY = gatherActiveRuns(ys, y);
+				if (activeY >= 0) {
+					return table(xActiveIn, xActiveOut, activeX, activeY,
+							Math.max(activeX, activeY), cutoff, 
+							cutoff < Double.POSITIVE_INFINITY);
+				}
+			}
+			return distanceTo(ys.values(), ys.offset(y), ys.length(y), band,
+					cutoff);
+		}
+
+		/**
+		 * The edit distance between x and the values yv[yOff, yOff + yLen).
+		 * Only two rows of the DP table are kept, of one more than the
+		 * number of windows of y, which is at most that of x. If band
+		 * is not negative, only the cells with |i - j| <= band are 
+		 * calculated, and the cells next to those are infinite. Returns
+		 * +Infinity if the distance exceeds cutoff, abandoning the table
+		 * once a row exceeds it if no weight is negative.
+		 */
+		double distanceTo(double[] yv, int yOff, int yLen, int band,
+				double cutoff) {
+			int lengthY = gatherY(yv, yOff, yLen);
+			final boolean negative = negativeY;
+			// the windows of x are never negative (or NaN), so without 
+			// such windows of y no cell is smaller than the minimum of 
+			// the row above it
+			final boolean abandon = !negative && cutoff < Double.POSITIVE_INFINITY;
+			
+			if (band < 0 && !negative) {
+				final int activeY = compactY(lengthY);
+				return table(xActiveIn, xActiveOut, activeX, activeY,
+						Math.max(activeX, activeY), cutoff, abandon);
+			}
+			// y has no more windows than x
+			if (band < 0 || band > lengthX) {
+				band = lengthX;
+			} else if (lengthX - lengthY > band) {
+				// the last windows cannot be aligned within the band
+				return Double.POSITIVE_INFINITY;
+			}
+			return table(xIn, xOut, lengthX, lengthY, band, cutoff, abandon);
+		}
+
+		/**
+		 * Calculates the full DP table of the windows xIn, xOut and the
+		 * first lengthY windows of y by anti-diagonals, the cells (i, j)
+		 * with i + j = d for d = 1, ..., lengthX + lengthY. The cells of a
+		 * diagonal only depend on the two diagonals before it, so the 
+		 * kernel calculates them independently (with the Vector API if 
+		 * it is available), where a row depends on the cell to its left.
+		 * Each cell is calculated as in the table by rows.
+		 */
+		private double wavefront(double[] xIn, double[] xOut, int lengthX,
+				int lengthY) {
+			for (int j = 0; j < lengthY; j++) {
+				yRevIn[lengthY - 1 - j] = yIn[j];
+				yRevOut[lengthY - 1 - j] = yOut[j];
+			}
+			double[] d2 = diag;
+			double[] d1 = prev;
+			double[] cur = this.cur;
+			d1[0] = 0;
+			for (int d = 1; d <= lengthX + lengthY; d++) {
+				if (d <= lengthY) {
+					// 0th row: the value of each attribute of y
+					// + previous attributes of y
+					cur[0] = yIn[d-1] + yOut[d-1] + d1[0];
+				}
+				if (d <= lengthX) {
+					// 0th col: the value of each attribute of x
+					// + previous attributes of x
+					cur[d] = xIn[d-1] + xOut[d-1] + d1[d-1];
+				}
+				final int lo = Math.max(1, d - lengthY);
+				final int hi = Math.min(lengthX, d - 1);
+				if (lo <= hi) {
+					Kernels.INSTANCE.editDiagonal(xIn, xOut, yRevIn, yRevOut,
+							lengthY - d, d2, d1, cur, lo, hi);
+				}
+				final double[] tmp = d2;
+				d2 = d1;
+				d1 = cur;
+				cur = tmp;
+			}
+			return d1[lengthX];
+		}
+
+		/**
+		 * The edit distances between x and the instances order[0, count)
+		 * of data, into out[order[k]], without a band. The DP tables are
+		 * filled a column (window of y) at a time, and each instance 
+		 * starts from the columns of the windows it has in common with
+		 * the instance before it of the same kind, so instances with the
+		 * same first windows should be next to each other in the order.
+		 * Each cell is calculated as in table(), so the distances are the
+		 * same to the last bit.
+		 */
+		void sharedDistancesTo(PrimitiveInstances data, int[] order, 
+				int count, double[] out) {
+			final double[] values = data.values();
+			for (int kind = 0; kind < 2; kind++) {
+				final double[] xi = (kind == 0) ? xActiveIn : xIn;
+				final double[] xo = (kind == 0) ? xActiveOut : xOut;
+				final int rows = ((kind == 0) ? activeX : lengthX) + 1;
+				final int kept = keptColumns(rows);
+				if (columns[kind].length < (kept + 2) * rows) {
+					columns[kind] = new double[(kept + 2) * rows];
+				}
+				if (lastIn[kind].length < lengthX) {
+					lastIn[kind] = new double[lengthX];
+					lastOut[kind] = new double[lengthX];
+				}
+				lastLength[kind] = 0;
+				// 0th column: the value of each attribute of x
+				// + previous attributes of x
+				final double[] cells = columns[kind];
+				cells[0] = 0;
+				for (int i = 1; i < rows; i++) {
+					cells[i] = xi[i-1] + xo[i-1] + cells[i-1];
+				}
+			}
+			for (int k = 0; k < count; k++) {
+				final int y = order[k];
+				int lengthY = leadingX ? gatherActiveRuns(data, y) : -1;
+				final int kind;
+				if (lengthY >= 0) {
+					kind = 0;
+				} else {
+					lengthY = gatherY(values, data.offset(y), data.length(y));
+					kind = negativeY ? 1 : 0;
+					if (kind == 0) {
+						lengthY = compactY(lengthY);
+					}
+				}
+				final double[] xi = (kind == 0) ? xActiveIn : xIn;
+				final double[] xo = (kind == 0) ? xActiveOut : xOut;
+				final int rows = ((kind == 0) ? activeX : lengthX) + 1;
+				final int kept = keptColumns(rows);
+				final double[] cells = columns[kind];
+				final double[] lastI = lastIn[kind];
+				final double[] lastO = lastOut[kind];
+				
+				// windows in common with the last y of this kind
+				int common = 0;
+				final int shorter = Math.min(lengthY, lastLength[kind]);
+				while (common < shorter && same(yIn[common], lastI[common])
+						&& same(yOut[common], lastO[common])) {
+					common++;
+				}
+				final int start = Math.min(common, kept - 1);
+				for (int j = start + 1; j <= lengthY; j++) {
+					final int p = column(j - 1, kept, rows);
+					final int c = column(j, kept, rows);
+					final double yi = yIn[j-1];
+					final double yo = yOut[j-1];
+					// 0th row: the value of each attribute of y
+					// + previous attributes of y
+					cells[c] = yi + yo + cells[p];
+					for (int i = 1; i < rows; i++) {
+						final double a = xi[i-1];
+						final double b = xo[i-1];
+						if (same(a, yi) && same(b, yo)) {
+							cells[c + i] = cells[p + i - 1];
+						} else {
+							cells[c + i] = Math.min((Math.abs(a - yi) + Math.abs(b - yo)
+									+ cells[p + i - 1]),
+									Math.min((a + b + cells[c + i - 1]),
+											(yi + yo + cells[p + i])));
+						}
+					}
+				}
+				out[y] = cells[column(lengthY, kept, rows) + rows - 1];
+				System.arraycopy(yIn, common, lastI, common, lengthY - common);
+				System.arraycopy(yOut, common, lastO, common, lengthY - common);
+				lastLength[kind] = lengthY;
+			}
+		}
+
+		/**
+		 * The number of columns of rows cells kept by sharedDistancesTo()
+		 */
+		private int keptColumns(int rows) {
+			return Math.max(1, Math.min(lengthX + 1, MAX_SHARED_CELLS / rows));
+		}
+
+		/**
+		 * The index in columns of the j-th column of rows cells, when the
+		 * first kept columns are kept
+		 */
+		private static int column(int j, int kept, int rows) {
+			return ((j < kept) ? j : kept + (j & 1)) * rows;
+		}
+
+		/**
+		 * Calculates the DP table of the windows xIn, xOut and the first
+		 * lengthY windows of y, with band at least lengthX - lengthY.
+		 */
+		private double table(double[] xIn, double[] xOut, int lengthX, 
+				int lengthY, int band, double cutoff, boolean abandon) {
+			if (!abandon && band >= Math.max(lengthX, lengthY)
+					&& Math.min(lengthX, lengthY) >= WAVEFRONT_WINDOWS) {
+				final double d = wavefront(xIn, xOut, lengthX, lengthY);
+				return (d > cutoff) ? Double.POSITIVE_INFINITY : d;
+			}
+			double[] prev = this.prev;
+			double[] cur = this.cur;
+			
+			// 0th row: the value of each attribute of y
+			// + previous attributes of y
+			prev[0] = 0;
+			for (int j = 1; j <= Math.min(band, lengthY); j++) {
+				prev[j] = yIn[j-1] + yOut[j-1] + prev[j-1];
+			}
+			if (band < lengthY) {
+				prev[band + 1] = Double.POSITIVE_INFINITY;
+			}
+
+			for (int i = 1; i <= lengthX; i++) {
+				final double xi = xIn[i-1];
+				final double xo = xOut[i-1];
+				final int lo = Math.max(1, i - band);
+				final int hi = Math.min(lengthY, i + band);
+				double rowMin = Double.POSITIVE_INFINITY;
+				if (i <= band) {
+					// 0th col: the value of each attribute of x
+					// + previous attributes of x
+					cur[0] = xi + xo + prev[0];
+					rowMin = cur[0];
+				} else {
+					cur[lo - 1] = Double.POSITIVE_INFINITY;
+				}
+				if (hi < lengthY) {
+					cur[hi + 1] = Double.POSITIVE_INFINITY;
+				}
+				for (int j = lo; j <= hi; j++) {
+					final double yi = yIn[j-1];
+					final double yo = yOut[j-1];
+					if (same(xi, yi) && same(xo, yo)) {
+						cur[j] = prev[j - 1];
+					} else {
+						cur[j] = Math.min((Math.abs(xi - yi) + Math.abs(xo - yo)
+								+ prev[j-1]),
+								Math.min((xi + xo + prev[j]),
+										(yi + yo + cur[j-1])));
+					}
+					if (cur[j] < rowMin) {
+						rowMin = cur[j];
+					}
+				}
+				if (abandon && rowMin > cutoff) {
+					return Double.POSITIVE_INFINITY;
+				}
+				final double[] tmp = prev;
+				prev = cur;
+				cur = tmp;
+			}
+			return (prev[lengthY] > cutoff) ? Double.POSITIVE_INFINITY 
+					: prev[lengthY];
+		}
+	}
+
+	/**
+	 * Whether two values are the same, as compared by Arrays.equals
+	 */
+	private static boolean same(double a, double b) {
+		return Double.doubleToLongBits(a) == Double.doubleToLongBits(b);
 	}
 	
 	public EditDistance() {
@@ -7,7 +7,39 @@ import weka.core.Instance;
  *
  * @author Shalisa Pattarawuttiwong
  */
-public class EuclideanDistance extends AbstractDistance {
+public class EuclideanDistance extends AbstractDistance 
+		implements PrimitiveDistance {
+
+	/**
+	 * Whether distances are calculated over the runs of equal windows
+	 * of the instances rather than over their values
+	 */
+	protected boolean runLength = false;
+
+	/**
+	 * Set whether the euclidean distances on PrimitiveInstances are
+	 * calculated over runs of equal windows (see PrimitiveDistance)
+	 * @param r Whether to calculate distances over runs
+	 */
+	public void setRunLength(boolean r) {
+		this.runLength = r;
+	}
+
+	/**
+	 * Get whether distances are calculated over runs of equal windows
+	 * @return true if distances are calculated over runs
+	 */
+	public boolean getRunLength() {
+		return this.runLength;
+	}
+
+	/**
+	 * "runs" if the distances are calculated over runs.
+	 */
+	@Override
+	public String getParameters() {
+		return runLength ? "runs" : "";
+	}
 
 	/**
 	 * Calculates the euclidean distance between two instances:
@@ -20,20 +52,126 @@ public class EuclideanDistance extends AbstractDistance {
 	 */
 	@Override
 	public double distance(Instance x, Instance y) {
-		if (x.numAttributes() != y.numAttributes()) {
+		final double[] xv = x.toDoubleArray();
+		final double[] yv = y.toDoubleArray();
+		final double sum = squaredDistance(xv, 0, xv.length, yv, 0, yv.length);
+		// NaN values make the sum NaN, so the values are only checked
+		// for them if it is
+		if (Double.isNaN(sum) && (hasNaN(xv) || hasNaN(yv))) {
+			throw nanException();
+		}
+		return Math.sqrt(sum);
+	}
+
+	/**
+	 * Calculates the euclidean distance between the x-th instance of
+	 * xs and the y-th instance of ys.
+	 *
+	 * @return the euclidean distance between the two instances
+	 */
+	@Override
+	public double distance(PrimitiveInstances xs, int x, 
+			PrimitiveInstances ys, int y) {
+		final double sum;
+		if (runLength && xs.length(x) % 2 == 0 
+				&& xs.length(x) == ys.length(y)) {
+			sum = squaredRunDistance(xs, x, ys, y);
+		} else {
+			sum = squaredDistance(xs.values(), xs.offset(x), 
+					xs.length(x), ys.values(), ys.offset(y), ys.length(y));
+		}
+		// the instances were checked for NaN values when they were copied
+		if (xs.hasNaN(x) || ys.hasNaN(y)) {
+			throw nanException();
+		}
+		return Math.sqrt(sum);
+	}
+
+	/**
+	 * Calculates the euclidean distances between the q-th instance of
+	 * qs and each instance of data.
+	 */
+	@Override
+	public void distancesTo(PrimitiveInstances qs, int q, 
+			PrimitiveInstances data, double[] out) {
+		if (runLength) {
+			for (int i = 0; i < data.numInstances(); i++) {
+				out[i] = distance(qs, q, data, i);
+			}
+			return;
+		}
+		final double[] qv = qs.values();
+		final int qOff = qs.offset(q);
+		final int qLen = qs.length(q);
+		final boolean qNaN = qs.hasNaN(q);
+		final double[] values = data.values();
+		for (int i = 0; i < data.numInstances(); i++) {
+			final double sum = squaredDistance(qv, qOff, qLen, 
+					values, data.offset(i), data.length(i));
+			if (qNaN || data.hasNaN(i)) {
+				throw nanException();
+			}
+			out[i] = Math.sqrt(sum);
+		}
+	}
+
+	private static double squaredDistance(double[] xv, int xOff, int xLen, 
+			double[] yv, int yOff, int yLen) {
+		if (xLen != yLen) {
 			throw new IllegalArgumentException("Both instances do not "
 					+ "contain the same number of attributes");
 		}
-		double sum = 0.0;
-		for (int i = 0; i < x.numAttributes(); i++){
-			if (Double.isNaN(x.value(i)) || Double.isNaN(y.value(i))) {
-				throw new IllegalArgumentException("One of the instances"
-						+ "contains a NaN-valued attribute.");
+		return Kernels.INSTANCE.squaredEuclidean(xv, xOff, yv, yOff, xLen);
+	}
+
+	/**
+	 * The squared euclidean distance between x and y over the runs of 
+	 * their windows: each stretch of windows where neither changes adds
+	 * its length times the squared difference of one window.
+	 */
+	private static double squaredRunDistance(PrimitiveInstances xs, int x, 
+			PrimitiveInstances ys, int y) {
+		final double[] xIn = xs.runIns();
+		final double[] xOut = xs.runOuts();
+		final int[] xCount = xs.runCounts();
+		final double[] yIn = ys.runIns();
+		final double[] yOut = ys.runOuts();
+		final int[] yCount = ys.runCounts();
+		final int xEnd = xs.runOffset(x) + xs.numRuns(x);
+		int rx = xs.runOffset(x);
+		int ry = ys.runOffset(y);
+		int xLeft = (rx < xEnd) ? xCount[rx] : 0;
+		int yLeft = (rx < xEnd) ? yCount[ry] : 0;
+		double sum = 0;
+		while (rx < xEnd) {
+			final int n = Math.min(xLeft, yLeft);
+			final double dIn = xIn[rx] - yIn[ry];
+			final double dOut = xOut[rx] - yOut[ry];
+			sum += n * (dIn * dIn + dOut * dOut);
+			xLeft -= n;
+			yLeft -= n;
+			if (xLeft == 0 && ++rx < xEnd) {
+				xLeft = xCount[rx];
+			}
+			if (yLeft == 0 && rx < xEnd) {
+				yLeft = yCount[++ry];
 			}
-			
-			sum += (y.value(i) - x.value(i)) * (y.value(i) - x.value(i)) ;
 		}
-		return Math.sqrt(sum);
+		return sum;
+	}
+
+	private static boolean hasNaN(double[] values) {
+		for (double v: values) {
+			if (Double.isNaN(v)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static IllegalArgumentException nanException() {
+		return new IllegalArgumentException("One of the instances"
+				+ "contains a NaN-valued attribute.");
 	}
 
 	/**
@@ -0,0 +1,222 @@
+package distance;
+
+import java.util.List;
+
+import be.ac.ulg.montefiore.run.jahmm.Hmm;
+import be.ac.ulg.montefiore.run.jahmm.ObservationInteger;
+import be.ac.ulg.montefiore.run.jahmm.OpdfInteger;
+
+/**
+ * A Hidden Markov Model with integer observations copied into flat
+ * arrays, for computing the probability of observation sequences
+ * without the virtual calls and boxed observations of jahmm.
+ * lnProbability() is the scaled forward algorithm of
+ * ForwardBackwardNaNCalculator, including its guard against underflow,
+ * keeping only the last two rows of alpha.
+ * <p>
+ * The transitions into each state are stored by column, without the
+ * transitions of probability 0. The absorbing destroy state only
+ * transitions to itself, so it only appears in its own column. Since
+ * the guard keeps alpha finite and above 0, the skipped terms would add
+ * exactly 0 (and a row holding NaN is all NaN once scaled), so the
+ * probabilities are bit for bit those of ForwardBackwardNaNCalculator.
+ *
+ * @author Shalisa Pattarawuttiwong
+ */
+public class FlatHmm {
+
+	/**
+	 * The number of states and of symbols
+	 */
+	private final int numStates;
+	private final int numSymbols;
+
+	/**
+	 * The probability of each state being initial
+	 */
+	private final double[] pi;
+
+	/**
+	 * The probability of each symbol in each state, by symbol:
+	 * emissions[o * numStates + j] = P(o | j)
+	 */
+	private final double[] emissions;
+
+	/**
+	 * The non-zero transitions into state j are sources[k] -> j with
+	 * probability probs[k], for colStart[j] <= k < colStart[j+1], in
+	 * increasing order of the source.
+	 */
+	private final int[] colStart;
+	private final int[] sources;
+	private final double[] probs;
+
+	/**
+	 * Copies an HMM with integer observations.
+	 *
+	 * @param hmm HMM with OpdfInteger distributions
+	 */
+	public FlatHmm(Hmm<ObservationInteger> hmm) {
+		this.numStates = hmm.nbStates();
+		int symbols = 0;
+		for (int j = 0; j < numStates; j++) {
+			symbols = Math.max(symbols, 
+					((OpdfInteger) hmm.getOpdf(j)).nbEntries());
+		}
+		this.numSymbols = symbols;
+		this.pi = new double[numStates];
+		this.emissions = new double[numSymbols * numStates];
+		for (int j = 0; j < numStates; j++) {
+			pi[j] = hmm.getPi(j);
+			final OpdfInteger opdf = (OpdfInteger) hmm.getOpdf(j);
+			for (int o = 0; o < opdf.nbEntries(); o++) {
+				emissions[o * numStates + j] = 
+						opdf.probability(new ObservationInteger(o));
+			}
+		}
+		int nonZero = 0;
+		for (int i = 0; i < numStates; i++) {
+			for (int j = 0; j < numStates; j++) {
+				if (hmm.getAij(i, j) != 0.0) {
+					nonZero++;
+				}
+			}
+		}
+		this.colStart = new int[numStates + 1];
+		this.sources = new int[nonZero];
+		this.probs = new double[nonZero];
+		int k = 0;
+		for (int j = 0; j < numStates; j++) {
+			colStart[j] = k;
+			for (int i = 0; i < numStates; i++) {
+				final double a = hmm.getAij(i, j);
+				if (a != 0.0) {
+					sources[k] = i;
+					probs[k] = a;
+					k++;
+				}
+			}
+		}
+		colStart[numStates] = k;
+	}
+
+	/**
+	 * The number of states
+	 * @return number of states
+	 */
+	public int numStates() {
+		return numStates;
+	}
+
+	/**
+	 * The number of symbols
+	 * @return number of symbols
+	 */
+	public int numSymbols() {
+		return numSymbols;
+	}
+
+	/**
+	 * The values of a sequence of integer observations
+	 *
+	 * @param oseq observation sequence
+	 * @return the value of each observation
+	 */
+	public static int[] toArray(List<ObservationInteger> oseq) {
+		final int[] seq = new int[oseq.size()];
+		int t = 0;
+		for (ObservationInteger o: oseq) {
+			seq[t++] = o.value;
+		}
+		return seq;
+	}
+
+	/**
+	 * The values of sequences of integer observations
+	 *
+	 * @param sequences observation sequences
+	 * @return the value of each observation of each sequence
+	 */
+	public static int[][] toArrays(List<List<ObservationInteger>> sequences) {
+		final int[][] seqs = new int[sequences.size()][];
+		int s = 0;
+		for (List<ObservationInteger> oseq: sequences) {
+			seqs[s++] = toArray(oseq);
+		}
+		return seqs;
+	}
+
+	/**
+	 * As ForwardBackwardNaNCalculator.NaN_check, to avoid underflows
+	 */
+	private static double nanCheck(double value) {
+		return (value < 0.001) ? 4.9E-324 : value;
+	}
+
+	/**
+	 * The natural logarithm of the probability of an observation
+	 * sequence.
+	 *
+	 * @param oseq non-empty observation sequence
+	 * @return ln P(oseq)
+	 */
+	public double lnProbability(int[] oseq) {
+		return lnProbability(oseq, new double[2 * numStates]);
+	}
+
+	/**
+	 * The natural logarithm of the probability of an observation
+	 * sequence, using the given array for the two rows of alpha so
+	 * that repeated calls allocate nothing.
+	 *
+	 * @param oseq non-empty observation sequence
+	 * @param rows array of at least 2 * numStates() values
+	 * @return ln P(oseq)
+	 */
+	public double lnProbability(int[] oseq, double[] rows) {
+		if (oseq.length == 0) {
+			throw new IllegalArgumentException("The observation sequence "
+					+ "is empty");
+		}
+		if (rows.length < 2 * numStates) {
+			throw new IllegalArgumentException("The array for the rows of "
+					+ "alpha is too short");
+		}
+		final int n = numStates;
+		int prev = 0;
+		int cur = n;
+
+		// initial row
+		int e = oseq[0] * n;
+		double sum = 0.;
+		for (int j = 0; j < n; j++) {
+			rows[cur + j] = nanCheck(pi[j] * emissions[e + j]);
+			sum += rows[cur + j];
+		}
+		double lnProbability = Math.log(nanCheck(sum));
+		for (int j = 0; j < n; j++) {
+			rows[cur + j] /= sum;
+		}
+
+		for (int t = 1; t < oseq.length; t++) {
+			prev = cur;
+			cur = n - prev;
+			e = oseq[t] * n;
+			sum = 0.;
+			for (int j = 0; j < n; j++) {
+				double s = 0.;
+				for (int k = colStart[j]; k < colStart[j + 1]; k++) {
+					s += rows[prev + sources[k]] * probs[k];
+				}
+				rows[cur + j] = nanCheck(s * emissions[e + j]);
+				sum += rows[cur + j];
+			}
+			lnProbability += Math.log(nanCheck(sum));
+			for (int j = 0; j < n; j++) {
+				rows[cur + j] /= sum;
+			}
+		}
+		return lnProbability;
+	}
+
+}
@@ -46,6 +46,25 @@ public class HMMDistance extends AbstractDistance {
 	 * prone to underflow errors.
 	 */
 	private static final double EPSILON = 0.47; 
+	
+	/**
+	 * The largest correlation between the two dimensions of the
+	 * gaussians built from their statistics, which keeps their
+	 * covariance matrices positive definite.
+	 */
+	private static final double MAX_CORRELATION = 0.99;
+	
+	/**
+	 * Whether the gaussian emission distributions are built directly
+	 * from the mean and covariance of the observations, rather than
+	 * fitted to 10,000 observation vectors drawn from them
+	 */
+	protected boolean closedForm = false;
+	
+	/**
+	 * Whether initMultiHMM() leaves the console alone
+	 */
+	protected boolean quiet = false;
     
 	/**
 	 * Constructor for HMMDistance.
@@ -82,6 +101,61 @@ public class HMMDistance extends AbstractDistance {
     	return this.states;
     }
     
+    /**
+     * Set whether the gaussian emission distributions are built
+     * directly from the mean and covariance of the observations of
+     * each state, rather than fitted to 10,000 observation vectors
+     * drawn from a gaussian of that mean and covariance, which recovers
+     * nearly the same parameters. The correlation of the covariance is
+     * limited to MAX_CORRELATION, since the covariance of the destroy
+     * state, and of a cluster whose variances are raised to EPSILON, is
+     * singular. A cluster of (-1, -1) windows only, whose mean is
+     * undefined, gets the gaussian of the destroy state.
+     * @param c true to build the distributions without sampling
+     */
+    public void setClosedForm(boolean c) {
+    	this.closedForm = c;
+    }
+    
+    /**
+     * Get whether the gaussian emission distributions are built
+     * without sampling
+     * @return true if built from the statistics of the observations
+     */
+    public boolean getClosedForm() {
+    	return this.closedForm;
+    }
+    
+    /**
+     * Set whether initMultiHMM() leaves the console alone rather than
+     * printing the observations, cluster labels and HMM of each call
+     * @param q true for no console output
+     */
+    public void setQuiet(boolean q) {
+    	this.quiet = q;
+    }
+    
+    /**
+     * Get whether initMultiHMM() leaves the console alone
+     * @return true for no console output
+     */
+    public boolean getQuiet() {
+    	return this.quiet;
+    }
+    
+    /**
+     * The number of HMM states and how the emission distributions
+     * are built change the distances calculated.
+     */
+    @Override
+    public String getParameters() {
+    	String params = "states=" + this.states;
+    	if (this.closedForm) {
+    		params += ",closed_form";
+    	}
+    	return params;
+    }
+    
 	/**
 	 * Convert an instance to an ObservationVector list.
 	 * 
@@ -234,6 +308,36 @@ public class HMMDistance extends AbstractDistance {
 	}
 	
 	
+	/**
+	 * A copy of a 2 x 2 covariance matrix whose correlation is at most
+	 * MAX_CORRELATION, so that it is positive definite if its variances
+	 * are positive.
+	 * 
+	 * @param covariance covariance matrix
+	 * @return positive definite covariance matrix
+	 */
+	static double[][] limitCorrelation(double[][] covariance) {
+		double[][] covMat = new double[][]{covariance[0].clone(), 
+				covariance[1].clone()};
+		double maxCov = MAX_CORRELATION 
+				* Math.sqrt(covMat[0][0] * covMat[1][1]);
+		if (Math.abs(covMat[0][1]) > maxCov) {
+			covMat[0][1] = Math.signum(covMat[0][1]) * maxCov;
+			covMat[1][0] = covMat[0][1];
+		}
+		return covMat;
+	}
+	
+	/**
+	 * The gaussian of the (-1, -1) destroy state built without
+	 * sampling, with its correlation limited
+	 */
+	private OpdfMultiGaussian destroyGaussian() {
+		double[] desMean = new double[]{-1.0, -1.0};
+		double[][] desCov = new double[][]{{EPSILON, EPSILON}, {EPSILON, EPSILON}};
+		return new OpdfMultiGaussian(desMean, limitCorrelation(desCov));
+	}
+	
 	/**
 	 * Generates a multivariate gaussian distribution function
 	 * from an instance
@@ -247,6 +351,16 @@ public class HMMDistance extends AbstractDistance {
 		// mean and covariance matrices
 		double[] mean = calcVectorMean(obs);
 		double[][] covariance = calcCovarianceMatrix(obs, mean);
+		if (closedForm) {
+			for (int i = 0; i < 2; i++) {
+				if (Double.isNaN(mean[i]) || Double.isNaN(covariance[i][0])
+						|| Double.isNaN(covariance[i][1])) {
+					// a cluster of (-1, -1) windows only
+					return destroyGaussian();
+				}
+			}
+			return new OpdfMultiGaussian(mean, limitCorrelation(covariance));
+		}
 
 		OpdfMultiGaussian omg = new OpdfMultiGaussian(mean, covariance);
 		// generates 10,000 observation vectors according to
@@ -282,7 +396,9 @@ public class HMMDistance extends AbstractDistance {
 			i.setValue(1, x.value(a + 1));
 			xInsts.add(i);
 		}
-		System.out.println("Instances: " + xInsts.toString());
+		if (!quiet) {
+			System.out.println("Instances: " + xInsts.toString());
+		}
 		
 		// cluster x into m clusters with kmeans
         ManhattanDistance manD = new ManhattanDistance();
@@ -292,7 +408,9 @@ public class HMMDistance extends AbstractDistance {
         kmeans.setNumIterations(100);
         kmeans.cluster();        
         int[] labels = kmeans.getClusters();
-        System.out.println(Arrays.toString(labels));
+        if (!quiet) {
+        	System.out.println(Arrays.toString(labels));
+        }
         
         ArrayList<Instance> part = partition(xInsts, labels, states-1); 
         
@@ -309,13 +427,18 @@ public class HMMDistance extends AbstractDistance {
         // gaussian for (-1, -1) destroy state
         double[] desMean = new double[]{-1.0, -1.0};
         double[][] desCov = new double[][]{{EPSILON, EPSILON}, {EPSILON, EPSILON}};
-		OpdfMultiGaussian desOpdf = new OpdfMultiGaussian(desMean, desCov);
-		// generates 10,000 observation vectors according to
-		// distribution
-		ObservationVector[] obsNew = new ObservationVector[10000];
-		for (int i = 0; i < obsNew.length; i++)
-			obsNew[i] = desOpdf.generate();
-		desOpdf.fit(obsNew);
+		OpdfMultiGaussian desOpdf;
+		if (closedForm) {
+			desOpdf = destroyGaussian();
+		} else {
+			desOpdf = new OpdfMultiGaussian(desMean, desCov);
+			// generates 10,000 observation vectors according to
+			// distribution
+			ObservationVector[] obsNew = new ObservationVector[10000];
+			for (int i = 0; i < obsNew.length; i++)
+				obsNew[i] = desOpdf.generate();
+			desOpdf.fit(obsNew);
+		}
         
 		for (int s = 0; s < states-1; s++) {
 			// prob state is initial
@@ -334,7 +457,9 @@ public class HMMDistance extends AbstractDistance {
 		}
 		hmm.setAij(states-1, states-1, 1);
 		
-		System.out.println(hmm.toString());
+		if (!quiet) {
+			System.out.println(hmm.toString());
+		}
 		return hmm;
 	}
 	
@@ -15,10 +15,25 @@ import java.util.Iterator ;
 
 public class HMMDistanceSer implements DistanceFunction {
 
-    private double[][] distMtx ;
+    private DistanceMatrix distMtx ;
     private HashMap<Instance, Integer> instIdx ;
 
+    /**
+     * The number of HMM states createDistMtxFile(is, f) uses
+     */
+    public static final int DEFAULT_STATES = 3 ;
+
     public static void createDistMtxFile(Instances is, File f) 
+    throws FileNotFoundException, IOException {
+        createDistMtxFile(is, f, DEFAULT_STATES) ;
+    }
+
+    /**
+     * Writes the HMM distance matrix of the instances to a file, with
+     * HMMs of the given number of states whose gaussians are built
+     * without sampling and without console output.
+     */
+    public static void createDistMtxFile(Instances is, File f, int states) 
     throws FileNotFoundException, IOException {
         HashMap<Instance, Integer> instIdx = new HashMap<Instance, Integer>() ;
 
@@ -27,7 +42,10 @@ public class HMMDistanceSer implements DistanceFunction {
         // for (Instance i : is) instIdx.add(i, idx++) ;
 
         HMMDistance hmmDist = new HMMDistance() ;
-        double[][] distMtx = hmmDist.distMatrix(is) ;
+        hmmDist.setNumStates(states) ;
+        hmmDist.setClosedForm(true) ;
+        hmmDist.setQuiet(true) ;
+        DistanceMatrix distMtx = hmmDist.distMatrix(is) ;
 
         ObjectOutputStream outs = new ObjectOutputStream(new FileOutputStream(f)) ;
 
@@ -43,7 +61,15 @@ public class HMMDistanceSer implements DistanceFunction {
         ObjectInputStream ins = new ObjectInputStream(new FileInputStream(f)) ;
 
         instIdx = (HashMap<Instance, Integer>)ins.readObject() ;
-        distMtx = (double[][])ins.readObject() ;
+        Object mtx = ins.readObject() ;
+        if (mtx instanceof double[][]) {
+            // files written before the matrix was stored condensed
+            double[][] full = (double[][])mtx ;
+            distMtx = new CondensedDistanceMatrix(full.length) ;
+            for (int i = 0 ; i < full.length ; ++i)
+                for (int j = 0 ; j < i ; ++j)
+                    distMtx.set(i, j, full[i][j]) ;
+        } else distMtx = (DistanceMatrix)mtx ;
 
         ins.close() ;
     }
@@ -54,11 +80,28 @@ public class HMMDistanceSer implements DistanceFunction {
         Integer j = instIdx.get(y) ;
         if (j == null) throw new NullPointerException() ;
 
-        return distMtx[i][j] ;
+        return distMtx.get(i, j) ;
     }
 
-    public double[][] distMatrix(Instances is) {
+    public void distancesTo(Instance x, Instances is, double[] out) {
+        Integer i = instIdx.get(x) ;
+        if (i == null) throw new NullPointerException() ;
+
+        for (int k = 0 ; k < is.numInstances() ; ++k) {
+            Integer j = instIdx.get(is.instance(k)) ;
+            if (j == null) throw new NullPointerException() ;
+            out[k] = distMtx.get(i, j) ;
+        }
+    }
+
+    public DistanceMatrix distMatrix(Instances is) {
         return distMtx ;
     }
 
+    public void distMatrix(Instances is, DistanceMatrix out) {
+        for (int i = 0 ; i < out.size() ; ++i)
+            for (int j = 0 ; j < i ; ++j)
+                out.set(i, j, distMtx.get(i, j)) ;
+    }
+
 }
@@ -0,0 +1,321 @@
+package distance;
+
+import java.util.IdentityHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import be.ac.ulg.montefiore.run.jahmm.Hmm;
+import be.ac.ulg.montefiore.run.jahmm.ObservationInteger;
+import be.ac.ulg.montefiore.run.jahmm.toolbox.MarkovGenerator;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * The HMMs trained for the instances of a data set, keyed by the index
+ * of the instance and the number of states, along with the alphabet of
+ * the symbols of all the data they are trained on and the sequence of
+ * symbols of each instance. A distance matrix then trains one HMM per
+ * instance rather than two per pair.
+ *
+ * @author Shalisa Pattarawuttiwong
+ */
+class HmmCache {
+
+	/**
+	 * Trains the HMM of an instance
+	 */
+	interface Trainer {
+
+		/**
+		 * Trains an HMM for a sequence of symbols
+		 * @param symbols the symbols of an instance
+		 * @param states number of states of the HMM
+		 * @param alphabet the symbols of all the data
+		 * @return the trained HMM
+		 */
+		Hmm<ObservationInteger> train(int[] symbols, int states,
+				SymbolAlphabet alphabet);
+	}
+
+	/**
+	 * The data the HMMs are trained for, and its number of instances
+	 */
+	private final Instances data;
+	private final int numInstances;
+
+	/**
+	 * The symbols of all the data
+	 */
+	private final SymbolAlphabet alphabet;
+
+	/**
+	 * The sequence of symbols of each instance
+	 */
+	private final int[][] sequences;
+
+	/**
+	 * The index of each instance of the data
+	 */
+	private final IdentityHashMap<Instance, Integer> index;
+
+	/**
+	 * The trained HMMs, keyed by number of states and index
+	 */
+	private final ConcurrentHashMap<Long, Hmm<ObservationInteger>> models;
+
+	/**
+	 * The sequences generated by the trained HMMs, keyed as the HMMs
+	 */
+	private final ConcurrentHashMap<Long, Sampled> samples;
+
+	/**
+	 * The symbol chains of the trained HMMs, keyed as the HMMs
+	 */
+	private final ConcurrentHashMap<Long, SymbolChain> chains;
+
+	/**
+	 * A trained HMM in flat arrays, with a fixed set of sequences
+	 * generated by it and the log probability of each under it. The
+	 * Kullback-Leibler distance of any other HMM is then estimated on
+	 * the same sequences, rather than on sequences generated anew for
+	 * each pair. The sequences take 4 bytes per symbol.
+	 */
+	static class Sampled {
+
+		private final FlatHmm flat;
+		private final int[][] sequences;
+		private final double[] lnProbabilities;
+
+		/**
+		 * Generates nbSequences sequences of sequencesLength symbols
+		 * with the HMM and scores them under it.
+		 */
+		Sampled(Hmm<ObservationInteger> hmm, int nbSequences,
+				int sequencesLength) {
+			this.flat = new FlatHmm(hmm);
+			this.sequences = new int[nbSequences][];
+			this.lnProbabilities = new double[nbSequences];
+			final MarkovGenerator<ObservationInteger> mg =
+					new MarkovGenerator<ObservationInteger>(hmm);
+			final double[] rows = new double[2 * flat.numStates()];
+			for (int i = 0; i < nbSequences; i++) {
+				sequences[i] = FlatHmm.toArray(
+						mg.observationSequence(sequencesLength));
+				lnProbabilities[i] = flat.lnProbability(sequences[i], rows);
+			}
+		}
+
+		/**
+		 * The Kullback-Leibler distance between this HMM and other with
+		 * regard to this HMM, averaged over the sequences of this HMM
+		 * as in the kldistance() of the discrete HMM distances, until
+		 * the estimate is done or there are no sequences left.
+		 *
+		 * @param other HMM with the same number of states
+		 * @param rows array of 2 * states values for the forward algorithm
+		 * @param distance empty estimate to add the ratios to
+		 * @return the distance
+		 */
+		double kldistance(Sampled other, double[] rows,
+				SequentialEstimate distance) {
+			for (int i = 0; i < sequences.length && !distance.done(); i++) {
+				distance.add((lnProbabilities[i] - 
+						other.flat.lnProbability(sequences[i], rows))
+						/ sequences[i].length);
+			}
+			return distance.mean();
+		}
+	}
+
+	/**
+	 * Constructor for an empty HmmCache of the data, converting each
+	 * instance into its sequence of symbols.
+	 *
+	 * @param data
+	 */
+	HmmCache(Instances data) {
+		this.data = data;
+		this.numInstances = data.numInstances();
+		this.alphabet = new SymbolAlphabet(data);
+		this.sequences = new int[numInstances][];
+		this.index = new IdentityHashMap<Instance, Integer>();
+		for (int i = 0; i < numInstances; i++) {
+			index.put(data.instance(i), i);
+			sequences[i] = alphabet.sequence(data.instance(i));
+		}
+		this.models = new ConcurrentHashMap<Long, Hmm<ObservationInteger>>();
+		this.samples = new ConcurrentHashMap<Long, Sampled>();
+		this.chains = new ConcurrentHashMap<Long, SymbolChain>();
+	}
+
+	/**
+	 * Whether this caches the HMMs of the data, which must not have
+	 * been changed since.
+	 */
+	boolean holds(Instances data) {
+		return data == this.data && data.numInstances() == numInstances;
+	}
+
+	/**
+	 * The symbols of all the data
+	 */
+	SymbolAlphabet alphabet() {
+		return alphabet;
+	}
+
+	/**
+	 * The index of x in the data, or -1 if it is not one of its instances
+	 */
+	int indexOf(Instance x) {
+		final Integer i = index.get(x);
+		return (i == null) ? -1 : i;
+	}
+
+	/**
+	 * The HMM of the i-th instance of the data with the given number of
+	 * states, trained if it is not cached yet.
+	 */
+	Hmm<ObservationInteger> model(int i, int states, Trainer trainer) {
+		final Long key = ((long) states << 32) | i;
+		Hmm<ObservationInteger> hmm = models.get(key);
+		if (hmm == null) {
+			hmm = trainer.train(sequences[i], states, alphabet);
+			final Hmm<ObservationInteger> other = models.putIfAbsent(key, hmm);
+			if (other != null) {
+				// trained by another thread meanwhile
+				hmm = other;
+			}
+		}
+		return hmm;
+	}
+
+	/**
+	 * The HMM of the i-th instance of the data with the given number of
+	 * states and the sequences generated by it, trained and generated
+	 * if they are not cached yet.
+	 */
+	Sampled sampled(int i, int states, Trainer trainer, int nbSequences,
+			int sequencesLength) {
+		final Long key = ((long) states << 32) | i;
+		Sampled sampled = samples.get(key);
+		if (sampled == null) {
+			sampled = new Sampled(model(i, states, trainer), nbSequences,
+					sequencesLength);
+			final Sampled other = samples.putIfAbsent(key, sampled);
+			if (other != null) {
+				// generated by another thread meanwhile
+				sampled = other;
+			}
+		}
+		return sampled;
+	}
+
+	/**
+	 * The symbol chain of the HMM of the i-th instance of the data with
+	 * the given number of states, trained and built if they are not
+	 * cached yet.
+	 */
+	SymbolChain chain(int i, int states, Trainer trainer, int horizon) {
+		final Long key = ((long) states << 32) | i;
+		SymbolChain chain = chains.get(key);
+		if (chain == null) {
+			chain = new SymbolChain(model(i, states, trainer), horizon);
+			final SymbolChain other = chains.putIfAbsent(key, chain);
+			if (other != null) {
+				// built by another thread meanwhile
+				chain = other;
+			}
+		}
+		return chain;
+	}
+
+	/**
+	 * Trains the HMMs of all instances that are not cached yet, on
+	 * numThreads threads.
+	 */
+	void trainAll(int states, Trainer trainer, int numThreads) {
+		sampleAll(states, trainer, 0, 0, numThreads);
+	}
+
+	/**
+	 * Trains the HMMs of all instances and generates their sequences
+	 * if they are not cached yet, on numThreads threads. No sequences
+	 * are generated if nbSequences is 0.
+	 */
+	void sampleAll(int states, Trainer trainer, int nbSequences,
+			int sequencesLength, int numThreads) {
+		final TrainTask task = new TrainTask(states, trainer, nbSequences,
+				sequencesLength, 0, numInstances);
+		if (numThreads <= 1) {
+			for (int i = 0; i < numInstances; i++) {
+				task.train(i);
+			}
+			return;
+		}
+		ForkJoinPool pool = new ForkJoinPool(numThreads);
+		try {
+			pool.invoke(task);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Trains the HMMs of a range of instances, and generates their
+	 * sequences if nbSequences is above 0, halving the range until a
+	 * single instance is left.
+	 */
+	private class TrainTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int states;
+		private final Trainer trainer;
+		private final int nbSequences;
+		private final int sequencesLength;
+		private final int start;
+		private final int end;
+
+		TrainTask(int states, Trainer trainer, int nbSequences,
+				int sequencesLength, int start, int end) {
+			this.states = states;
+			this.trainer = trainer;
+			this.nbSequences = nbSequences;
+			this.sequencesLength = sequencesLength;
+			this.start = start;
+			this.end = end;
+		}
+
+		void train(int i) {
+			if (nbSequences > 0) {
+				sampled(i, states, trainer, nbSequences, sequencesLength);
+			} else {
+				model(i, states, trainer);
+			}
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start <= 1) {
+				if (start < end) {
+					train(start);
+				}
+				return;
+			}
+			final int mid = (start + end) >>> 1;
+			invokeAll(new TrainTask(states, trainer, nbSequences,
+					sequencesLength, start, mid),
+					new TrainTask(states, trainer, nbSequences,
+					sequencesLength, mid, end));
+		}
+	}
+
+	/**
+	 * The number of HMMs cached
+	 */
+	int size() {
+		return models.size();
+	}
+
+}
@@ -0,0 +1,111 @@
+package distance;
+
+/**
+ * Inner loops of the Euclidean, Manhattan and edit distances over 
+ * primitive arrays. The vectorized implementation in src-vector is used when it 
+ * was compiled and the jdk.incubator.vector module is available 
+ * (java --add-modules jdk.incubator.vector); otherwise the scalar one
+ * is. Setting the system property distance.kernels to "scalar" forces
+ * the scalar implementation.
+ *
+ * @author Shalisa Pattarawuttiwong
+ */
+abstract class Kernels {
+
+	/**
+	 * The implementation in use
+	 */
+	static final Kernels INSTANCE = load();
+
+	/**
+	 * The sum of (y{i} - x{i})^2 over x[xOff, xOff + len) and 
+	 * y[yOff, yOff + len).
+	 */
+	abstract double squaredEuclidean(double[] x, int xOff, 
+			double[] y, int yOff, int len);
+
+	/**
+	 * The sum of |x{i} - y{i}| over x[xOff, xOff + len) and 
+	 * y[yOff, yOff + len).
+	 */
+	abstract double manhattan(double[] x, int xOff, 
+			double[] y, int yOff, int len);
+
+	/**
+	 * Cells lo to hi of an anti-diagonal of the edit distance DP table.
+	 * cur[i] is the cell of the i-th window of x, (xIn[i-1], xOut[i-1]),
+	 * and the window of y at (yIn[i + yShift], yOut[i + yShift]), where
+	 * y is stored reversed so that both are read in order. d1 is the 
+	 * diagonal before, holding the cells above (i - 1) and to the left
+	 * (i), and d2 the one before that, holding the cell diagonally 
+	 * above (i - 1). The cells of a diagonal do not depend on each 
+	 * other, and each is calculated as in the row by row table, so 
+	 * all implementations give the same cells.
+	 */
+	abstract void editDiagonal(double[] xIn, double[] xOut, 
+			double[] yIn, double[] yOut, int yShift, 
+			double[] d2, double[] d1, double[] cur, int lo, int hi);
+
+	private static Kernels load() {
+		if (!"scalar".equalsIgnoreCase(System.getProperty("distance.kernels"))) {
+			try {
+				return (Kernels) Class.forName("distance.VectorKernels")
+						.getDeclaredConstructor().newInstance();
+			} catch (ReflectiveOperationException e) {
+				// not compiled
+			} catch (LinkageError e) {
+				// compiled, but jdk.incubator.vector is not available
+			}
+		}
+		return new Scalar();
+	}
+
+	/**
+	 * Plain loops, summing in the order of the attributes.
+	 */
+	static class Scalar extends Kernels {
+
+		@Override
+		double squaredEuclidean(double[] x, int xOff, 
+				double[] y, int yOff, int len) {
+			double sum = 0.0;
+			for (int i = 0; i < len; i++) {
+				final double d = y[yOff + i] - x[xOff + i];
+				sum += d * d;
+			}
+			return sum;
+		}
+
+		@Override
+		double manhattan(double[] x, int xOff, 
+				double[] y, int yOff, int len) {
+			double sum = 0.0;
+			for (int i = 0; i < len; i++) {
+				sum += Math.abs(x[xOff + i] - y[yOff + i]);
+			}
+			return sum;
+		}
+
+		@Override
+		void editDiagonal(double[] xIn, double[] xOut, 
+				double[] yIn, double[] yOut, int yShift, 
+				double[] d2, double[] d1, double[] cur, int lo, int hi) {
+			for (int i = lo; i <= hi; i++) {
+				final double xi = xIn[i-1];
+				final double xo = xOut[i-1];
+				final double yi = yIn[i + yShift];
+				final double yo = yOut[i + yShift];
+				if (Double.doubleToLongBits(xi) == Double.doubleToLongBits(yi)
+						&& Double.doubleToLongBits(xo) == Double.doubleToLongBits(yo)) {
+					cur[i] = d2[i-1];
+				} else {
+					cur[i] = Math.min((Math.abs(xi - yi) + Math.abs(xo - yo)
+							+ d2[i-1]),
+							Math.min((xi + xo + d1[i-1]),
+									(yi + yo + d1[i])));
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,29 @@
+package distance;
+
+import java.io.Serializable;
+
+/**
+ * Interface for lower bounds of a distance function that are much
+ * cheaper to calculate than the distance itself. A search for the
+ * nearest instance skips an instance whose lower bound already exceeds
+ * the best distance found so far.
+ *
+ * @author Shalisa Pattarawuttiwong
+ */
+public interface LowerBound extends Serializable {
+
+	/**
+	 * A value that is at most the distance between the x-th instance
+	 * of xs and the y-th instance of ys, or -Infinity if none is known
+	 * (distances with negative weights can be below 0).
+	 *
+	 * @param xs instances holding x
+	 * @param x index of x in xs
+	 * @param ys instances holding y
+	 * @param y index of y in ys
+	 * @return lower bound of the distance between x and y
+	 */
+	public double lowerBound(PrimitiveInstances xs, int x,
+			PrimitiveInstances ys, int y);
+
+}
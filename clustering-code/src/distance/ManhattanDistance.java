@@ -6,7 +6,39 @@ import weka.core.Instance;
  *
  * @author Shalisa Pattarawuttiwong
  */
-public class ManhattanDistance extends AbstractDistance {
+public class ManhattanDistance extends AbstractDistance 
+		implements PrimitiveDistance {
+
+	/**
+	 * Whether distances are calculated over the runs of equal windows
+	 * of the instances rather than over their values
+	 */
+	protected boolean runLength = false;
+
+	/**
+	 * Set whether the manhattan distances on PrimitiveInstances are
+	 * calculated over runs of equal windows (see PrimitiveDistance)
+	 * @param r Whether to calculate distances over runs
+	 */
+	public void setRunLength(boolean r) {
+		this.runLength = r;
+	}
+
+	/**
+	 * Get whether distances are calculated over runs of equal windows
+	 * @return true if distances are calculated over runs
+	 */
+	public boolean getRunLength() {
+		return this.runLength;
+	}
+
+	/**
+	 * Matrices calculated over runs are kept apart as "runs".
+	 */
+	@Override
+	public String getParameters() {
+		return runLength ? "runs" : "";
+	}
 
 	/**
 	 * Calculates the manhattan distance between two instances:
@@ -19,13 +51,89 @@ public class ManhattanDistance extends AbstractDistance {
 	 */
 	@Override
 	public double distance(Instance x, Instance y) {
-		if (x.numAttributes() != y.numAttributes()) {
+		return distance(x.toDoubleArray(), 0, x.numAttributes(), 
+				y.toDoubleArray(), 0, y.numAttributes());
+	}
+
+	/**
+	 * Calculates the manhattan distance between the x-th instance of
+	 * xs and the y-th instance of ys.
+	 *
+	 * @return the manhattan distance between the two instances
+	 */
+	@Override
+	public double distance(PrimitiveInstances xs, int x, 
+			PrimitiveInstances ys, int y) {
+		if (runLength && xs.length(x) % 2 == 0 
+				&& xs.length(x) == ys.length(y)) {
+			return runDistance(xs, x, ys, y);
+		}
+		return distance(xs.values(), xs.offset(x), xs.length(x), 
+				ys.values(), ys.offset(y), ys.length(y));
+	}
+
+	/**
+	 * Calculates the manhattan distances between the q-th instance of
+	 * qs and each instance of data.
+	 */
+	@Override
+	public void distancesTo(PrimitiveInstances qs, int q, 
+			PrimitiveInstances data, double[] out) {
+		if (runLength) {
+			for (int i = 0; i < data.numInstances(); i++) {
+				out[i] = distance(qs, q, data, i);
+			}
+			return;
+		}
+		final double[] qv = qs.values();
+		final int qOff = qs.offset(q);
+		final int qLen = qs.length(q);
+		final double[] values = data.values();
+		for (int i = 0; i < data.numInstances(); i++) {
+			out[i] = distance(qv, qOff, qLen, 
+					values, data.offset(i), data.length(i));
+		}
+	}
+
+	private static double distance(double[] xv, int xOff, int xLen, 
+			double[] yv, int yOff, int yLen) {
+		if (xLen != yLen) {
 			throw new IllegalArgumentException("Both instances do not "
 					+ "contain the same number of attributes");
 		}
-		double sum = 0.0;
-		for (int i = 0; i < x.numAttributes(); i++) {
-			sum += Math.abs(x.value(i) - y.value(i));
+		return Kernels.INSTANCE.manhattan(xv, xOff, yv, yOff, xLen);
+	}
+
+	/**
+	 * The manhattan distance between x and y over the runs of their 
+	 * windows: each stretch of windows where neither changes adds its
+	 * length times the difference of one window.
+	 */
+	private static double runDistance(PrimitiveInstances xs, int x, 
+			PrimitiveInstances ys, int y) {
+		final double[] xIn = xs.runIns();
+		final double[] xOut = xs.runOuts();
+		final int[] xCount = xs.runCounts();
+		final double[] yIn = ys.runIns();
+		final double[] yOut = ys.runOuts();
+		final int[] yCount = ys.runCounts();
+		final int xEnd = xs.runOffset(x) + xs.numRuns(x);
+		int rx = xs.runOffset(x);
+		int ry = ys.runOffset(y);
+		int xLeft = (rx < xEnd) ? xCount[rx] : 0;
+		int yLeft = (rx < xEnd) ? yCount[ry] : 0;
+		double sum = 0;
+		while (rx < xEnd) {
+			final int n = Math.min(xLeft, yLeft);
+			sum += n * (Math.abs(xIn[rx] - yIn[ry]) + Math.abs(xOut[rx] - yOut[ry]));
+			xLeft -= n;
+			yLeft -= n;
+			if (xLeft == 0 && ++rx < xEnd) {
+				xLeft = xCount[rx];
+			}
+			if (yLeft == 0 && rx < xEnd) {
+				yLeft = yCount[++ry];
+			}
 		}
 		return sum;
 	}
@@ -0,0 +1,307 @@
+package distance;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * Distance matrix stored in a memory-mapped file rather than on the heap,
+ * so that the operating system pages it in and out as needed. The
+ * distances are laid out as in CondensedDistanceMatrix, after a short
+ * header holding the number of instances and whether the distances are
+ * stored in double or single precision. Files larger than a single
+ * mapping allows are mapped in segments of 2^27 distances.
+ *
+ * @author Shalisa Pattarawuttiwong
+ */
+public class MappedDistanceMatrix implements DistanceMatrix, Closeable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Bytes before the first distance: the number of instances (int)
+	 * and the bytes per distance (int).
+	 */
+	static final int HEADER_BYTES = 8;
+
+	/**
+	 * Bytes per distance in double precision
+	 */
+	private static final int DOUBLE_BYTES = 8;
+
+	/**
+	 * Bytes per distance in single precision
+	 */
+	private static final int FLOAT_BYTES = 4;
+
+	/**
+	 * log2 of the default number of distances per mapped segment
+	 */
+	private static final int SEGMENT_SHIFT = 27;
+
+	/**
+	 * The file the matrix is stored in
+	 */
+	private final File file;
+
+	/**
+	 * How the file is mapped
+	 */
+	private transient MapMode mode;
+
+	/**
+	 * Name of the map mode, kept to map the file again after
+	 * deserialization
+	 */
+	private final String modeName;
+
+	/**
+	 * The number of instances
+	 */
+	private final int n;
+
+	/**
+	 * Bytes per distance, DOUBLE_BYTES or FLOAT_BYTES
+	 */
+	private final int entryBytes;
+
+	/**
+	 * log2 of the number of distances per segment
+	 */
+	private final int segmentShift;
+
+	/**
+	 * The mapped segments of the file
+	 */
+	private transient MappedByteBuffer[] segments;
+
+	/**
+	 * Creates a new file of n(n-1)/2 distances, all 0, and maps it.
+	 * An existing file is overwritten.
+	 *
+	 * @param f file to store the matrix in
+	 * @param n number of instances
+	 * @return the mapped matrix
+	 */
+	public static MappedDistanceMatrix create(File f, int n) throws IOException {
+		return create(f, n, false, SEGMENT_SHIFT);
+	}
+
+	/**
+	 * Creates a new file of n(n-1)/2 distances, all 0, and maps it.
+	 * An existing file is overwritten.
+	 *
+	 * @param f file to store the matrix in
+	 * @param n number of instances
+	 * @param singlePrecision store the distances as floats
+	 * @return the mapped matrix
+	 */
+	public static MappedDistanceMatrix create(File f, int n, 
+			boolean singlePrecision) throws IOException {
+		return create(f, n, singlePrecision, SEGMENT_SHIFT);
+	}
+
+	static MappedDistanceMatrix create(File f, int n, boolean singlePrecision,
+			int segmentShift) throws IOException {
+		final int entryBytes = singlePrecision ? FLOAT_BYTES : DOUBLE_BYTES;
+		if (n < 0) {
+			throw new IllegalArgumentException("The number of instances "
+					+ "cannot be negative");
+		}
+		RandomAccessFile raf = new RandomAccessFile(f, "rw");
+		try {
+			raf.setLength(0);
+			raf.setLength(HEADER_BYTES
+					+ CondensedDistanceMatrix.numEntries(n) * entryBytes);
+			raf.writeInt(n);
+			raf.writeInt(entryBytes);
+		} finally {
+			raf.close();
+		}
+		return new MappedDistanceMatrix(f, MapMode.READ_WRITE, segmentShift);
+	}
+
+	/**
+	 * Maps a matrix previously written by create().
+	 *
+	 * @param f file the matrix is stored in
+	 * @param mode READ_WRITE to write changes to the file, PRIVATE to
+	 * 		keep changes in memory only, READ_ONLY to forbid changes
+	 * @return the mapped matrix
+	 */
+	public static MappedDistanceMatrix open(File f, MapMode mode)
+			throws IOException {
+		return new MappedDistanceMatrix(f, mode, SEGMENT_SHIFT);
+	}
+
+	private MappedDistanceMatrix(File f, MapMode mode, int segmentShift)
+			throws IOException {
+		this.file = f;
+		this.mode = mode;
+		this.modeName = mode.toString();
+		this.segmentShift = segmentShift;
+		RandomAccessFile raf = new RandomAccessFile(f, "r");
+		try {
+			this.n = raf.readInt();
+			this.entryBytes = raf.readInt();
+			if (entryBytes != DOUBLE_BYTES && entryBytes != FLOAT_BYTES) {
+				throw new IOException(f + " does not hold a distance matrix");
+			}
+		} finally {
+			raf.close();
+		}
+		map();
+	}
+
+	/**
+	 * Maps the distances of the file in segments.
+	 */
+	private void map() throws IOException {
+		final long numEntries = CondensedDistanceMatrix.numEntries(n);
+		final long perSegment = 1L << segmentShift;
+		final int numSegments = (int) ((numEntries + perSegment - 1) / perSegment);
+		RandomAccessFile raf = new RandomAccessFile(file,
+				mode == MapMode.READ_ONLY ? "r" : "rw");
+		try {
+			FileChannel channel = raf.getChannel();
+			if (channel.size() < HEADER_BYTES + numEntries * entryBytes) {
+				throw new IOException(file + " is too short for a distance "
+						+ "matrix of " + n + " instances");
+			}
+			segments = new MappedByteBuffer[numSegments];
+			for (int s = 0; s < numSegments; s++) {
+				final long first = s * perSegment;
+				final long length = Math.min(perSegment, numEntries - first);
+				segments[s] = channel.map(mode,
+						HEADER_BYTES + first * entryBytes, length * entryBytes);
+				segments[s].order(ByteOrder.nativeOrder());
+			}
+		} finally {
+			// the mappings stay valid after the channel is closed
+			raf.close();
+		}
+	}
+
+	/**
+	 * Grows the file to hold the distances of n instances. The distances
+	 * already in the file stay where they are, since appending instances 
+	 * only appends entries to the layout. This matrix must not be used 
+	 * afterwards.
+	 *
+	 * @param n number of instances, at least size()
+	 * @return the larger matrix, with all new distances 0
+	 */
+	public MappedDistanceMatrix resize(int n) throws IOException {
+		if (mode != MapMode.READ_WRITE) {
+			throw new IllegalStateException("Only a matrix mapped "
+					+ "READ_WRITE can be resized");
+		}
+		if (n < this.n) {
+			throw new IllegalArgumentException("Cannot shrink a distance matrix");
+		}
+		flush();
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(HEADER_BYTES
+					+ CondensedDistanceMatrix.numEntries(n) * entryBytes);
+			raf.writeInt(n);
+		} finally {
+			raf.close();
+		}
+		return new MappedDistanceMatrix(file, mode, segmentShift);
+	}
+
+	/**
+	 * Whether the distances are stored as floats
+	 * @return true for single precision
+	 */
+	public boolean isSinglePrecision() {
+		return entryBytes == FLOAT_BYTES;
+	}
+
+	/**
+	 * The file the matrix is stored in
+	 * @return file
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	@Override
+	public int size() {
+		return n;
+	}
+
+	@Override
+	public double get(int i, int j) {
+		if (i == j) {
+			return 0.0;
+		}
+		final long idx = CondensedDistanceMatrix.index(i, j);
+		final MappedByteBuffer segment = segments[(int) (idx >>> segmentShift)];
+		final int offset = (int) (idx & ((1L << segmentShift) - 1)) * entryBytes;
+		if (entryBytes == FLOAT_BYTES) {
+			return segment.getFloat(offset);
+		}
+		return segment.getDouble(offset);
+	}
+
+	@Override
+	public void set(int i, int j, double d) {
+		if (i == j) {
+			throw new IllegalArgumentException("Cannot set the distance "
+					+ "of an instance to itself");
+		}
+		final long idx = CondensedDistanceMatrix.index(i, j);
+		final MappedByteBuffer segment = segments[(int) (idx >>> segmentShift)];
+		final int offset = (int) (idx & ((1L << segmentShift) - 1)) * entryBytes;
+		if (entryBytes == FLOAT_BYTES) {
+			segment.putFloat(offset, (float) d);
+		} else {
+			segment.putDouble(offset, d);
+		}
+	}
+
+	/**
+	 * Writes changes made to the matrix out to the file.
+	 */
+	public void flush() {
+		if (mode == MapMode.READ_WRITE) {
+			for (MappedByteBuffer segment: segments) {
+				segment.force();
+			}
+		}
+	}
+
+	/**
+	 * Flushes the matrix. The segments are unmapped once the matrix
+	 * is garbage collected.
+	 */
+	@Override
+	public void close() {
+		flush();
+	}
+
+	/**
+	 * Maps the file again when the matrix is deserialized.
+	 */
+	private void readObject(ObjectInputStream in)
+			throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		if (modeName.equals(MapMode.READ_WRITE.toString())) {
+			mode = MapMode.READ_WRITE;
+		} else if (modeName.equals(MapMode.PRIVATE.toString())) {
+			mode = MapMode.PRIVATE;
+		} else {
+			mode = MapMode.READ_ONLY;
+		}
+		map();
+	}
+
+}
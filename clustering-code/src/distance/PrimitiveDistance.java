@@ -0,0 +1,49 @@
+package distance;
+
+/**
+ * Interface for distance functions that can be calculated directly
+ * on the values held by PrimitiveInstances. Clustering algorithms and
+ * AbstractDistance convert the data once and use this instead of 
+ * distance(Instance, Instance) when it is available.
+ * <p>
+ * Distances summed window by window, such as the euclidean and
+ * manhattan distances, may instead be calculated over the runs of equal
+ * (in, out) windows that PrimitiveInstances keeps (setRunLength()), in
+ * time linear in the number of runs rather than of windows. Series with
+ * long runs of idle windows or destroy states are much faster this way.
+ * Only the calls on PrimitiveInstances use the runs: a single pair of
+ * Instances is not worth encoding. The terms are added in another
+ * order, so those distances may differ in their last bits, and
+ * getParameters() reports "runs" to keep their matrices apart.
+ *
+ * @author Shalisa Pattarawuttiwong
+ */
+public interface PrimitiveDistance extends DistanceFunction {
+
+	/**
+	 * The distance between the x-th instance of xs and the y-th 
+	 * instance of ys, equal to distance(Instance, Instance) on the 
+	 * same instances.
+	 * 
+	 * @param xs instances holding x
+	 * @param x index of x in xs
+	 * @param ys instances holding y
+	 * @param y index of y in ys
+	 * @return distance between x and y
+	 */
+	public double distance(PrimitiveInstances xs, int x, 
+			PrimitiveInstances ys, int y);
+
+	/**
+	 * The distances between the q-th instance of qs and each instance
+	 * of data, out[i] = distance(qs, q, data, i).
+	 * 
+	 * @param qs instances holding the query
+	 * @param q index of the query in qs
+	 * @param data
+	 * @param out array of at least data.numInstances() distances
+	 */
+	public void distancesTo(PrimitiveInstances qs, int q, 
+			PrimitiveInstances data, double[] out);
+
+}
@@ -0,0 +1,359 @@
+package distance;
+
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * The values of a set of instances copied once into a single array, 
+ * row after row, so that distances can be calculated without going 
+ * through weka.core.Instance or copying its attributes for every pair.
+ * Along with the offset and length of each row, the length before its
+ * trailing destroy states is kept: circuits are padded to the same
+ * number of windows with (in, out) = (-1, -1). For the windows before
+ * the first destroy state of each instance, the running sums of the in
+ * and out values are kept for lower bounds of distances. The windows
+ * of each instance of even length are also run-length encoded: idle
+ * windows of (0, 0) and the trailing destroy states come in long runs
+ * of the same (in, out), which distances can handle once per run. The
+ * values are kept along with the runs: the banded edit distance, the
+ * windows between destroy states and the sorting of rows by their
+ * first values index them by position, and a row whose windows all
+ * differ has as many runs as windows.
+ *
+ * @author Shalisa Pattarawuttiwong
+ */
+public class PrimitiveInstances {
+
+	/**
+	 * The values of all instances, row after row
+	 */
+	private final double[] values;
+
+	/**
+	 * The index of the first value of each instance in values
+	 */
+	private final int[] offsets;
+
+	/**
+	 * The number of values of each instance
+	 */
+	private final int[] lengths;
+
+	/**
+	 * The number of values of each instance before its trailing
+	 * (in, out) pairs that contain a negative value
+	 */
+	private final int[] validLengths;
+
+	/**
+	 * Whether each instance has a NaN value, found once when the values
+	 * are copied so that distances need not check every value
+	 */
+	private final boolean[] hasNaN;
+
+	/**
+	 * The number of (in, out) windows of each instance before its first
+	 * window with a negative (or NaN) value
+	 */
+	private final int[] leadingWindows;
+
+	/**
+	 * The index in inSums and outSums of the sums of each instance
+	 */
+	private final int[] sumOffsets;
+
+	/**
+	 * The sums of the in and out values of the first w leading windows of
+	 * each instance, for w = 0, ..., leadingWindows, instance after instance
+	 */
+	private final double[] inSums;
+	private final double[] outSums;
+
+	/**
+	 * The index in runIns, runOuts and runCounts of the first run of 
+	 * each instance, and one past the last run of the last instance
+	 */
+	private final int[] runOffsets;
+
+	/**
+	 * The (in, out) of each run of equal windows, and the number of 
+	 * windows in it, instance after instance
+	 */
+	private final double[] runIns;
+	private final double[] runOuts;
+	private final int[] runCounts;
+
+	/**
+	 * Constructor for PrimitiveInstances holding the values of the data.
+	 * 
+	 * @param data
+	 */
+	public PrimitiveInstances(Instances data) {
+		this(toArray(data));
+	}
+
+	/**
+	 * Constructor for PrimitiveInstances holding the values of the given
+	 * instances, e.g. cluster centroids.
+	 * 
+	 * @param insts
+	 */
+	public PrimitiveInstances(Instance[] insts) {
+		final int n = insts.length;
+		offsets = new int[n];
+		lengths = new int[n];
+		validLengths = new int[n];
+		hasNaN = new boolean[n];
+		leadingWindows = new int[n];
+		sumOffsets = new int[n];
+		long total = 0;
+		for (int i = 0; i < n; i++) {
+			lengths[i] = insts[i].numAttributes();
+			total += lengths[i];
+		}
+		if (total > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("Too many values (" + total
+					+ ") to hold the instances in one array");
+		}
+		values = new double[(int) total];
+		int offset = 0;
+		for (int i = 0; i < n; i++) {
+			offsets[i] = offset;
+			for (int a = 0; a < lengths[i]; a++) {
+				values[offset + a] = insts[i].value(a);
+				hasNaN[i] |= Double.isNaN(values[offset + a]);
+			}
+			validLengths[i] = validLength(values, offset, lengths[i]);
+			int w = 0;
+			while (2 * w + 1 < lengths[i] && values[offset + 2 * w] >= 0
+					&& values[offset + 2 * w + 1] >= 0) {
+				w++;
+			}
+			leadingWindows[i] = w;
+			offset += lengths[i];
+		}
+		int numSums = 0;
+		for (int i = 0; i < n; i++) {
+			sumOffsets[i] = numSums;
+			numSums += leadingWindows[i] + 1;
+		}
+		inSums = new double[numSums];
+		outSums = new double[numSums];
+		for (int i = 0; i < n; i++) {
+			final int s = sumOffsets[i];
+			for (int w = 0; w < leadingWindows[i]; w++) {
+				inSums[s + w + 1] = inSums[s + w] + values[offsets[i] + 2 * w];
+				outSums[s + w + 1] = outSums[s + w] + values[offsets[i] + 2 * w + 1];
+			}
+		}
+		runOffsets = new int[n + 1];
+		for (int i = 0; i < n; i++) {
+			runOffsets[i + 1] = runOffsets[i] + numRuns(values, offsets[i], lengths[i]);
+		}
+		runIns = new double[runOffsets[n]];
+		runOuts = new double[runOffsets[n]];
+		runCounts = new int[runOffsets[n]];
+		for (int i = 0; i < n; i++) {
+			int r = runOffsets[i] - 1;
+			for (int a = 0; a + 1 < lengths[i] && lengths[i] % 2 == 0; a += 2) {
+				final double in = values[offsets[i] + a];
+				final double out = values[offsets[i] + a + 1];
+				if (a == 0 || !same(in, runIns[r]) || !same(out, runOuts[r])) {
+					r++;
+					runIns[r] = in;
+					runOuts[r] = out;
+				}
+				runCounts[r]++;
+			}
+		}
+	}
+
+	/**
+	 * The number of runs of equal windows in values[offset, offset +
+	 * length), or 0 if the length is odd.
+	 */
+	private static int numRuns(double[] values, int offset, int length) {
+		if (length % 2 != 0) {
+			return 0;
+		}
+		int runs = 0;
+		for (int a = 0; a < length; a += 2) {
+			if (a == 0 || !same(values[offset + a], values[offset + a - 2])
+					|| !same(values[offset + a + 1], values[offset + a - 1])) {
+				runs++;
+			}
+		}
+		return runs;
+	}
+
+	/**
+	 * Whether two values are the same, as compared by Arrays.equals
+	 */
+	private static boolean same(double a, double b) {
+		return Double.doubleToLongBits(a) == Double.doubleToLongBits(b);
+	}
+
+	private static Instance[] toArray(Instances data) {
+		final Instance[] insts = new Instance[data.numInstances()];
+		for (int i = 0; i < insts.length; i++) {
+			insts[i] = data.instance(i);
+		}
+		return insts;
+	}
+
+	/**
+	 * The number of values before the trailing (in, out) pairs that
+	 * contain a negative value. Rows of odd length are not trimmed.
+	 */
+	static int validLength(double[] values, int offset, int length) {
+		if (length % 2 != 0) {
+			return length;
+		}
+		int valid = length;
+		while (valid > 0 && (values[offset + valid - 2] < 0 
+				|| values[offset + valid - 1] < 0)) {
+			valid -= 2;
+		}
+		return valid;
+	}
+
+	/**
+	 * The number of instances
+	 * @return number of rows
+	 */
+	public int numInstances() {
+		return offsets.length;
+	}
+
+	/**
+	 * The values of all instances, row after row. The array is shared,
+	 * not copied, and must not be changed.
+	 * @return values
+	 */
+	public double[] values() {
+		return values;
+	}
+
+	/**
+	 * The index in values() of the first value of the i-th instance
+	 * @param i index of the instance
+	 * @return offset of the row
+	 */
+	public int offset(int i) {
+		return offsets[i];
+	}
+
+	/**
+	 * The number of values of the i-th instance
+	 * @param i index of the instance
+	 * @return length of the row
+	 */
+	public int length(int i) {
+		return lengths[i];
+	}
+
+	/**
+	 * Whether the i-th instance has a NaN value
+	 * @param i index of the instance
+	 * @return true if one of its values is NaN
+	 */
+	public boolean hasNaN(int i) {
+		return hasNaN[i];
+	}
+
+	/**
+	 * The number of values of the i-th instance before its trailing 
+	 * destroy states
+	 * @param i index of the instance
+	 * @return length of the row without trailing destroy states
+	 */
+	public int validLength(int i) {
+		return validLengths[i];
+	}
+
+	/**
+	 * The number of windows of the i-th instance before its first window
+	 * with a negative (or NaN) value
+	 * @param i index of the instance
+	 * @return number of leading windows without destroy states
+	 */
+	public int leadingWindows(int i) {
+		return leadingWindows[i];
+	}
+
+	/**
+	 * The sum of the in values of the first w windows of the i-th instance
+	 * @param i index of the instance
+	 * @param w number of windows, at most leadingWindows(i)
+	 * @return sum of the in values
+	 */
+	public double inSum(int i, int w) {
+		if (w > leadingWindows[i]) {
+			throw new IndexOutOfBoundsException("Only the sums of the "
+					+ "leading windows are kept");
+		}
+		return inSums[sumOffsets[i] + w];
+	}
+
+	/**
+	 * The sum of the out values of the first w windows of the i-th instance
+	 * @param i index of the instance
+	 * @param w number of windows, at most leadingWindows(i)
+	 * @return sum of the out values
+	 */
+	public double outSum(int i, int w) {
+		if (w > leadingWindows[i]) {
+			throw new IndexOutOfBoundsException("Only the sums of the "
+					+ "leading windows are kept");
+		}
+		return outSums[sumOffsets[i] + w];
+	}
+
+	/**
+	 * The number of runs of equal (in, out) windows of the i-th instance,
+	 * 0 if its length is odd
+	 * @param i index of the instance
+	 * @return number of runs
+	 */
+	public int numRuns(int i) {
+		return runOffsets[i + 1] - runOffsets[i];
+	}
+
+	/**
+	 * The index in runIns(), runOuts() and runCounts() of the first run
+	 * of the i-th instance
+	 * @param i index of the instance
+	 * @return offset of the runs
+	 */
+	public int runOffset(int i) {
+		return runOffsets[i];
+	}
+
+	/**
+	 * The in value of the windows of each run. The array is shared, 
+	 * not copied, and must not be changed.
+	 * @return in values of the runs
+	 */
+	public double[] runIns() {
+		return runIns;
+	}
+
+	/**
+	 * The out value of the windows of each run. The array is shared, 
+	 * not copied, and must not be changed.
+	 * @return out values of the runs
+	 */
+	public double[] runOuts() {
+		return runOuts;
+	}
+
+	/**
+	 * The number of windows in each run. The array is shared, not 
+	 * copied, and must not be changed.
+	 * @return lengths of the runs
+	 */
+	public int[] runCounts() {
+		return runCounts;
+	}
+
+}
@@ -0,0 +1,87 @@
+package distance;
+
+/**
+ * The running mean and variance of the per-sequence log likelihood
+ * ratios of a Monte Carlo estimate of a Kullback-Leibler distance, with
+ * the rule for stopping once it is precise enough: at least
+ * minSamples samples and a 95% confidence half-width of at most
+ * tolerance * max(1, |mean|). The tolerance is relative for large
+ * distances, so that pairs of HMMs that are far apart stop early, and
+ * absolute for small ones. A tolerance of 0 never stops.
+ * <p>
+ * The mean is the sum of the samples divided by their number, as the
+ * fixed estimates calculate it, and the variance is Welford's.
+ *
+ * @author Shalisa Pattarawuttiwong
+ */
+final class SequentialEstimate {
+
+	/**
+	 * The normal quantile of a 95% confidence interval
+	 */
+	static final double Z = 1.96;
+
+	private final double tolerance;
+	private final int minSamples;
+
+	private int count = 0;
+	private double sum = 0.;
+	private double runningMean = 0.;
+	private double m2 = 0.;
+
+	/**
+	 * Constructor for an empty estimate
+	 *
+	 * @param tolerance relative half-width to stop at, 0 to never stop
+	 * @param minSamples number of samples to take before stopping
+	 */
+	SequentialEstimate(double tolerance, int minSamples) {
+		this.tolerance = tolerance;
+		this.minSamples = Math.max(minSamples, 2);
+	}
+
+	/**
+	 * Adds a sample
+	 */
+	void add(double x) {
+		count++;
+		sum += x;
+		final double delta = x - runningMean;
+		runningMean += delta / count;
+		m2 += delta * (x - runningMean);
+	}
+
+	/**
+	 * The number of samples
+	 */
+	int count() {
+		return count;
+	}
+
+	/**
+	 * The mean of the samples
+	 */
+	double mean() {
+		return sum / count;
+	}
+
+	/**
+	 * The half-width of the 95% confidence interval of the mean,
+	 * infinite with fewer than 2 samples
+	 */
+	double halfWidth() {
+		if (count < 2) {
+			return Double.POSITIVE_INFINITY;
+		}
+		return Z * Math.sqrt(m2 / (count - 1) / count);
+	}
+
+	/**
+	 * Whether the estimate is precise enough to stop sampling
+	 */
+	boolean done() {
+		return tolerance > 0 && count >= minSamples
+				&& halfWidth() <= tolerance * Math.max(1., Math.abs(mean()));
+	}
+
+}
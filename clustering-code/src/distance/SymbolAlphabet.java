@@ -0,0 +1,316 @@
+package distance;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * Maps the symbols (pairs of (in,out) cell counts) of a set of instances
+ * to the integers 0 to size()-1. The symbols are numbered in increasing
+ * order of their in value, and symbols with the same in value in the
+ * order they first appear, so the smallest symbol is 0 (the destroy
+ * state of padded series). Each pair is looked up by the bits of its two
+ * values in an open-addressing hash table, without boxing or building
+ * strings. The table starts small and doubles whenever it is half full,
+ * so it grows with the number of symbols, not of windows.
+ *
+ * @author Shalisa Pattarawuttiwong
+ */
+public class SymbolAlphabet {
+
+	/**
+	 * Marks an empty slot of the table
+	 */
+	private static final int EMPTY = -1;
+
+	/**
+	 * The initial length of the table, a power of two
+	 */
+	private static final int INITIAL_CAPACITY = 64;
+
+	/**
+	 * The longest table, a power of two that fits in an int
+	 */
+	private static final int MAX_CAPACITY = 1 << 30;
+
+	/**
+	 * The bits of the in and out values of the symbol in each slot
+	 */
+	private long[] keyIns;
+	private long[] keyOuts;
+
+	/**
+	 * The symbol in each slot, or EMPTY
+	 */
+	private int[] symbols;
+
+	/**
+	 * The table length - 1, a power of two - 1
+	 */
+	private int mask;
+
+	/**
+	 * The in and out values of each symbol
+	 */
+	private final double[] ins;
+	private final double[] outs;
+
+	/**
+	 * Constructor for the alphabet of the symbols of all instances
+	 * of data.
+	 *
+	 * @param data
+	 */
+	public SymbolAlphabet(Instances data) {
+		this(toArray(data));
+	}
+
+	/**
+	 * Constructor for the alphabet of the symbols of all the given
+	 * instances.
+	 *
+	 * @param insts Instances
+	 */
+	public SymbolAlphabet(Instance[] insts) {
+		keyIns = new long[INITIAL_CAPACITY];
+		keyOuts = new long[INITIAL_CAPACITY];
+		symbols = new int[INITIAL_CAPACITY];
+		Arrays.fill(symbols, EMPTY);
+		mask = INITIAL_CAPACITY - 1;
+
+		// number the symbols in the order they first appear
+		double[] firstIns = new double[16];
+		double[] firstOuts = new double[16];
+		int size = 0;
+		for (Instance inst: insts) {
+			final double[] values = inst.toDoubleArray();
+			for (int i = 0; i + 1 < values.length; i += 2) {
+				int slot = slot(values[i], values[i+1]);
+				if (symbols[slot] == EMPTY) {
+					if (2 * (size + 1) > symbols.length) {
+						// keep the table at most half full
+						grow();
+						slot = slot(values[i], values[i+1]);
+					}
+					keyIns[slot] = Double.doubleToLongBits(values[i]);
+					keyOuts[slot] = Double.doubleToLongBits(values[i+1]);
+					symbols[slot] = size;
+					if (size == firstIns.length) {
+						firstIns = Arrays.copyOf(firstIns, 2 * size);
+						firstOuts = Arrays.copyOf(firstOuts, 2 * size);
+					}
+					firstIns[size] = values[i];
+					firstOuts[size] = values[i+1];
+					size++;
+				}
+			}
+		}
+
+		// sort by in value, keeping the order of appearance for equal ins
+		final double[] appearedIns = firstIns;
+		final Integer[] order = new Integer[size];
+		for (int s = 0; s < size; s++) {
+			order[s] = s;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Double.compare(appearedIns[a], appearedIns[b]);
+			}
+		});
+		final int[] rank = new int[size];
+		ins = new double[size];
+		outs = new double[size];
+		for (int r = 0; r < size; r++) {
+			rank[order[r]] = r;
+			ins[r] = firstIns[order[r]];
+			outs[r] = firstOuts[order[r]];
+		}
+		for (int slot = 0; slot < symbols.length; slot++) {
+			if (symbols[slot] != EMPTY) {
+				symbols[slot] = rank[symbols[slot]];
+			}
+		}
+	}
+
+	/**
+	 * The instances of data in an array
+	 */
+	static Instance[] toArray(Instances data) {
+		final Instance[] insts = new Instance[data.numInstances()];
+		for (int i = 0; i < insts.length; i++) {
+			insts[i] = data.instance(i);
+		}
+		return insts;
+	}
+
+	/**
+	 * Doubles the length of the table, putting each symbol in its slot
+	 * of the longer table.
+	 */
+	private void grow() {
+		if (symbols.length == MAX_CAPACITY) {
+			throw new IllegalStateException("Too many symbols ("
+					+ symbols.length / 2 + ") for the table");
+		}
+		final long[] oldIns = keyIns;
+		final long[] oldOuts = keyOuts;
+		final int[] oldSymbols = symbols;
+		keyIns = new long[2 * oldSymbols.length];
+		keyOuts = new long[2 * oldSymbols.length];
+		symbols = new int[2 * oldSymbols.length];
+		Arrays.fill(symbols, EMPTY);
+		mask = symbols.length - 1;
+		for (int old = 0; old < oldSymbols.length; old++) {
+			if (oldSymbols[old] != EMPTY) {
+				int slot = hash(oldIns[old], oldOuts[old]) & mask;
+				while (symbols[slot] != EMPTY) {
+					slot = (slot + 1) & mask;
+				}
+				keyIns[slot] = oldIns[old];
+				keyOuts[slot] = oldOuts[old];
+				symbols[slot] = oldSymbols[old];
+			}
+		}
+	}
+
+	/**
+	 * The hash of the bits of a symbol
+	 */
+	private static int hash(long inBits, long outBits) {
+		long h = inBits * 0x9E3779B97F4A7C15L + outBits;
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		return (int) h;
+	}
+
+	/**
+	 * The slot holding the symbol (in, out), or the empty slot it
+	 * would be put in.
+	 */
+	private int slot(double in, double out) {
+		final long inBits = Double.doubleToLongBits(in);
+		final long outBits = Double.doubleToLongBits(out);
+		int slot = hash(inBits, outBits) & mask;
+		while (symbols[slot] != EMPTY
+				&& (keyIns[slot] != inBits || keyOuts[slot] != outBits)) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * The length of the hash table
+	 */
+	int capacity() {
+		return symbols.length;
+	}
+
+	/**
+	 * The number of symbols
+	 * @return size of the alphabet
+	 */
+	public int size() {
+		return ins.length;
+	}
+
+	/**
+	 * The integer of the symbol (in, out)
+	 * @param in number of cells in
+	 * @param out number of cells out
+	 * @return the symbol, or -1 if it is not in the alphabet
+	 */
+	public int symbol(double in, double out) {
+		return symbols[slot(in, out)];
+	}
+
+	/**
+	 * The integer of the symbol (in, out) or, if it is not in the
+	 * alphabet, of the symbol closest to it by the squared differences
+	 * of their in and out values, the smallest of equally close ones.
+	 * @param in number of cells in
+	 * @param out number of cells out
+	 * @return the symbol, or the closest one
+	 */
+	public int nearestSymbol(double in, double out) {
+		final int s = symbol(in, out);
+		if (s >= 0) {
+			return s;
+		}
+		if (ins.length == 0) {
+			throw new IllegalStateException("The alphabet has no symbols");
+		}
+		int nearest = 0;
+		double best = Double.POSITIVE_INFINITY;
+		for (int t = 0; t < ins.length; t++) {
+			final double din = ins[t] - in;
+			final double dout = outs[t] - out;
+			final double d = din * din + dout * dout;
+			if (d < best) {
+				best = d;
+				nearest = t;
+			}
+		}
+		return nearest;
+	}
+
+	/**
+	 * The in value of a symbol
+	 * @param s symbol
+	 * @return number of cells in
+	 */
+	public double in(int s) {
+		return ins[s];
+	}
+
+	/**
+	 * The out value of a symbol
+	 * @param s symbol
+	 * @return number of cells out
+	 */
+	public double out(int s) {
+		return outs[s];
+	}
+
+	/**
+	 * Converts an instance into its sequence of symbols, one per
+	 * (in,out) pair of attributes.
+	 *
+	 * @param x Instance
+	 * @return the symbols of x
+	 */
+	public int[] sequence(Instance x) {
+		final double[] values = x.toDoubleArray();
+		final int[] seq = new int[values.length / 2];
+		for (int i = 0; i < seq.length; i++) {
+			seq[i] = symbol(values[2*i], values[2*i+1]);
+			if (seq[i] < 0) {
+				throw new IllegalArgumentException("The symbol "
+						+ Arrays.toString(new double[]{values[2*i], values[2*i+1]})
+						+ " is not in the alphabet");
+			}
+		}
+		return seq;
+	}
+
+	/**
+	 * Converts an instance into its sequence of symbols, mapping each
+	 * (in,out) pair that is not in the alphabet to the nearest symbol
+	 * (see nearestSymbol()), e.g. for instances outside the data the
+	 * alphabet was built from.
+	 *
+	 * @param x Instance
+	 * @return the symbols of x, or the nearest ones
+	 */
+	public int[] nearestSequence(Instance x) {
+		final double[] values = x.toDoubleArray();
+		final int[] seq = new int[values.length / 2];
+		for (int i = 0; i < seq.length; i++) {
+			seq[i] = nearestSymbol(values[2*i], values[2*i+1]);
+		}
+		return seq;
+	}
+
+}
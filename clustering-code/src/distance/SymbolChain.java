@@ -0,0 +1,255 @@
+package distance;
+
+import java.util.Arrays;
+
+import be.ac.ulg.montefiore.run.jahmm.Hmm;
+import be.ac.ulg.montefiore.run.jahmm.ObservationInteger;
+import be.ac.ulg.montefiore.run.jahmm.OpdfInteger;
+
+/**
+ * The first order Markov chain of the symbols emitted by an HMM with
+ * integer observations, for approximating the Kullback-Leibler rate
+ * between two HMMs without sampling. The chain is the expected frequency
+ * of each pair of consecutive symbols,
+ * <pre>
+ *     J(o, o') = sum_i w(i) b_i(o) sum_j a_ij b_j(o')
+ * </pre>
+ * where w is the distribution of the states averaged over the first
+ * horizon - 1 steps from Pi. The destroy state is absorbing, so the
+ * stationary distribution of an HMM is all in it; the averaged
+ * distribution is the stationary distribution of the sequences of
+ * horizon symbols that kldistance() generates.
+ * <p>
+ * The KL rate between two HMMs is then approximated by the KL rate
+ * between their chains, sum J1(o, o') ln(P1(o' | o) / P2(o' | o)). The
+ * conditional probabilities are smoothed towards the uniform
+ * distribution, so that a pair of symbols one HMM cannot emit gives a
+ * large but finite distance. Each HMM only emits the symbols of its
+ * instance, so the chain is held over the symbols the HMM emits, and a
+ * symbol it never emits is followed by any symbol with probability
+ * 1 / M. Building the chain costs O(horizon N^2 + N^2 K + N K^2) for N
+ * states and K symbols emitted, and the rate between two chains
+ * O(K^2), with no logarithm taken.
+ *
+ * @author Shalisa Pattarawuttiwong
+ */
+final class SymbolChain {
+
+	/**
+	 * The weight of the uniform distribution in the smoothed
+	 * conditional probabilities
+	 */
+	static final double SMOOTHING = 1e-6;
+
+	/**
+	 * The number of symbols M
+	 */
+	private final int numSymbols;
+
+	/**
+	 * The symbols the HMM emits, in increasing order, and the position
+	 * of each symbol among them, -1 for the symbols it never emits
+	 */
+	private final int[] emitted;
+	private final int[] position;
+
+	/**
+	 * The expected frequency of each pair of consecutive emitted
+	 * symbols, by position: joint[a * K + b] = J(emitted[a], emitted[b])
+	 */
+	private final double[] joint;
+
+	/**
+	 * The natural logarithm of the smoothed probability of each emitted
+	 * symbol following each emitted symbol, indexed as joint
+	 */
+	private final double[] lnConditional;
+
+	/**
+	 * Whether each emitted symbol has probability 0 under the averaged
+	 * distribution of the states, so that any symbol follows it
+	 */
+	private final boolean[] uniformRow;
+
+	/**
+	 * The natural logarithms of 1 / M, the probability of any symbol
+	 * after a symbol the HMM never emits, and of SMOOTHING / M, the
+	 * probability of a symbol the HMM never emits after one it does
+	 */
+	private final double lnUniform;
+	private final double lnSmoothing;
+
+	/**
+	 * Constructs the chain of an HMM.
+	 *
+	 * @param hmm HMM with OpdfInteger distributions
+	 * @param horizon length of the sequences the chain stands for, at
+	 *        least 2
+	 */
+	SymbolChain(Hmm<ObservationInteger> hmm, int horizon) {
+		if (horizon < 2) {
+			throw new IllegalArgumentException("Cannot set the horizon "
+					+ "to fewer than 2 symbols");
+		}
+		final int n = hmm.nbStates();
+		int m = 0;
+		for (int i = 0; i < n; i++) {
+			m = Math.max(m, ((OpdfInteger) hmm.getOpdf(i)).nbEntries());
+		}
+		this.numSymbols = m;
+		this.lnUniform = Math.log(1. / m);
+		this.lnSmoothing = Math.log(SMOOTHING / m);
+
+		// the symbols emitted by any state
+		this.position = new int[m];
+		Arrays.fill(position, -1);
+		final double[][] opdfs = new double[n][m];
+		int k = 0;
+		for (int o = 0; o < m; o++) {
+			final ObservationInteger obs = new ObservationInteger(o);
+			boolean isEmitted = false;
+			for (int i = 0; i < n; i++) {
+				final OpdfInteger opdf = (OpdfInteger) hmm.getOpdf(i);
+				if (o < opdf.nbEntries()) {
+					opdfs[i][o] = opdf.probability(obs);
+					isEmitted |= opdfs[i][o] != 0.;
+				}
+			}
+			if (isEmitted) {
+				position[o] = k++;
+			}
+		}
+		this.emitted = new int[k];
+		for (int o = 0; o < m; o++) {
+			if (position[o] >= 0) {
+				emitted[position[o]] = o;
+			}
+		}
+		final double[] a = new double[n * n];
+		final double[] b = new double[n * k];
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				a[i * n + j] = hmm.getAij(i, j);
+			}
+			for (int e = 0; e < k; e++) {
+				b[i * k + e] = opdfs[i][emitted[e]];
+			}
+		}
+
+		// the states averaged over the steps a pair of symbols starts at
+		final double[] w = new double[n];
+		double[] p = new double[n];
+		double[] next = new double[n];
+		for (int i = 0; i < n; i++) {
+			p[i] = hmm.getPi(i);
+		}
+		for (int t = 0; t < horizon - 1; t++) {
+			for (int j = 0; j < n; j++) {
+				w[j] += p[j];
+				next[j] = 0.;
+			}
+			for (int i = 0; i < n; i++) {
+				if (p[i] != 0.) {
+					for (int j = 0; j < n; j++) {
+						next[j] += p[i] * a[i * n + j];
+					}
+				}
+			}
+			final double[] swap = p;
+			p = next;
+			next = swap;
+		}
+		for (int i = 0; i < n; i++) {
+			w[i] /= horizon - 1;
+		}
+
+		// the symbol after each state: c[i * k + e] = sum_j a_ij b_j(e)
+		final double[] c = new double[n * k];
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				final double aij = a[i * n + j];
+				if (aij != 0.) {
+					for (int e = 0; e < k; e++) {
+						c[i * k + e] += aij * b[j * k + e];
+					}
+				}
+			}
+		}
+		this.joint = new double[k * k];
+		for (int i = 0; i < n; i++) {
+			for (int e = 0; e < k; e++) {
+				final double wb = w[i] * b[i * k + e];
+				if (wb != 0.) {
+					for (int f = 0; f < k; f++) {
+						joint[e * k + f] += wb * c[i * k + f];
+					}
+				}
+			}
+		}
+
+		this.lnConditional = new double[k * k];
+		this.uniformRow = new boolean[k];
+		for (int e = 0; e < k; e++) {
+			double sum = 0.;
+			for (int f = 0; f < k; f++) {
+				sum += joint[e * k + f];
+			}
+			uniformRow[e] = !(sum > 0.);
+			for (int f = 0; f < k; f++) {
+				lnConditional[e * k + f] = uniformRow[e] ? lnUniform 
+						: Math.log((1. - SMOOTHING) * joint[e * k + f] / sum
+						+ SMOOTHING / m);
+			}
+		}
+	}
+
+	/**
+	 * The natural logarithm of the smoothed probability of symbol o2
+	 * following symbol o.
+	 */
+	private double lnConditional(int o, int o2) {
+		final int e = position[o];
+		if (e < 0 || uniformRow[e]) {
+			return lnUniform;
+		}
+		final int f = position[o2];
+		return (f < 0) ? lnSmoothing : lnConditional[e * emitted.length + f];
+	}
+
+	/**
+	 * The number of symbols
+	 * @return number of symbols
+	 */
+	int numSymbols() {
+		return numSymbols;
+	}
+
+	/**
+	 * The Kullback-Leibler rate between the chain of this HMM and the
+	 * chain of other, with regard to this HMM.
+	 *
+	 * @param other chain of an HMM over the same symbols
+	 * @return the approximate KL rate, at least 0
+	 */
+	double klRate(SymbolChain other) {
+		if (other.numSymbols != numSymbols) {
+			throw new IllegalArgumentException("The chains have different "
+					+ "numbers of symbols");
+		}
+		double rate = 0.;
+		final int k = emitted.length;
+		for (int e = 0; e < k; e++) {
+			for (int f = 0; f < k; f++) {
+				final double j = joint[e * k + f];
+				if (j != 0.) {
+					rate += j * (lnConditional[e * k + f]
+							- other.lnConditional(emitted[e], emitted[f]));
+				}
+			}
+		}
+		// the joint frequencies are not smoothed, which can take a rate
+		// of about 0 just below it
+		return Math.max(rate, 0.);
+	}
+
+}
@@ -0,0 +1,98 @@
+package distance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The sequences the discrete HMM distances train an HMM on when it is
+ * trained on the symbols observed for an instance rather than on
+ * sequences generated by the initial HMM.
+ * <p>
+ * Symbol 0 is the destroy symbol, which only the absorbing destroy state
+ * emits, so an HMM cannot emit any other symbol after it. The observed
+ * symbols are therefore split into segments: a run of destroy symbols
+ * followed by other symbols ends a segment and is left out, while the
+ * run of destroy symbols the series is padded with stays at the end of
+ * the last segment.
+ *
+ * @author Shalisa Pattarawuttiwong
+ */
+final class TrainingSequences {
+
+	private TrainingSequences() {
+	}
+
+	/**
+	 * Splits the observed symbols into the segments an HMM with an
+	 * absorbing destroy state can emit. Segments shorter than 2 symbols,
+	 * too short for Baum-Welch, are left out.
+	 *
+	 * @param symbols the symbols of an instance
+	 * @return the segments, possibly none
+	 */
+	static int[][] observed(int[] symbols) {
+		List<int[]> segments = new ArrayList<int[]>();
+		// the padding at the end
+		int end = symbols.length;
+		while (end > 0 && symbols[end - 1] == 0) {
+			end--;
+		}
+		int start = 0;
+		while (start < end) {
+			while (start < end && symbols[start] == 0) {
+				start++;
+			}
+			int stop = start;
+			while (stop < end && symbols[stop] != 0) {
+				stop++;
+			}
+			// the last segment keeps the padding
+			final int last = (stop == end) ? symbols.length : stop;
+			if (last - start >= 2) {
+				int[] segment = new int[last - start];
+				System.arraycopy(symbols, start, segment, 0, segment.length);
+				segments.add(segment);
+			}
+			start = stop;
+		}
+		return segments.toArray(new int[segments.size()][]);
+	}
+
+	/**
+	 * Moving block bootstrap resamples of segments. Each resample of a
+	 * segment has the same length: its symbols before the padding are
+	 * replaced by randomly chosen blocks of about the square root of
+	 * their number of consecutive symbols, and the padding is kept.
+	 *
+	 * @param segments segments returned by observed()
+	 * @param samples number of resamples of each segment
+	 * @param rand random number generator
+	 * @return the segments followed by their resamples
+	 */
+	static int[][] bootstrap(int[][] segments, int samples, Random rand) {
+		final int[][] sequences = new int[segments.length * (1 + samples)][];
+		int s = 0;
+		for (int[] segment: segments) {
+			sequences[s++] = segment;
+		}
+		for (int b = 0; b < samples; b++) {
+			for (int[] segment: segments) {
+				int active = segment.length;
+				while (active > 0 && segment[active - 1] == 0) {
+					active--;
+				}
+				final int[] resample = segment.clone();
+				final int block = Math.max(1, (int) Math.sqrt(active));
+				for (int pos = 0; pos < active; pos += block) {
+					final int from = rand.nextInt(active - block + 1);
+					System.arraycopy(segment, from, resample, pos,
+							Math.min(block, active - pos));
+				}
+				sequences[s++] = resample;
+			}
+		}
+		return sequences;
+	}
+
+}
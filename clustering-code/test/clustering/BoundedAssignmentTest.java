@@ -0,0 +1,145 @@
+package clustering;
+
+import distance.AbstractDistance;
+import distance.BoundedDistance;
+import distance.EditDistance;
+import distance.PrimitiveDistance;
+import distance.PrimitiveInstances;
+
+import java.io.*;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * Tests that KMeans and KMedoids find the same clusters with a
+ * BoundedDistance as with the same distance calculated in full
+ *
+ * @author Shalisa Pattarawuttiwong
+ */
+public class BoundedAssignmentTest {
+
+    private static Instances data;
+
+    /**
+     * Reads in instances from a .arff file
+     * @param filename   name of the .arff file
+     */
+    public static void readInInstances(String filename)  throws Exception{
+        BufferedReader reader = new BufferedReader(new FileReader(filename));
+        data = new Instances(reader);
+    }
+
+    /**
+     * EditDistance without the cutoffs of BoundedDistance, so that the
+     * clustering algorithms calculate every distance in full
+     */
+    private static class UnboundedEditDistance extends AbstractDistance
+            implements PrimitiveDistance {
+
+        private final EditDistance edD = new EditDistance();
+
+        @Override
+        public double distance(Instance x, Instance y) {
+            return edD.distance(x, y);
+        }
+
+        @Override
+        public double distance(PrimitiveInstances xs, int x,
+                PrimitiveInstances ys, int y) {
+            return edD.distance(xs, x, ys, y);
+        }
+
+        @Override
+        public void distancesTo(PrimitiveInstances qs, int q,
+                PrimitiveInstances data, double[] out) {
+            edD.distancesTo(qs, q, data, out);
+        }
+    }
+
+    /**
+     * The first, middle and last instances of the data
+     */
+    private static Set<Integer> initIndices() {
+        Set<Integer> init = new TreeSet<Integer>();
+        init.add(0);
+        init.add(data.numInstances() / 2);
+        init.add(data.numInstances() - 1);
+        return init;
+    }
+
+    /**
+     * Testing that the cutoffs of k-means++ seeding keep every distance
+     * whose square is at most the given squared distance, even when it
+     * is exactly that distance
+     */
+    @Test
+    public void testSquaredCutoffs() throws Exception {
+        readInInstances("./data/seriesdata.arff");
+        EditDistance edD = new EditDistance();
+        PrimitiveInstances store = new PrimitiveInstances(data);
+        int n = data.numInstances();
+        double[] exact = new double[n];
+        double[] bounded = new double[n];
+        for (int a = 0; a < n; a++) {
+            edD.distancesTo(store, a, store, exact);
+            double[] squares = new double[n];
+            for (int i = 0; i < n; i++) {
+                squares[i] = exact[i] * exact[i];
+            }
+            edD.distancesTo(store, a, store,
+                	BoundedDistance.squaredCutoffs(squares), bounded);
+            assertArrayEquals(exact, bounded, 0.0);
+        }
+    }
+
+    /**
+     * Testing that KMeans assigns the instances to the same centroids
+     * with and without the cutoffs
+     */
+    @Test
+    public void testKMeansAssignment() throws Exception {
+        readInInstances("./data/seriesdata.arff");
+        KMeans bounded = new KMeans(data, new EditDistance());
+        KMeans unbounded = new KMeans(data, new UnboundedEditDistance());
+        for (KMeans kmeans : new KMeans[] {bounded, unbounded}) {
+            kmeans.setNumClusters(3);
+            kmeans.setNumIterations(10);
+            kmeans.setInitCentroids(initIndices());
+            kmeans.cluster();
+        }
+        assertArrayEquals(unbounded.getClusters(), bounded.getClusters());
+    }
+
+    /**
+     * Testing that KMedoids assigns the instances to the same medoids,
+     * and finds the same instances closest to the cluster averages, with
+     * and without the cutoffs
+     */
+    @Test
+    public void testKMedoidsAssignment() throws Exception {
+        readInInstances("./data/seriesdata.arff");
+        KMedoids bounded = new KMedoids(data, new EditDistance());
+        KMedoids unbounded = new KMedoids(data, new UnboundedEditDistance());
+        for (KMedoids kmedoids : new KMedoids[] {bounded, unbounded}) {
+            kmedoids.setNumClusters(3);
+            kmedoids.setNumIterations(10);
+            kmedoids.setInitMedoids(initIndices());
+            kmedoids.cluster();
+        }
+        assertArrayEquals(unbounded.getClusters(), bounded.getClusters());
+        for (int i = 0; i + 1 < data.numInstances(); i += 10) {
+            Instance avg = new Instance(data.numAttributes());
+            for (int a = 0; a < data.numAttributes(); a++) {
+                avg.setValue(a, (data.instance(i).value(a)
+                		+ data.instance(i + 1).value(a)) / 2);
+            }
+            assertSame(unbounded.closestInst(avg), bounded.closestInst(avg));
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package distance;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import be.ac.ulg.montefiore.run.jahmm.Hmm;
+import be.ac.ulg.montefiore.run.jahmm.ObservationInteger;
+import be.ac.ulg.montefiore.run.jahmm.learn.BaumWelchLearner;
+import weka.core.Instances;
+
+/**
+ * Tests for BaumWelchTrainer
+ *
+ * @author Shalisa Pattarawuttiwong
+ */
+public class BaumWelchTrainerTest {
+
+	private static Instances data;
+
+    /**
+     * Reads in instances from a .arff file
+     * @param filename   name of the .arff file
+     */
+    public static void readInInstances(String filename)  throws Exception{
+        BufferedReader reader = new BufferedReader(new FileReader(filename));
+        data = new Instances(reader);
+    }
+
+    /**
+     * Asserts that two HMMs have exactly the same parameters.
+     */
+    private static void assertSameHmm(Hmm<ObservationInteger> expected,
+    		Hmm<ObservationInteger> actual, int symbols) {
+    	assertEquals(expected.nbStates(), actual.nbStates());
+    	for (int i = 0; i < expected.nbStates(); i++) {
+    		assertEquals(expected.getPi(i), actual.getPi(i), 0.0);
+    		for (int j = 0; j < expected.nbStates(); j++) {
+    			assertEquals(expected.getAij(i, j), actual.getAij(i, j), 0.0);
+    		}
+    		for (int o = 0; o < symbols; o++) {
+    			ObservationInteger obs = new ObservationInteger(o);
+    			assertEquals(expected.getOpdf(i).probability(obs),
+    					actual.getOpdf(i).probability(obs), 0.0);
+    		}
+    	}
+    }
+
+    /**
+     * Testing that the HMMs trained for the instances of the test data,
+     * as both discrete HMM distances initialize them, are those jahmm
+     * trains on the same sequences.
+     */
+    @Test
+    public final void testSameAsJahmm() throws Exception{
+    	readInInstances("./data/testMultiD.arff");
+    	SymbolAlphabet alphabet = new SymbolAlphabet(data);
+    	DiscreteHMMDistance hmmD = new DiscreteHMMDistance();
+    	DiscreteSmythHMMDistance smythD = new DiscreteSmythHMMDistance();
+    	for (int states = 2; states <= 4; states++) {
+    		for (int i = 0; i < data.numInstances(); i++) {
+    			int[] symbols = alphabet.sequence(data.instance(i));
+    			for (Hmm<ObservationInteger> hmm: java.util.Arrays.asList(
+    					hmmD.initialHMM(symbols, states, alphabet),
+    					smythD.initialHMM(symbols, states, alphabet))) {
+    				List<List<ObservationInteger>> sequences =
+    						DiscreteHMMDistance.generateSequences(hmm);
+    				BaumWelchTrainer bwt = new BaumWelchTrainer();
+    				Hmm<ObservationInteger> actual =
+    						bwt.learn(hmm, FlatHmm.toArrays(sequences));
+    				// jahmm fits the distributions of the initial HMM in place
+    				Hmm<ObservationInteger> expected =
+    						new BaumWelchLearner().learn(hmm, sequences);
+    				assertEquals(BaumWelchTrainer.DEFAULT_MAX_ITERATIONS,
+    						bwt.getIterations());
+    				assertSameHmm(expected, actual, alphabet.size());
+    			}
+    		}
+    	}
+    }
+
+    /**
+     * Testing random HMMs and sequences of different lengths, with
+     * fewer iterations than the default.
+     */
+    @Test
+    public final void testRandomHmms() {
+    	Random rand = new Random(21);
+    	for (int trial = 0; trial < 10; trial++) {
+    		int states = 2 + rand.nextInt(4);
+    		int symbols = 2 + rand.nextInt(6);
+    		Hmm<ObservationInteger> hmm = FlatHmmTest.randomHmm(rand, states,
+    				symbols);
+    		Hmm<ObservationInteger> source = FlatHmmTest.randomHmm(rand, states,
+    				symbols);
+    		List<List<ObservationInteger>> sequences =
+    				new java.util.ArrayList<List<ObservationInteger>>();
+    		for (int s = 0; s < 20; s++) {
+    			sequences.add(new be.ac.ulg.montefiore.run.jahmm.toolbox
+    					.MarkovGenerator<ObservationInteger>(source)
+    					.observationSequence(2 + rand.nextInt(40)));
+    		}
+    		BaumWelchLearner bwl = new BaumWelchLearner();
+    		bwl.setNbIterations(4);
+    		BaumWelchTrainer bwt = new BaumWelchTrainer();
+    		bwt.setMaxIterations(4);
+    		Hmm<ObservationInteger> actual =
+    				bwt.learn(hmm, FlatHmm.toArrays(sequences));
+    		assertSameHmm(bwl.learn(hmm, sequences), actual, symbols);
+    	}
+    }
+
+    /**
+     * Testing that training stops once the log likelihood no longer
+     * improves by more than the tolerance.
+     */
+    @Test
+    public final void testTolerance() {
+    	Random rand = new Random(5);
+    	Hmm<ObservationInteger> hmm = FlatHmmTest.randomHmm(rand, 3, 4);
+    	int[][] sequences = FlatHmm.toArrays(
+    			DiscreteHMMDistance.generateSequences(hmm));
+    	BaumWelchTrainer bwt = new BaumWelchTrainer();
+    	bwt.setMaxIterations(50);
+    	// no iteration improves the likelihood by 1e10
+    	bwt.setTolerance(1e10);
+    	Hmm<ObservationInteger> once = bwt.learn(hmm, sequences);
+    	assertEquals(1, bwt.getIterations());
+    	bwt.setMaxIterations(1);
+    	bwt.setTolerance(0);
+    	assertSameHmm(bwt.learn(hmm, sequences), once, 4);
+    	// a small tolerance still stops before 50 iterations
+    	bwt.setMaxIterations(50);
+    	bwt.setTolerance(1e-3);
+    	bwt.learn(hmm, sequences);
+    	assertTrue(bwt.getIterations() < 50);
+    }
+
+    /**
+     * Testing that scaling gives the same HMM up to rounding on short
+     * sequences, and still trains an HMM on sequences too long for the
+     * probabilities to be represented without it.
+     */
+    @Test
+    public final void testScaled() {
+    	Random rand = new Random(8);
+    	Hmm<ObservationInteger> hmm = FlatHmmTest.randomHmm(rand, 4, 5);
+    	Hmm<ObservationInteger> source = FlatHmmTest.randomHmm(rand, 4, 5);
+    	int[][] sequences = FlatHmm.toArrays(
+    			DiscreteHMMDistance.generateSequences(source));
+    	BaumWelchTrainer bwt = new BaumWelchTrainer();
+    	Hmm<ObservationInteger> unscaled = bwt.learn(hmm, sequences);
+    	bwt.setScaled(true);
+    	assertTrue(bwt.getScaled());
+    	Hmm<ObservationInteger> scaled = bwt.learn(hmm, sequences);
+    	for (int i = 0; i < 4; i++) {
+    		assertEquals(unscaled.getPi(i), scaled.getPi(i), 1e-9);
+    		for (int j = 0; j < 4; j++) {
+    			assertEquals(unscaled.getAij(i, j), scaled.getAij(i, j), 1e-9);
+    		}
+    	}
+
+    	// the uniform HMM gives each sequence probability 5^-3000
+    	hmm = new Hmm<ObservationInteger>(4,
+    			new be.ac.ulg.montefiore.run.jahmm.OpdfIntegerFactory(5));
+    	int[][] longSequences = new int[2][3000];
+    	for (int[] seq: longSequences) {
+    		for (int t = 0; t < seq.length; t++) {
+    			seq[t] = rand.nextInt(5);
+    		}
+    	}
+    	scaled = bwt.learn(hmm, longSequences);
+    	bwt.setScaled(false);
+    	unscaled = bwt.learn(hmm, longSequences);
+    	assertTrue(Double.isNaN(unscaled.getPi(1)));
+    	double sum = 0;
+    	for (int i = 0; i < 4; i++) {
+    		assertFalse(Double.isNaN(scaled.getPi(i)));
+    		sum += scaled.getPi(i);
+    	}
+    	assertEquals(1.0, sum, 1e-9);
+    }
+
+    /**
+     * Testing that invalid settings are rejected.
+     */
+    @Test
+    public final void testSettings() {
+    	BaumWelchTrainer bwt = new BaumWelchTrainer();
+    	try {
+    		bwt.setMaxIterations(0);
+    		fail("Expected IllegalArgumentException");
+    	} catch (IllegalArgumentException e) {
+    	}
+    	try {
+    		bwt.setTolerance(-1);
+    		fail("Expected IllegalArgumentException");
+    	} catch (IllegalArgumentException e) {
+    	}
+    	assertEquals(BaumWelchTrainer.DEFAULT_MAX_ITERATIONS,
+    			bwt.getMaxIterations());
+    	assertEquals(0.0, bwt.getTolerance(), 0.0);
+    }
+
+}
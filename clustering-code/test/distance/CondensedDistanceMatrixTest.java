@@ -0,0 +1,87 @@
+package distance;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Tests for CondensedDistanceMatrix
+ * 
+ * @author Shalisa Pattarawuttiwong
+ */
+public class CondensedDistanceMatrixTest {
+
+    /**
+     * Testing that each pair has its own entry and that 
+     * the matrix is symmetric with a zero diagonal.
+     */
+    @Test
+    public final void testSymmetricStorage() throws Exception{
+    	CondensedDistanceMatrix m = new CondensedDistanceMatrix(5);
+    	for (int i = 0; i < 5; i++) {
+    		for (int j = 0; j < i; j++) {
+    			m.set(i, j, 10 * i + j);
+    		}
+    	}
+    	for (int i = 0; i < 5; i++) {
+    		assertEquals(0.0, m.get(i, i), 0.0);
+    		for (int j = 0; j < i; j++) {
+    			assertEquals(10 * i + j, m.get(i, j), 0.0);
+    			assertEquals(10 * i + j, m.get(j, i), 0.0);
+    		}
+    	}
+    	assertEquals(10, CondensedDistanceMatrix.numEntries(5));
+    	assertEquals(9, CondensedDistanceMatrix.index(3, 4));
+    	assertEquals(9, CondensedDistanceMatrix.index(4, 3));
+    }
+
+    /**
+     * Testing that the distance of an instance to itself cannot be set.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public final void testSetDiagonal() throws Exception{
+    	new CondensedDistanceMatrix(3).set(1, 1, 2.0);
+    }
+
+    /**
+     * Testing that the condensed matrix holds the same distances
+     * as the pairwise distance function.
+     */
+    @Test
+    public final void testDistMatrixMatchesDistance() throws Exception{
+    	java.io.BufferedReader reader = new java.io.BufferedReader(
+    			new java.io.FileReader("./data/testMultiD.arff"));
+    	weka.core.Instances data = new weka.core.Instances(reader);
+    	ManhattanDistance manDist = new ManhattanDistance();
+    	DistanceMatrix m = manDist.distMatrix(data);
+    	assertEquals(data.numInstances(), m.size());
+    	for (int i = 0; i < data.numInstances(); i++) {
+    		for (int j = 0; j < i; j++) {
+    			assertEquals(manDist.distance(data.instance(i), data.instance(j)),
+    					m.get(i, j), 0.0);
+    		}
+    	}
+    }
+
+    /**
+     * Testing that extending the matrix of the first instances gives
+     * the matrix of all instances.
+     */
+    @Test
+    public final void testExtendDistMatrix() throws Exception{
+    	java.io.BufferedReader reader = new java.io.BufferedReader(
+    			new java.io.FileReader("./data/testMultiD.arff"));
+    	weka.core.Instances data = new weka.core.Instances(reader);
+    	weka.core.Instances first = new weka.core.Instances(data, 0, 4);
+    	EditDistance editDist = new EditDistance();
+    	DistanceMatrix full = editDist.distMatrix(data);
+    	DistanceMatrix extended = editDist.extendDistMatrix(
+    			editDist.distMatrix(first), data);
+    	assertEquals(data.numInstances(), extended.size());
+    	for (int i = 0; i < data.numInstances(); i++) {
+    		for (int j = 0; j < data.numInstances(); j++) {
+    			assertEquals(full.get(i, j), extended.get(i, j), 0.0);
+    		}
+    	}
+    }
+}
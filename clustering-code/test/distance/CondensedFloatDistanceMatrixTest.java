@@ -0,0 +1,106 @@
+package distance;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.nio.channels.FileChannel.MapMode;
+
+import org.junit.Test;
+
+import weka.core.Instances;
+
+/**
+ * Tests for CondensedFloatDistanceMatrix and single precision
+ * MappedDistanceMatrix
+ * 
+ * @author Shalisa Pattarawuttiwong
+ */
+public class CondensedFloatDistanceMatrixTest {
+
+	private static Instances data;
+
+    /**
+     * Reads in instances from a .arff file
+     * @param filename   name of the .arff file
+     */
+    public static void readInInstances(String filename)  throws Exception{
+        BufferedReader reader = new BufferedReader(new FileReader(filename));
+        data = new Instances(reader);
+    }
+
+    /**
+     * Testing that distances are rounded to floats when they are set,
+     * and that whole numbers are kept exactly.
+     */
+    @Test
+    public final void testRounding() throws Exception{
+    	CondensedFloatDistanceMatrix m = new CondensedFloatDistanceMatrix(4);
+    	m.set(1, 0, 12345.0);
+    	m.set(2, 0, 0.1);
+    	m.set(3, 2, Double.POSITIVE_INFINITY);
+    	assertEquals(0.0, m.get(2, 2), 0.0);
+    	assertEquals(12345.0, m.get(0, 1), 0.0);
+    	assertEquals((double) 0.1f, m.get(2, 0), 0.0);
+    	assertEquals(Double.POSITIVE_INFINITY, m.get(2, 3), 0.0);
+    }
+
+    /**
+     * Testing that the distance of an instance to itself cannot be set.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public final void testSetDiagonal() throws Exception{
+    	new CondensedFloatDistanceMatrix(3).set(1, 1, 2.0);
+    }
+
+    /**
+     * Testing that the single precision matrix stays within float
+     * rounding of the double one, and that the deviation is reported.
+     */
+    @Test
+    public final void testDeviationFromDoubleMatrix() throws Exception{
+    	readInInstances("./data/testMultiD.arff");
+    	EuclideanDistance eucDist = new EuclideanDistance();
+    	DistanceMatrix exact = eucDist.distMatrix(data);
+    	assertEquals(0.0, eucDist.getMaxDeviation(), 0.0);
+    	CondensedFloatDistanceMatrix m = 
+    			new CondensedFloatDistanceMatrix(data.numInstances());
+    	eucDist.distMatrix(data, m);
+    	double maxDev = 0.0;
+    	for (int i = 0; i < data.numInstances(); i++) {
+    		for (int j = 0; j < i; j++) {
+    			assertEquals((float) exact.get(i, j), m.get(i, j), 0.0);
+    			maxDev = Math.max(maxDev, Math.abs(exact.get(i, j) - m.get(i, j)));
+    		}
+    	}
+    	assertEquals(maxDev, eucDist.getMaxDeviation(), 0.0);
+    }
+
+    /**
+     * Testing that a single precision matrix can be mapped from a file
+     * and extended with appended instances.
+     */
+    @Test
+    public final void testMappedSinglePrecision() throws Exception{
+    	readInInstances("./data/testMultiD.arff");
+    	Instances first = new Instances(data, 0, 4);
+    	File f = File.createTempFile("distmatrix", ".bin");
+    	f.deleteOnExit();
+    	ManhattanDistance manDist = new ManhattanDistance();
+    	MappedDistanceMatrix m = MappedDistanceMatrix.create(f, 
+    			first.numInstances(), true);
+    	manDist.distMatrix(first, m);
+    	DistanceMatrix extended = manDist.extendDistMatrix(m, data);
+    	((MappedDistanceMatrix) extended).close();
+    	MappedDistanceMatrix read = MappedDistanceMatrix.open(f, MapMode.READ_ONLY);
+    	assertTrue(read.isSinglePrecision());
+    	assertEquals(data.numInstances(), read.size());
+    	for (int i = 0; i < data.numInstances(); i++) {
+    		for (int j = 0; j < i; j++) {
+    			assertEquals((float) manDist.distance(data.instance(i), 
+    					data.instance(j)), read.get(i, j), 0.0);
+    		}
+    	}
+    }
+}
@@ -2,8 +2,11 @@ package distance;
 
 import java.io.*;
 
+import static org.junit.Assert.*;
+
 import org.junit.Test;
 
+import weka.core.Instance;
 import weka.core.Instances;
 
 /**
@@ -48,4 +51,270 @@ public class DiscreteHMMDistanceTest {
         double dist = distFn.distance(data.instance(0), data.instance(9));
         System.out.println(dist);
     }
-}
\ No newline at end of file
+
+    /**
+     * Testing that a distance matrix trains one HMM per instance, and
+     * that distance() reuses them for instances of the data
+     * (the sampled distances themselves differ between calls).
+     */
+    @Test
+    public void testModelCache() throws Exception {
+        readInInstances("./data/testMultiD.arff");
+        DiscreteHMMDistance hmmD = new DiscreteHMMDistance();
+        hmmD.setNumStates(3);
+        DistanceMatrix m = hmmD.distMatrix(data);
+        assertEquals(data.numInstances(), hmmD.numCachedModels());
+        for (int i = 0; i < data.numInstances(); i++) {
+            // the same trained HMM on both sides
+            assertEquals(0.0, 
+            		hmmD.distance(data.instance(i), data.instance(i)), 0.0);
+            for (int j = 0; j < i; j++) {
+                assertFalse(Double.isNaN(m.get(i, j)));
+            }
+        }
+        // no HMMs are trained for other data
+        hmmD.distance(data.instance(0), new Instances(data).instance(1));
+        assertEquals(data.numInstances(), hmmD.numCachedModels());
+    }
+
+    /**
+     * Testing that with sequences generated once per HMM, the
+     * distances between instances of the data are repeatable, and the
+     * rows of the distance matrix equal the distances one at a time.
+     */
+    @Test
+    public void testSampleOnce() throws Exception {
+        readInInstances("./data/testMultiD.arff");
+        DiscreteHMMDistance hmmD = new DiscreteHMMDistance();
+        hmmD.setNumStates(3);
+        hmmD.setSampleOnce(true);
+        assertEquals("states=3,sample_once", hmmD.getParameters());
+        DistanceMatrix m = hmmD.distMatrix(data);
+        for (int i = 0; i < data.numInstances(); i++) {
+            for (int j = 0; j < data.numInstances(); j++) {
+                assertEquals(m.get(i, j), 
+                		hmmD.distance(data.instance(i), data.instance(j)), 0.0);
+            }
+        }
+    }
+
+    /**
+     * Testing that HMMs trained on the observed symbols, with bootstrap
+     * resamples, give a distance matrix, and that the settings are
+     * reported and validated.
+     */
+    @Test
+    public void testTrainOnObserved() throws Exception {
+        readInInstances("./data/testMultiD.arff");
+        DiscreteHMMDistance hmmD = new DiscreteHMMDistance();
+        hmmD.setNumStates(3);
+        hmmD.setTrainOnObserved(true);
+        hmmD.setBootstrapSamples(2);
+        assertEquals("states=3,observed,bootstrap=2", hmmD.getParameters());
+        DistanceMatrix m = hmmD.distMatrix(data);
+        for (int i = 0; i < data.numInstances(); i++) {
+            assertEquals(0.0, m.get(i, i), 0.0);
+            for (int j = 0; j < data.numInstances(); j++) {
+                assertFalse(Double.isNaN(m.get(i, j)));
+            }
+        }
+        try {
+            hmmD.setBootstrapSamples(-1);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    /**
+     * Testing that the Markov approximation of the distances is
+     * deterministic, so the distance matrix is that of distance().
+     */
+    @Test
+    public void testMarkovApproximation() throws Exception {
+        readInInstances("./data/testMultiD.arff");
+        DiscreteHMMDistance hmmD = new DiscreteHMMDistance();
+        hmmD.setNumStates(3);
+        hmmD.setSampleOnce(true);
+        hmmD.setMarkovApproximation(true);
+        assertEquals("states=3,markov", hmmD.getParameters());
+        DistanceMatrix m = hmmD.distMatrix(data);
+        for (int i = 0; i < data.numInstances(); i++) {
+            assertEquals(0.0, m.get(i, i), 0.0);
+            for (int j = 0; j < data.numInstances(); j++) {
+                assertTrue(m.get(i, j) >= 0);
+                assertEquals(m.get(i, j), 
+                		hmmD.distance(data.instance(i), data.instance(j)), 0.0);
+            }
+        }
+    }
+
+    /**
+     * Testing that the Kullback-Leibler estimates sample NB_SEQUENCES
+     * sequences by default, and stop after minSequences sequences with
+     * a tolerance no estimate can miss, with and without sampleOnce.
+     */
+    @Test
+    public void testAdaptiveSampling() throws Exception {
+        readInInstances("./data/testMultiD.arff");
+        int n = data.numInstances();
+        DiscreteHMMDistance hmmD = new DiscreteHMMDistance();
+        hmmD.setNumStates(3);
+        hmmD.distMatrix(data);
+        long[] counts = hmmD.getSampleCounts();
+        assertEquals(n * (n - 1), counts[10]);
+
+        hmmD.setKLTolerance(1e9);
+        hmmD.setMinSequences(3);
+        hmmD.setMaxSequences(20);
+        assertEquals("states=3,kl_tolerance=1.0E9,sequences=3-20", 
+        		hmmD.getParameters());
+        for (boolean sampleOnce: new boolean[] {false, true}) {
+            hmmD.setSampleOnce(sampleOnce);
+            hmmD.resetSampleCounts();
+            DistanceMatrix m = hmmD.distMatrix(data);
+            counts = hmmD.getSampleCounts();
+            assertEquals(21, counts.length);
+            assertEquals(n * (n - 1), counts[3]);
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++) {
+                    assertFalse(Double.isNaN(m.get(i, j)));
+                }
+            }
+        }
+        try {
+            hmmD.setMinSequences(1);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            hmmD.setKLTolerance(-1);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+        }
+        // set in either order, but checked before any distance
+        hmmD.setMinSequences(30);
+        try {
+            hmmD.distMatrix(data);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            hmmD.distance(data.instance(0), data.instance(1));
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+        }
+        hmmD.setMaxSequences(40);
+        hmmD.distance(data.instance(0), data.instance(1));
+    }
+
+    /**
+     * Testing that the Baum-Welch training settings are reported only
+     * when they differ from jahmm's, and that they are validated.
+     */
+    @Test
+    public void testTrainingConvergence() throws Exception {
+        readInInstances("./data/testMultiD.arff");
+        DiscreteHMMDistance hmmD = new DiscreteHMMDistance();
+        hmmD.setNumStates(3);
+        hmmD.setSampleOnce(true);
+        hmmD.setMaxTrainingIterations(BaumWelchTrainer.DEFAULT_MAX_ITERATIONS);
+        hmmD.setTrainingTolerance(0);
+        assertEquals("states=3,sample_once", hmmD.getParameters());
+        hmmD.setMaxTrainingIterations(20);
+        hmmD.setTrainingTolerance(1e-3);
+        assertEquals("states=3,sample_once,iterations=20,"
+        		+ "training_tolerance=0.001", hmmD.getParameters());
+        DistanceMatrix m = hmmD.distMatrix(data);
+        for (int i = 0; i < data.numInstances(); i++) {
+            for (int j = 0; j < data.numInstances(); j++) {
+                assertFalse(Double.isNaN(m.get(i, j)));
+            }
+        }
+        try {
+            hmmD.setMaxTrainingIterations(0);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            hmmD.setTrainingTolerance(-1);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    /**
+     * Testing that a matrix of Markov approximations extended with
+     * appended instances, in memory or in a cache, equals the matrix of
+     * all the data: the symbols of the first instances are numbered
+     * again over all of it. HMMs trained on the observed symbols make
+     * the distances deterministic.
+     */
+    @Test
+    public void testExtendedMatrix() throws Exception {
+        readInInstances("./data/testMultiD.arff");
+        Instances first = new Instances(data, 0, 3);
+        assertTrue(new SymbolAlphabet(first).size() 
+        		< new SymbolAlphabet(data).size());
+        DiscreteHMMDistance hmmD = new DiscreteHMMDistance();
+        hmmD.setNumStates(3);
+        hmmD.setMarkovApproximation(true);
+        hmmD.setTrainOnObserved(true);
+        assertTrue(hmmD.dependsOnData());
+        DistanceMatrix extended = hmmD.extendDistMatrix(
+        		hmmD.distMatrix(first), data);
+
+        File dir = File.createTempFile("cache", "");
+        dir.delete();
+        dir.deleteOnExit();
+        DistanceMatrixCache cache = new DistanceMatrixCache(dir);
+        cache.distMatrix(first, hmmD);
+        cache.file(first, hmmD).deleteOnExit();
+        DistanceMatrix cached = cache.distMatrix(data, hmmD);
+        cache.file(data, hmmD).deleteOnExit();
+
+        DiscreteHMMDistance fresh = new DiscreteHMMDistance();
+        fresh.setNumStates(3);
+        fresh.setMarkovApproximation(true);
+        fresh.setTrainOnObserved(true);
+        DistanceMatrix full = fresh.distMatrix(data);
+        for (int i = 0; i < data.numInstances(); i++) {
+            for (int j = 0; j < i; j++) {
+                assertEquals(full.get(i, j), extended.get(i, j), 0.0);
+                assertEquals(full.get(i, j), cached.get(i, j), 0.0);
+            }
+        }
+    }
+
+    /**
+     * Testing that queries outside the data reuse the HMMs trained for
+     * the data: a copy of an instance gets its row of the distance
+     * matrix, and a query with symbols the data does not have is mapped
+     * to the nearest ones, without training more HMMs of the data.
+     */
+    @Test
+    public void testDistancesTo() throws Exception {
+        readInInstances("./data/testMultiD.arff");
+        int n = data.numInstances();
+        DiscreteHMMDistance hmmD = new DiscreteHMMDistance();
+        hmmD.setNumStates(3);
+        hmmD.setMarkovApproximation(true);
+        hmmD.setTrainOnObserved(true);
+        DistanceMatrix m = hmmD.distMatrix(data);
+        double[] out = new double[n];
+        hmmD.distancesTo(new Instance(data.instance(4)), data, out);
+        for (int i = 0; i < n; i++) {
+            assertEquals(m.get(4, i), out[i], 0.0);
+        }
+        Instance avg = new Instance(data.numAttributes());
+        for (int a = 0; a < data.numAttributes(); a++) {
+            avg.setValue(a, (data.instance(0).value(a) 
+            		+ data.instance(5).value(a)) / 2);
+        }
+        hmmD.distancesTo(avg, data, out);
+        for (int i = 0; i < n; i++) {
+            assertFalse(Double.isNaN(out[i]));
+            assertTrue(out[i] >= 0);
+        }
+        assertEquals(n, hmmD.numCachedModels());
+    }
+}
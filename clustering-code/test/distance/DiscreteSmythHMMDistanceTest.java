@@ -3,6 +3,8 @@ package distance;
 import java.io.BufferedReader;
 import java.io.FileReader;
 
+import static org.junit.Assert.*;
+
 import org.junit.Test;
 
 import weka.core.Instances;
@@ -44,4 +46,48 @@ public class DiscreteSmythHMMDistanceTest {
         System.out.println(dist);
     }
 
+    /**
+     * Testing that a distance matrix trains one HMM per instance, and
+     * that distance() reuses them for instances of the data
+     * (the sampled distances themselves differ between calls).
+     */
+    @Test
+    public void testModelCache() throws Exception {
+        readInInstances("./data/testMultiD.arff");
+        DiscreteSmythHMMDistance hmmD = new DiscreteSmythHMMDistance();
+        hmmD.setNumStates(3);
+        DistanceMatrix m = hmmD.distMatrix(data);
+        assertEquals(data.numInstances(), hmmD.numCachedModels());
+        for (int i = 0; i < data.numInstances(); i++) {
+            // the same trained HMM on both sides
+            assertEquals(0.0, 
+            		hmmD.distance(data.instance(i), data.instance(i)), 0.0);
+            for (int j = 0; j < i; j++) {
+                assertFalse(Double.isNaN(m.get(i, j)));
+            }
+        }
+        // no HMMs are trained for other data
+        hmmD.distance(data.instance(0), new Instances(data).instance(1));
+        assertEquals(data.numInstances(), hmmD.numCachedModels());
+    }
+
+    /**
+     * Testing that with sequences generated once per HMM, the
+     * distances between instances of the data are repeatable.
+     */
+    @Test
+    public void testSampleOnce() throws Exception {
+        readInInstances("./data/testMultiD.arff");
+        DiscreteSmythHMMDistance hmmD = new DiscreteSmythHMMDistance();
+        hmmD.setNumStates(3);
+        hmmD.setSampleOnce(true);
+        assertEquals("states=3,sample_once", hmmD.getParameters());
+        DistanceMatrix m = hmmD.distMatrix(data);
+        for (int i = 0; i < data.numInstances(); i++) {
+            for (int j = 0; j < data.numInstances(); j++) {
+                assertEquals(m.get(i, j), 
+                		hmmD.distance(data.instance(i), data.instance(j)), 0.0);
+            }
+        }
+    }
 }
@@ -0,0 +1,130 @@
+package distance;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+
+import org.junit.Test;
+
+import weka.core.Instances;
+
+/**
+ * Tests for DistanceMatrixCache
+ * 
+ * @author Shalisa Pattarawuttiwong
+ */
+public class DistanceMatrixCacheTest {
+
+	private static Instances data;
+
+    /**
+     * Reads in instances from a .arff file
+     * @param filename   name of the .arff file
+     */
+    public static void readInInstances(String filename)  throws Exception{
+        BufferedReader reader = new BufferedReader(new FileReader(filename));
+        data = new Instances(reader);
+    }
+
+    /**
+     * Creates an empty temporary cache directory
+     */
+    private static File tempDir() throws Exception {
+    	File dir = File.createTempFile("cache", "");
+    	dir.delete();
+    	dir.deleteOnExit();
+    	return dir;
+    }
+
+    /**
+     * Testing that keys depend on the distance function and its parameters.
+     */
+    @Test
+    public final void testKeys() throws Exception{
+    	readInInstances("./data/testMultiD.arff");
+    	DiscreteHMMDistance hmm3 = new DiscreteHMMDistance();
+    	hmm3.setNumStates(3);
+    	DiscreteHMMDistance hmm4 = new DiscreteHMMDistance();
+    	hmm4.setNumStates(4);
+    	assertEquals(DistanceMatrixCache.key(data, new EditDistance()), 
+    			DistanceMatrixCache.key(data, new EditDistance()));
+    	assertNotEquals(DistanceMatrixCache.key(data, new EditDistance()), 
+    			DistanceMatrixCache.key(data, new ManhattanDistance()));
+    	assertNotEquals(DistanceMatrixCache.key(data, hmm3), 
+    			DistanceMatrixCache.key(data, hmm4));
+    }
+
+    /**
+     * Testing that a saved matrix is read back, and that changes to the 
+     * returned matrix are not saved.
+     */
+    @Test
+    public final void testSavedMatrix() throws Exception{
+    	readInInstances("./data/testMultiD.arff");
+    	File dir = tempDir();
+    	DistanceMatrixCache cache = new DistanceMatrixCache(dir);
+    	EditDistance editDist = new EditDistance();
+    	assertFalse(cache.contains(data, editDist));
+    	DistanceMatrix first = cache.distMatrix(data, editDist);
+    	assertTrue(cache.contains(data, editDist));
+    	double d = first.get(3, 1);
+    	first.set(3, 1, -1.0);
+    	
+    	DistanceMatrix second = new DistanceMatrixCache(dir).distMatrix(data, editDist);
+    	assertEquals(d, second.get(3, 1), 0.0);
+    	assertEquals(editDist.distance(data.instance(5), data.instance(2)),
+    			second.get(5, 2), 0.0);
+    	cache.file(data, editDist).deleteOnExit();
+    }
+
+    /**
+     * Testing that the saved matrix of the first instances is extended
+     * when instances are appended to the data.
+     */
+    @Test
+    public final void testAppendedInstances() throws Exception{
+    	readInInstances("./data/testMultiD.arff");
+    	Instances first = new Instances(data, 0, 5);
+    	DistanceMatrixCache cache = new DistanceMatrixCache(tempDir());
+    	EditDistance editDist = new EditDistance();
+    	cache.distMatrix(first, editDist);
+    	cache.file(first, editDist).deleteOnExit();
+    	
+    	DistanceMatrix extended = cache.distMatrix(data, editDist);
+    	cache.file(data, editDist).deleteOnExit();
+    	DistanceMatrix full = editDist.distMatrix(data);
+    	for (int i = 0; i < data.numInstances(); i++) {
+    		for (int j = 0; j < data.numInstances(); j++) {
+    			assertEquals(full.get(i, j), extended.get(i, j), 0.0);
+    		}
+    	}
+    }
+
+    /**
+     * Testing that matrices saved in single precision are kept apart
+     * from those in double precision, and hold the rounded distances.
+     */
+    @Test
+    public final void testSinglePrecision() throws Exception{
+    	readInInstances("./data/testMultiD.arff");
+    	File dir = tempDir();
+    	EuclideanDistance eucDist = new EuclideanDistance();
+    	assertEquals(DistanceMatrixCache.key(data, eucDist), 
+    			DistanceMatrixCache.key(data, eucDist, false));
+    	assertNotEquals(DistanceMatrixCache.key(data, eucDist, false), 
+    			DistanceMatrixCache.key(data, eucDist, true));
+    	DistanceMatrixCache floats = new DistanceMatrixCache(dir, true);
+    	DistanceMatrix m = floats.distMatrix(data, eucDist);
+    	floats.file(data, eucDist).deleteOnExit();
+    	assertTrue(((MappedDistanceMatrix) m).isSinglePrecision());
+    	assertFalse(new DistanceMatrixCache(dir).contains(data, eucDist));
+    	for (int i = 0; i < data.numInstances(); i++) {
+    		for (int j = 0; j < i; j++) {
+    			assertEquals((float) eucDist.distance(data.instance(i), 
+    					data.instance(j)), m.get(i, j), 0.0);
+    		}
+    	}
+    }
+}
@@ -5,6 +5,7 @@ import static org.junit.Assert.*;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.util.Arrays;
+import java.util.Random;
 
 import org.junit.Ignore;
 import org.junit.Test;
@@ -105,6 +106,23 @@ public class EditDistanceTest {
         assertEquals(9.3, result, 0.001);
     }
     
+    /**
+     * Testing that distances are unaffected by the buffers reused from
+     * calls on longer or shorter instances.
+     */
+    @Test
+    public final void testReusedBuffers() throws Exception{
+        EditDistance editDist = new EditDistance();
+        createInstances(new double[]{10.0, 8.5, 5.0, 0.0, -1.0, -1.0},
+        		new double[]{15.0, 4.2, 40.0, 0.0, -1.0, -1.0});
+        assertEquals(44.3, editDist.distance(instance1, instance2), 0.001);
+        createInstances(new double[]{10.0, 8.5}, new double[]{15.0, 4.2});
+        assertEquals(9.3, editDist.distance(instance1, instance2), 0.001);
+        createInstances(new double[]{10.0, 8.5, 5.0, 0.0, -1.0, -1.0},
+        		new double[]{15.0, 4.2, 40.0, 0.0, -1.0, -1.0});
+        assertEquals(44.3, editDist.distance(instance1, instance2), 0.001);
+    }
+    
     /**
      * Testing the calculate matrix function.
      */
@@ -127,10 +145,307 @@ public class EditDistanceTest {
     	readInInstances("./data/testMultiD.arff");
     	double[][] expResult = {{0, 21},{21, 0}};
     	EditDistance editDist = new EditDistance();
-    	double[][] calc = editDist.distMatrix(data);
-    	for (double[] c: calc) {
-    		System.out.println(Arrays.toString(c));
+    	DistanceMatrix calc = editDist.distMatrix(data);
+    	double[][] full = new double[calc.size()][calc.size()];
+    	for (int i = 0; i < calc.size(); i++) {
+    		for (int j = 0; j < calc.size(); j++) {
+    			full[i][j] = calc.get(i, j);
+    		}
+    		System.out.println(Arrays.toString(full[i]));
+    	}
+    	assertArrayEquals(expResult, full);
+    }
+    
+    /**
+     * Testing that the distance matrix calculated in parallel is
+     * identical to the one calculated serially.
+     */
+    @Test
+    public final void testParallelDistMatrix() throws Exception{
+    	readInInstances("./data/seriesdata.arff");
+    	EditDistance editDist = new EditDistance();
+    	DistanceMatrix serial = editDist.distMatrix(data);
+    	editDist.setNumThreads(4);
+    	DistanceMatrix parallel = editDist.distMatrix(data);
+    	for (int i = 0; i < serial.size(); i++) {
+    		for (int j = 0; j < serial.size(); j++) {
+    			assertEquals(serial.get(i, j), parallel.get(i, j), 0.0);
+    		}
+    	}
+    }
+    
+    /**
+     * Testing that the distances from one instance to all the others
+     * are those of the pairwise distance function, with the query as
+     * the first instance.
+     */
+    @Test
+    public final void testDistancesTo() throws Exception{
+    	readInInstances("./data/seriesdata.arff");
+    	EditDistance editDist = new EditDistance();
+    	double[] dists = new double[data.numInstances()];
+    	for (int q = 0; q < data.numInstances(); q += 25) {
+    		editDist.distancesTo(data.instance(q), data, dists);
+    		for (int i = 0; i < data.numInstances(); i++) {
+    			assertEquals(editDist.distance(data.instance(q), data.instance(i)),
+    					dists[i], 0.0);
+    		}
+    	}
+    }
+    
+    /**
+     * Testing that a band as wide as the series gives the full edit
+     * distance, and that a narrower one never gives a smaller distance.
+     */
+    @Test
+    public final void testBandWidth() throws Exception{
+    	readInInstances("./data/seriesdata.arff");
+    	EditDistance full = new EditDistance();
+    	EditDistance wide = new EditDistance();
+    	wide.setBandWidth(data.numAttributes() / 2);
+    	EditDistance narrow = new EditDistance();
+    	narrow.setBandWidth(2);
+    	for (int i = 0; i < data.numInstances(); i += 11) {
+    		for (int j = 0; j < data.numInstances(); j += 13) {
+    			double d = full.distance(data.instance(i), data.instance(j));
+    			assertEquals(d, wide.distance(data.instance(i), data.instance(j)), 0.0);
+    			assertTrue(narrow.distance(data.instance(i), data.instance(j)) >= d);
+    		}
+    	}
+    }
+    
+    /**
+     * Testing the banded edit distance on a pair that is cheaper to
+     * align with a shift of one window than window by window.
+     */
+    @Test
+    public final void testBandedDistance() throws Exception{
+        double [] attrs1 = {5.0, 5.0, 1.0, 1.0, 9.0, 9.0, 1.0, 1.0};
+        double [] attrs2 = {1.0, 1.0, 9.0, 9.0, 1.0, 1.0, 5.0, 5.0};
+        createInstances(attrs1, attrs2);
+        EditDistance editDist = new EditDistance();
+        assertEquals(20.0, editDist.distance(instance1, instance2), 0.001);
+        editDist.setBandWidth(1);
+        assertEquals(20.0, editDist.distance(instance1, instance2), 0.001);
+        editDist.setBandWidth(0);
+        assertEquals(48.0, editDist.distance(instance1, instance2), 0.001);
+        assertEquals("band=0", editDist.getParameters());
+    }
+    
+    /**
+     * Testing that the bounded edit distance is the distance when it
+     * is at most the cutoff, and infinite otherwise.
+     */
+    @Test
+    public final void testCutoff() throws Exception{
+    	readInInstances("./data/seriesdata.arff");
+    	EditDistance editDist = new EditDistance();
+    	PrimitiveInstances store = new PrimitiveInstances(data);
+    	for (int i = 0; i < data.numInstances(); i += 11) {
+    		for (int j = 0; j < data.numInstances(); j += 13) {
+    			double d = editDist.distance(data.instance(i), data.instance(j));
+    			assertEquals(d, editDist.distance(data.instance(i), 
+    					data.instance(j), d), 0.0);
+    			assertEquals(d, editDist.distance(store, i, store, j, d + 1), 0.0);
+    			if (d > 0) {
+    				assertEquals(Double.POSITIVE_INFINITY, editDist.distance(
+    						store, i, store, j, d / 2), 0.0);
+    			}
+    		}
+    	}
+    	// y in a destroy state where x is not: negative weights
+        createInstances(new double[]{10.0, 8.5, -1.0, -1.0, -1.0, -1.0},
+        		new double[]{15.0, 4.2, 3.0, 0.8, -1.0, -1.0});
+        double d = editDist.distance(instance2, instance1);
+        assertEquals(d, editDist.distance(instance2, instance1, d), 0.0);
+    }
+
+    /**
+     * Testing that the lower bounds never exceed the distance, and that
+     * skipping pairs by them does not change the distances within the
+     * cutoffs.
+     */
+    @Test
+    public final void testLowerBounds() throws Exception{
+    	readInInstances("./data/seriesdata.arff");
+    	EditDistance editDist = new EditDistance();
+    	EditDistance noBounds = new EditDistance();
+    	noBounds.setLowerBounds();
+    	PrimitiveInstances store = new PrimitiveInstances(data);
+    	LowerBound volume = new EditDistance.VolumeBound();
+    	LowerBound inOut = new EditDistance.InOutBound();
+    	int bounded = 0;
+    	for (int i = 0; i < data.numInstances(); i += 7) {
+    		for (int j = 0; j < data.numInstances(); j += 5) {
+    			double d = editDist.distance(store, i, store, j);
+    			double v = volume.lowerBound(store, i, store, j);
+    			double b = inOut.lowerBound(store, i, store, j);
+    			assertTrue(v + " > " + d, v <= d);
+    			assertTrue(v <= b + 1e-9);
+    			assertTrue(b + " > " + d, b <= d);
+    			if (b > 0) {
+    				bounded++;
+    			}
+    			for (double cutoff: new double[]{0, d / 2, d, 2 * d}) {
+    				assertEquals(noBounds.distance(store, i, store, j, cutoff),
+    						editDist.distance(store, i, store, j, cutoff), 0.0);
+    			}
+    		}
+    	}
+    	assertTrue(bounded > 0);
+    	
+    	// the DP table is not calculated, so it is not abandoned either
+    	createInstances(new double[]{100.0, 100.0, 1.0, 1.0},
+    			new double[]{1.0, 1.0, 1.0, 1.0});
+    	store = new PrimitiveInstances(new Instance[]{instance1, instance2});
+    	assertEquals(198.0, inOut.lowerBound(store, 0, store, 1), 1e-6);
+    	assertEquals(198.0, editDist.distance(store, 0, store, 1), 0.0);
+    	assertEquals(Double.POSITIVE_INFINITY, 
+    			editDist.distance(store, 0, store, 1, 197.0), 0.0);
+    	
+    	// no bound with destroy states between the windows of x
+    	createInstances(new double[]{100.0, 100.0, -1.0, -1.0, 1.0, 1.0},
+    			new double[]{1.0, 1.0, 1.0, 1.0, 1.0, 1.0});
+    	store = new PrimitiveInstances(new Instance[]{instance1, instance2});
+    	assertEquals(Double.NEGATIVE_INFINITY, 
+    			volume.lowerBound(store, 0, store, 1), 0.0);
+    	assertEquals(Double.NEGATIVE_INFINITY, 
+    			inOut.lowerBound(store, 0, store, 1), 0.0);
+    }
+
+    /**
+     * Testing that idle windows, which cost nothing to insert or delete,
+     * do not change the distance, and that they are still aligned 
+     * within the band.
+     */
+    @Test
+    public final void testIdleWindows() throws Exception{
+    	EditDistance editDist = new EditDistance();
+    	createInstances(new double[]{0.0, 0.0, 3.0, 1.0, 0.0, 0.0, 2.5, 2.0},
+    			new double[]{2.5, 2.0, 0.0, 0.0, 0.0, 0.0, 3.0, 1.0});
+    	double idle = editDist.distance(instance1, instance2);
+    	createInstances(new double[]{3.0, 1.0, 2.5, 2.0},
+    			new double[]{2.5, 2.0, 3.0, 1.0});
+    	assertEquals(editDist.distance(instance1, instance2), idle, 0.0);
+    	assertEquals(3.0, idle, 0.0);
+    	
+    	// 3.0, 1.0 is too far from its match to be aligned within the band
+    	createInstances(new double[]{3.0, 1.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0},
+    			new double[]{0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 3.0, 1.0});
+    	assertEquals(0.0, editDist.distance(instance1, instance2), 0.0);
+    	editDist.setBandWidth(1);
+    	assertEquals(8.0, editDist.distance(instance1, instance2), 0.0);
+    }
+
+    /**
+     * Testing that sharing the DP columns of common first windows
+     * gives the same distances, to the last bit.
+     */
+    @Test
+    public final void testSharedPrefixes() throws Exception{
+    	readInInstances("./data/seriesdata.arff");
+    	// circuits with common first windows, some with idle windows
+    	Instances prefixed = new Instances(data, 0);
+    	for (int i = 0; i < 40; i++) {
+    		Instance inst = (Instance) data.instance(i).copy();
+    		for (int a = 0; a < 20; a++) {
+    			inst.setValue(a, (i % 3 == 0) ? 0.0 : a % 5);
+    		}
+    		prefixed.add(inst);
+    		prefixed.add(data.instance(i));
+    	}
+    	EditDistance editDist = new EditDistance();
+    	EditDistance shared = new EditDistance();
+    	shared.setSharedPrefixes(true);
+    	shared.setNumThreads(3);
+    	DistanceMatrix expected = editDist.distMatrix(prefixed);
+    	DistanceMatrix actual = shared.distMatrix(prefixed);
+    	double[] dists = new double[prefixed.numInstances()];
+    	for (int i = 0; i < prefixed.numInstances(); i++) {
+    		for (int j = 0; j < prefixed.numInstances(); j++) {
+    			assertEquals(expected.get(i, j), actual.get(i, j), 0.0);
+    		}
+    		shared.distancesTo(prefixed.instance(i), prefixed, dists);
+    		for (int j = 0; j < prefixed.numInstances(); j++) {
+    			assertEquals(editDist.distance(prefixed.instance(i), 
+    					prefixed.instance(j)), dists[j], 0.0);
+    		}
+    	}
+    }
+
+    /**
+     * Testing that long instances, whose DP tables are calculated by
+     * anti-diagonals, are at the same distances as calculated by rows,
+     * as when abandoning the table is possible.
+     */
+    @Test
+    public final void testWavefront() throws Exception{
+    	Random rand = new Random(3);
+    	int windows = EditDistance.WAVEFRONT_WINDOWS + 37;
+    	Instance[] insts = new Instance[4];
+    	for (int i = 0; i < insts.length; i++) {
+    		insts[i] = new Instance(2 * windows);
+    		for (int a = 0; a < 2 * windows; a++) {
+    			insts[i].setValue(a, rand.nextInt(5) * ((i % 2 == 0) ? 1.0 : 0.45));
+    		}
+    	}
+    	// negative weights where x is not in a destroy state
+    	for (int a = 2 * windows - 10; a < 2 * windows; a++) {
+    		insts[3].setValue(a, -1.0);
+    	}
+    	EditDistance editDist = new EditDistance();
+    	PrimitiveInstances store = new PrimitiveInstances(insts);
+    	for (int i = 0; i < insts.length; i++) {
+    		for (int j = 0; j < insts.length; j++) {
+    			double d = editDist.distance(store, i, store, j);
+    			assertEquals(d, editDist.distance(store, i, store, j, d), 0.0);
+    			assertEquals(d, editDist.distance(insts[i], insts[j]), 0.0);
+    		}
+    	}
+    }
+
+    /**
+     * Testing that the windows read from the runs of PrimitiveInstances
+     * give the distances of the windows read value by value, with runs
+     * of idle windows, destroy states between windows and trailing
+     * destroy states.
+     */
+    @Test
+    public final void testRunWindows() throws Exception{
+    	Random rand = new Random(5);
+    	int windows = 30;
+    	Instance[] insts = new Instance[8];
+    	for (int i = 0; i < insts.length; i++) {
+    		insts[i] = new Instance(2 * windows);
+    		int a = 0;
+    		while (a < 2 * windows) {
+    			// a run of up to 6 equal windows, idle one time in two
+    			double in = rand.nextBoolean() ? 0.0 : rand.nextInt(4);
+    			double out = (in == 0.0) ? 0.0 : rand.nextInt(4);
+    			for (int k = rand.nextInt(6); k >= 0 && a < 2 * windows; k--) {
+    				insts[i].setValue(a++, in);
+    				insts[i].setValue(a++, out);
+    			}
+    		}
+    		// trailing destroy states of different lengths
+    		for (a = 2 * (windows - 3 * (i % 4)); a < 2 * windows; a++) {
+    			insts[i].setValue(a, -1.0);
+    		}
+    	}
+    	// a destroy state between windows
+    	insts[5].setValue(6, -1.0);
+    	insts[5].setValue(7, -1.0);
+    	EditDistance editDist = new EditDistance();
+    	PrimitiveInstances store = new PrimitiveInstances(insts);
+    	double[] dists = new double[insts.length];
+    	for (int i = 0; i < insts.length; i++) {
+    		editDist.distancesTo(store, i, store, dists);
+    		for (int j = 0; j < insts.length; j++) {
+    			double d = editDist.distance(insts[i], insts[j]);
+    			assertEquals(d, editDist.distance(store, i, store, j), 0.0);
+    			assertEquals(d, editDist.distance(store, i, store, j, d), 0.0);
+    			assertEquals(d, dists[j], 0.0);
+    		}
     	}
-    	assertArrayEquals(expResult, calc);
     }
 }
@@ -156,7 +156,55 @@ public class EuclideanDistanceTest {
     	readInInstances("./data/testThreeTwoCloser.arff");
     	double[][] expResult = {{0.0, 5.0, 7.0},{5.0, 0.0, 2.0},{7.0, 2.0, 0.0}};
     	EuclideanDistance eucDist = new EuclideanDistance();
-    	double[][] calc = eucDist.distMatrix(data);
-    	assertArrayEquals(expResult, calc);
+    	DistanceMatrix calc = eucDist.distMatrix(data);
+    	assertEquals(expResult.length, calc.size());
+    	for (int i = 0; i < expResult.length; i++) {
+    		for (int j = 0; j < expResult.length; j++) {
+    			assertEquals(expResult[i][j], calc.get(i, j), 0.0);
+    		}
+    	}
+    }
+    
+    /**
+     * Testing that the distances from one instance to all the others
+     * are those of the pairwise distance function.
+     */
+    @Test
+    public final void testDistancesTo() throws Exception{
+    	readInInstances("./data/testMultiD.arff");
+    	EuclideanDistance eucDist = new EuclideanDistance();
+    	double[] dists = new double[data.numInstances()];
+    	for (int q = 0; q < data.numInstances(); q++) {
+    		eucDist.distancesTo(data.instance(q), data, dists);
+    		for (int i = 0; i < data.numInstances(); i++) {
+    			assertEquals(eucDist.distance(data.instance(q), data.instance(i)),
+    					dists[i], 0.0);
+    		}
+    	}
+    }
+
+    /**
+     * Testing that the euclidean distance over runs of equal windows
+     * is the distance over the values, but for rounding, and that the
+     * distance between two Instances is over their values.
+     */
+    @Test
+    public final void testRunLength() throws Exception{
+    	readInInstances("./data/seriesdata.arff");
+    	EuclideanDistance eucDist = new EuclideanDistance();
+    	EuclideanDistance runs = new EuclideanDistance();
+    	runs.setRunLength(true);
+    	assertEquals("runs", runs.getParameters());
+    	double[] dists = new double[data.numInstances()];
+    	for (int q = 0; q < data.numInstances(); q += 9) {
+    		runs.distancesTo(data.instance(q), data, dists);
+    		for (int i = 0; i < data.numInstances(); i++) {
+    			double d = eucDist.distance(data.instance(q), data.instance(i));
+    			assertEquals(d, dists[i], 1e-12 * d);
+    			// a single pair is calculated over the values
+    			assertEquals(d, runs.distance(data.instance(q), 
+    					data.instance(i)), 0.0);
+    		}
+    	}
     }
 }
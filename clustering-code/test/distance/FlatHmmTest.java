@@ -0,0 +1,107 @@
+package distance;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import be.ac.ulg.montefiore.run.jahmm.Hmm;
+import be.ac.ulg.montefiore.run.jahmm.ObservationInteger;
+import be.ac.ulg.montefiore.run.jahmm.OpdfInteger;
+import be.ac.ulg.montefiore.run.jahmm.OpdfIntegerFactory;
+import be.ac.ulg.montefiore.run.jahmm.toolbox.MarkovGenerator;
+
+/**
+ * Tests for FlatHmm
+ *
+ * @author Shalisa Pattarawuttiwong
+ */
+public class FlatHmmTest {
+
+	/**
+	 * A random HMM whose state 0 is an absorbing destroy state emitting
+	 * symbol 0, as the discrete HMM distances initialize them. Other
+	 * states leave some transitions and symbols at probability 0.
+	 */
+	static Hmm<ObservationInteger> randomHmm(Random rand, int states,
+			int symbols) {
+		Hmm<ObservationInteger> hmm = new Hmm<ObservationInteger>(states,
+				new OpdfIntegerFactory(symbols));
+		double[] destroy = new double[symbols];
+		destroy[0] = 1;
+		hmm.setPi(0, 0);
+		hmm.setOpdf(0, new OpdfInteger(destroy));
+		hmm.setAij(0, 0, 1);
+		for (int j = 1; j < states; j++) {
+			hmm.setAij(0, j, 0);
+		}
+		double[] pi = distribution(rand, states - 1);
+		for (int i = 1; i < states; i++) {
+			hmm.setPi(i, pi[i - 1]);
+			hmm.setOpdf(i, new OpdfInteger(distribution(rand, symbols)));
+			double[] a = distribution(rand, states);
+			for (int j = 0; j < states; j++) {
+				hmm.setAij(i, j, a[j]);
+			}
+		}
+		return hmm;
+	}
+
+	/**
+	 * A random distribution with about a quarter of its values 0
+	 */
+	private static double[] distribution(Random rand, int n) {
+		double[] p = new double[n];
+		double sum = 0;
+		for (int i = 0; i < n; i++) {
+			p[i] = (i > 0 && rand.nextInt(4) == 0) ? 0 : rand.nextDouble();
+			sum += p[i];
+		}
+		for (int i = 0; i < n; i++) {
+			p[i] /= sum;
+		}
+		return p;
+	}
+
+	/**
+	 * Testing that the log probabilities are those of
+	 * ForwardBackwardNaNCalculator, for sequences generated by the HMM
+	 * and by another HMM, which contain symbols of probability 0.
+	 */
+	@Test
+	public final void testLnProbability() {
+		Random rand = new Random(17);
+		for (int trial = 0; trial < 20; trial++) {
+			int states = 2 + rand.nextInt(5);
+			int symbols = 1 + rand.nextInt(10);
+			Hmm<ObservationInteger> hmm = randomHmm(rand, states, symbols);
+			Hmm<ObservationInteger> other = randomHmm(rand, states, symbols);
+			FlatHmm flat = new FlatHmm(hmm);
+			assertEquals(states, flat.numStates());
+			assertEquals(symbols, flat.numSymbols());
+			double[] rows = new double[2 * states];
+			for (Hmm<ObservationInteger> source:
+					java.util.Arrays.asList(hmm, other)) {
+				List<ObservationInteger> oseq =
+						new MarkovGenerator<ObservationInteger>(source)
+						.observationSequence(1 + rand.nextInt(300));
+				double expected =
+						new ForwardBackwardNaNCalculator(oseq, hmm).lnProbability();
+				int[] seq = FlatHmm.toArray(oseq);
+				assertEquals(expected, flat.lnProbability(seq), 0.0);
+				assertEquals(expected, flat.lnProbability(seq, rows), 0.0);
+			}
+		}
+	}
+
+	/**
+	 * Testing that an empty sequence is rejected.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public final void testEmptySequence() {
+		new FlatHmm(randomHmm(new Random(1), 3, 4)).lnProbability(new int[0]);
+	}
+
+}
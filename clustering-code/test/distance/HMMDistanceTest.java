@@ -124,4 +124,68 @@ public class HMMDistanceTest {
         System.out.println(dist);
     }
 
-}
\ No newline at end of file
+    /**
+     * Testing that limiting the correlation keeps a positive definite
+     * covariance matrix and makes the singular one of the destroy state
+     * positive definite.
+     */
+    @Test
+    public void limitCorrelationTest() {
+        double[][] cov = new double[][]{{5.44, 0.16}, {0.16, 1.04}};
+        assertArrayEquals(cov[0], HMMDistance.limitCorrelation(cov)[0], 0.0);
+        assertArrayEquals(cov[1], HMMDistance.limitCorrelation(cov)[1], 0.0);
+        for (double c: new double[]{0.47, -0.47}) {
+            double[][] lim = HMMDistance.limitCorrelation(
+            		new double[][]{{0.47, c}, {c, 0.47}});
+            assertEquals(lim[0][1], lim[1][0], 0.0);
+            assertEquals(Math.signum(c), Math.signum(lim[0][1]), 0.0);
+            assertTrue(lim[0][0] * lim[1][1] - lim[0][1] * lim[1][0] > 0);
+        }
+    }
+
+    /**
+     * Testing that HMMs with gaussians built without sampling give
+     * distances, without console output in quiet mode.
+     */
+    @Test
+    public void closedFormHMMDistTest() throws Exception {
+        readInInstances("./data/testMultiD.arff");
+        HMMDistance hmmD = new HMMDistance();
+        hmmD.setNumStates(3);
+        hmmD.setClosedForm(true);
+        hmmD.setQuiet(true);
+        assertEquals("states=3,closed_form", hmmD.getParameters());
+        PrintStream stdout = System.out;
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(captured));
+        try {
+            for (int i = 1; i < data.numInstances(); i++) {
+                double dist = hmmD.distance(data.instance(0), data.instance(i));
+                assertFalse(Double.isNaN(dist));
+            }
+        } finally {
+            System.setOut(stdout);
+        }
+        assertEquals(0, captured.size());
+    }
+
+    /**
+     * Testing that HMMDistanceSer writes and reads back a distance
+     * matrix of the instances.
+     */
+    @Test
+    public void serializedDistMatrixTest() throws Exception {
+        readInInstances("./data/testMultiD.arff");
+        File f = File.createTempFile("hmmdist", ".ser");
+        f.deleteOnExit();
+        HMMDistanceSer.createDistMtxFile(data, f, 3);
+        DistanceMatrix m = new HMMDistanceSer(f).distMatrix(data);
+        assertEquals(data.numInstances(), m.size());
+        for (int i = 0; i < data.numInstances(); i++) {
+            for (int j = 0; j < data.numInstances(); j++) {
+                assertFalse(Double.isNaN(m.get(i, j)));
+            }
+        }
+    }
+
+}
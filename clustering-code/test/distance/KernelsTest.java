@@ -0,0 +1,109 @@
+package distance;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import weka.core.Instance;
+
+/**
+ * Tests for Kernels, comparing the implementation in use (vectorized
+ * when available) with the scalar one
+ * 
+ * @author Shalisa Pattarawuttiwong
+ */
+public class KernelsTest {
+
+    /**
+     * Testing that the kernels agree with the scalar ones for lengths
+     * that do and do not fill whole vectors, at offsets into the arrays.
+     */
+    @Test
+    public final void testSameAsScalar() throws Exception{
+    	Random rand = new Random(42);
+    	Kernels scalar = new Kernels.Scalar();
+    	for (int len = 0; len < 300; len += 7) {
+    		double[] x = new double[len + 3];
+    		double[] y = new double[len + 5];
+    		for (int i = 0; i < x.length; i++) {
+    			x[i] = rand.nextInt(1000);
+    		}
+    		for (int i = 0; i < y.length; i++) {
+    			y[i] = rand.nextInt(1000);
+    		}
+    		// whole cell counts are summed exactly in any order
+    		assertEquals(scalar.squaredEuclidean(x, 3, y, 5, len),
+    				Kernels.INSTANCE.squaredEuclidean(x, 3, y, 5, len), 0.0);
+    		assertEquals(scalar.manhattan(x, 3, y, 5, len),
+    				Kernels.INSTANCE.manhattan(x, 3, y, 5, len), 0.0);
+    	}
+    }
+
+    /**
+     * Testing that the cells of an edit distance diagonal are the same
+     * as the scalar ones, to the last bit, with fractional values and
+     * windows that are the same.
+     */
+    @Test
+    public final void testEditDiagonal() throws Exception{
+    	Random rand = new Random(7);
+    	Kernels scalar = new Kernels.Scalar();
+    	for (int len = 1; len < 100; len += 3) {
+    		double[] xIn = new double[len];
+    		double[] xOut = new double[len];
+    		double[] yIn = new double[len + 4];
+    		double[] yOut = new double[len + 4];
+    		double[] d2 = new double[len + 1];
+    		double[] d1 = new double[len + 1];
+    		for (int i = 0; i < len; i++) {
+    			xIn[i] = rand.nextInt(4) * 0.7;
+    			xOut[i] = rand.nextInt(4) * 0.3;
+    		}
+    		for (int i = 0; i < yIn.length; i++) {
+    			yIn[i] = rand.nextInt(4) * 0.7;
+    			yOut[i] = rand.nextInt(4) * 0.3;
+    		}
+    		for (int i = 0; i <= len; i++) {
+    			d2[i] = rand.nextDouble() * 10;
+    			d1[i] = rand.nextDouble() * 10;
+    		}
+    		double[] expected = new double[len + 1];
+    		double[] actual = new double[len + 1];
+    		scalar.editDiagonal(xIn, xOut, yIn, yOut, 3, d2, d1, expected, 1, len);
+    		Kernels.INSTANCE.editDiagonal(xIn, xOut, yIn, yOut, 3, d2, d1, 
+    				actual, 1, len);
+    		assertArrayEquals(expected, actual, 0.0);
+    	}
+    }
+
+    /**
+     * Testing that a NaN value anywhere in an instance is still
+     * rejected by the euclidean distance.
+     */
+    @Test
+    public final void testNaNRejected() throws Exception{
+    	EuclideanDistance eucDist = new EuclideanDistance();
+    	Instance x = new Instance(40);
+    	Instance y = new Instance(40);
+    	for (int i = 0; i < 40; i++) {
+    		x.setValue(i, i);
+    		y.setValue(i, 2 * i);
+    	}
+    	x.setValue(37, Double.NaN);
+    	try {
+    		eucDist.distance(x, y);
+    		fail("NaN-valued attribute accepted");
+    	} catch (IllegalArgumentException e) {
+    		// expected
+    	}
+    	PrimitiveInstances store = new PrimitiveInstances(new Instance[]{x, y});
+    	try {
+    		eucDist.distance(store, 1, store, 0);
+    		fail("NaN-valued attribute accepted");
+    	} catch (IllegalArgumentException e) {
+    		// expected
+    	}
+    }
+}
@@ -153,8 +153,56 @@ public class ManhattanDistanceTest {
     	readInInstances("./data/testThreeTwoCloser.arff");
     	double[][] expResult = {{0.0, 5.0, 7.0},{5.0, 0.0, 2.0},{7.0, 2.0, 0.0}};
     	ManhattanDistance manDist = new ManhattanDistance();
-    	double[][] calc = manDist.distMatrix(data);
-    	assertArrayEquals(expResult, calc);
+    	DistanceMatrix calc = manDist.distMatrix(data);
+    	assertEquals(expResult.length, calc.size());
+    	for (int i = 0; i < expResult.length; i++) {
+    		for (int j = 0; j < expResult.length; j++) {
+    			assertEquals(expResult[i][j], calc.get(i, j), 0.0);
+    		}
+    	}
     }
     
+    
+    /**
+     * Testing that the distances from one instance to all the others
+     * are those of the pairwise distance function.
+     */
+    @Test
+    public final void testDistancesTo() throws Exception{
+    	readInInstances("./data/testMultiD.arff");
+    	ManhattanDistance manDist = new ManhattanDistance();
+    	double[] dists = new double[data.numInstances()];
+    	for (int q = 0; q < data.numInstances(); q++) {
+    		manDist.distancesTo(data.instance(q), data, dists);
+    		for (int i = 0; i < data.numInstances(); i++) {
+    			assertEquals(manDist.distance(data.instance(q), data.instance(i)),
+    					dists[i], 0.0);
+    		}
+    	}
+    }
+
+    /**
+     * Testing that the manhattan distance over runs of equal windows
+     * is the distance over the values, but for rounding, and that the
+     * distance between two Instances is over their values.
+     */
+    @Test
+    public final void testRunLength() throws Exception{
+    	readInInstances("./data/seriesdata.arff");
+    	ManhattanDistance manDist = new ManhattanDistance();
+    	ManhattanDistance runs = new ManhattanDistance();
+    	runs.setRunLength(true);
+    	assertEquals("runs", runs.getParameters());
+    	double[] dists = new double[data.numInstances()];
+    	for (int q = 0; q < data.numInstances(); q += 9) {
+    		runs.distancesTo(data.instance(q), data, dists);
+    		for (int i = 0; i < data.numInstances(); i++) {
+    			double d = manDist.distance(data.instance(q), data.instance(i));
+    			assertEquals(d, dists[i], 1e-12 * d);
+    			// a single pair is calculated over the values
+    			assertEquals(d, runs.distance(data.instance(q), 
+    					data.instance(i)), 0.0);
+    		}
+    	}
+    }
 }
@@ -0,0 +1,105 @@
+package distance;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.nio.channels.FileChannel.MapMode;
+
+import org.junit.Test;
+
+import weka.core.Instances;
+
+/**
+ * Tests for MappedDistanceMatrix
+ * 
+ * @author Shalisa Pattarawuttiwong
+ */
+public class MappedDistanceMatrixTest {
+
+	private static Instances data;
+
+    /**
+     * Reads in instances from a .arff file
+     * @param filename   name of the .arff file
+     */
+    public static void readInInstances(String filename)  throws Exception{
+        BufferedReader reader = new BufferedReader(new FileReader(filename));
+        data = new Instances(reader);
+    }
+
+    /**
+     * Testing a matrix spread over several segments, and that
+     * it can be mapped again from its file.
+     */
+    @Test
+    public final void testSegments() throws Exception{
+    	File f = File.createTempFile("distmatrix", ".bin");
+    	f.deleteOnExit();
+    	// 8 distances per segment
+    	MappedDistanceMatrix m = MappedDistanceMatrix.create(f, 10, false, 3);
+    	for (int i = 0; i < 10; i++) {
+    		for (int j = 0; j < i; j++) {
+    			m.set(i, j, i * 0.5 + j);
+    		}
+    	}
+    	m.close();
+    	MappedDistanceMatrix read = MappedDistanceMatrix.open(f, MapMode.READ_ONLY);
+    	assertEquals(10, read.size());
+    	for (int i = 0; i < 10; i++) {
+    		assertEquals(0.0, read.get(i, i), 0.0);
+    		for (int j = 0; j < i; j++) {
+    			assertEquals(i * 0.5 + j, read.get(i, j), 0.0);
+    			assertEquals(i * 0.5 + j, read.get(j, i), 0.0);
+    		}
+    	}
+    }
+
+    /**
+     * Testing that the distance matrix written into a mapped file
+     * holds the same distances as the one on the heap.
+     */
+    @Test
+    public final void testDistMatrixIntoFile() throws Exception{
+    	readInInstances("./data/testMultiD.arff");
+    	File f = File.createTempFile("distmatrix", ".bin");
+    	f.deleteOnExit();
+    	EuclideanDistance eucDist = new EuclideanDistance();
+    	MappedDistanceMatrix m = MappedDistanceMatrix.create(f, data.numInstances());
+    	eucDist.distMatrix(data, m);
+    	DistanceMatrix heap = eucDist.distMatrix(data);
+    	for (int i = 0; i < data.numInstances(); i++) {
+    		for (int j = 0; j < data.numInstances(); j++) {
+    			assertEquals(heap.get(i, j), m.get(i, j), 0.0);
+    		}
+    	}
+    	m.close();
+    }
+
+    /**
+     * Testing that a matrix file is extended in place with the
+     * distances of appended instances.
+     */
+    @Test
+    public final void testExtendDistMatrix() throws Exception{
+    	readInInstances("./data/testMultiD.arff");
+    	Instances first = new Instances(data, 0, 5);
+    	File f = File.createTempFile("distmatrix", ".bin");
+    	f.deleteOnExit();
+    	ManhattanDistance manDist = new ManhattanDistance();
+    	MappedDistanceMatrix m = MappedDistanceMatrix.create(f, first.numInstances());
+    	manDist.distMatrix(first, m);
+    	DistanceMatrix extended = manDist.extendDistMatrix(m, data);
+    	((MappedDistanceMatrix) extended).close();
+    	
+    	DistanceMatrix read = MappedDistanceMatrix.open(f, MapMode.READ_ONLY);
+    	DistanceMatrix heap = manDist.distMatrix(data);
+    	assertEquals(data.numInstances(), read.size());
+    	for (int i = 0; i < data.numInstances(); i++) {
+    		for (int j = 0; j < data.numInstances(); j++) {
+    			assertEquals(heap.get(i, j), read.get(i, j), 0.0);
+    		}
+    	}
+    }
+}
@@ -0,0 +1,125 @@
+package distance;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * Tests for PrimitiveInstances and the distances calculated on it
+ * 
+ * @author Shalisa Pattarawuttiwong
+ */
+public class PrimitiveInstancesTest {
+
+	private static Instances data;
+
+    /**
+     * Reads in instances from a .arff file
+     * @param filename   name of the .arff file
+     */
+    public static void readInInstances(String filename)  throws Exception{
+        BufferedReader reader = new BufferedReader(new FileReader(filename));
+        data = new Instances(reader);
+    }
+
+    /**
+     * Creates an instance with the given attributes
+     * @param attrs  a list of attributes of the instance
+     */
+    private static Instance createInstance(double[] attrs) {
+    	Instance inst = new Instance(attrs.length);
+    	for (int i = 0; i < attrs.length; i++) {
+    		inst.setValue(i, attrs[i]);
+    	}
+    	return inst;
+    }
+
+    /**
+     * Testing that the rows are stored one after the other, and that
+     * the trailing destroy states are left out of the valid length.
+     */
+    @Test
+    public final void testLayout() throws Exception{
+    	Instance[] insts = {
+    			createInstance(new double[]{0.1, 0.2, 0.15, 0.5, -1, -1}),
+    			createInstance(new double[]{-1, -1, 3, 4, -1, -1, -1, -1}),
+    			createInstance(new double[]{2, 3, 4})};
+    	PrimitiveInstances store = new PrimitiveInstances(insts);
+    	assertEquals(3, store.numInstances());
+    	assertEquals(0, store.offset(0));
+    	assertEquals(6, store.offset(1));
+    	assertEquals(14, store.offset(2));
+    	assertEquals(8, store.length(1));
+    	assertEquals(4, store.validLength(0));
+    	assertEquals(4, store.validLength(1));
+    	assertEquals(3, store.validLength(2));
+    	assertEquals(3.0, store.values()[store.offset(1) + 2], 0.0);
+    }
+
+    /**
+     * Testing the sums of the windows before the first destroy state.
+     */
+    @Test
+    public final void testWindowSums() throws Exception{
+    	Instance[] insts = {
+    			createInstance(new double[]{1, 2, 3, 4, -1, -1, 5, 6}),
+    			createInstance(new double[]{-1, -1, 3, 4}),
+    			createInstance(new double[]{2, 3, 4})};
+    	PrimitiveInstances store = new PrimitiveInstances(insts);
+    	assertEquals(2, store.leadingWindows(0));
+    	assertEquals(0, store.leadingWindows(1));
+    	assertEquals(1, store.leadingWindows(2));
+    	assertEquals(0.0, store.inSum(0, 0), 0.0);
+    	assertEquals(4.0, store.inSum(0, 2), 0.0);
+    	assertEquals(6.0, store.outSum(0, 2), 0.0);
+    	assertEquals(0.0, store.outSum(1, 0), 0.0);
+    	assertEquals(3.0, store.outSum(2, 1), 0.0);
+    }
+
+    /**
+     * Testing that equal windows in a row are kept as one run.
+     */
+    @Test
+    public final void testRuns() throws Exception{
+    	Instance[] insts = {
+    			createInstance(new double[]{0, 0, 0, 0, 2, 1, 0, 0, -1, -1, -1, -1}),
+    			createInstance(new double[]{2, 3, 4})};
+    	PrimitiveInstances store = new PrimitiveInstances(insts);
+    	assertEquals(4, store.numRuns(0));
+    	assertEquals(0, store.numRuns(1));
+    	int r = store.runOffset(0);
+    	assertArrayEquals(new int[]{2, 1, 1, 2}, 
+    			Arrays.copyOfRange(store.runCounts(), r, r + 4));
+    	assertEquals(2.0, store.runIns()[r + 1], 0.0);
+    	assertEquals(1.0, store.runOuts()[r + 1], 0.0);
+    	assertEquals(-1.0, store.runIns()[r + 3], 0.0);
+    }
+
+    /**
+     * Testing that the distances calculated on the stored values
+     * are the same as those calculated on the instances.
+     */
+    @Test
+    public final void testSameAsInstanceDistance() throws Exception{
+    	readInInstances("./data/seriesdata.arff");
+    	PrimitiveInstances store = new PrimitiveInstances(data);
+    	PrimitiveDistance[] distFns = {new EuclideanDistance(), 
+    			new ManhattanDistance(), new EditDistance()};
+    	for (PrimitiveDistance distFn: distFns) {
+    		for (int i = 0; i < 30; i++) {
+    			for (int j = 0; j < data.numInstances(); j += 7) {
+    				assertEquals(distFn.distance(data.instance(i), data.instance(j)),
+    						distFn.distance(store, i, store, j), 0.0);
+    			}
+    		}
+    	}
+    }
+}
@@ -0,0 +1,62 @@
+package distance;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Tests for SequentialEstimate
+ *
+ * @author Shalisa Pattarawuttiwong
+ */
+public class SequentialEstimateTest {
+
+	/**
+	 * Testing the mean and the half-width of the confidence interval
+	 * against their definitions.
+	 */
+	@Test
+	public final void testMeanAndHalfWidth() {
+		double[] x = {1.5, 2.0, 0.5, 3.0, 2.5};
+		SequentialEstimate estimate = new SequentialEstimate(0, 2);
+		assertEquals(Double.POSITIVE_INFINITY, estimate.halfWidth(), 0.0);
+		double sum = 0;
+		for (double v: x) {
+			estimate.add(v);
+			sum += v;
+		}
+		double mean = sum / x.length;
+		double ss = 0;
+		for (double v: x) {
+			ss += (v - mean) * (v - mean);
+		}
+		assertEquals(x.length, estimate.count());
+		assertEquals(mean, estimate.mean(), 0.0);
+		assertEquals(SequentialEstimate.Z * Math.sqrt(ss / (x.length - 1) 
+				/ x.length), estimate.halfWidth(), 1e-12);
+		// a tolerance of 0 never stops
+		assertFalse(estimate.done());
+	}
+
+	/**
+	 * Testing that sampling stops once enough samples agree, with the
+	 * tolerance relative to large means.
+	 */
+	@Test
+	public final void testDone() {
+		SequentialEstimate estimate = new SequentialEstimate(0.01, 3);
+		estimate.add(100.0);
+		estimate.add(100.0);
+		// fewer than minSamples
+		assertFalse(estimate.done());
+		estimate.add(100.5);
+		// half-width about 0.33, below 1% of the mean
+		assertTrue(estimate.done());
+
+		estimate = new SequentialEstimate(0.01, 2);
+		estimate.add(0.1);
+		estimate.add(0.2);
+		assertFalse(estimate.done());
+	}
+
+}
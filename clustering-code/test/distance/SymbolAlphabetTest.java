@@ -0,0 +1,170 @@
+package distance;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.junit.Test;
+
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * Tests for SymbolAlphabet
+ *
+ * @author Shalisa Pattarawuttiwong
+ */
+public class SymbolAlphabetTest {
+
+	private static Instances data;
+
+    /**
+     * Reads in instances from a .arff file
+     * @param filename   name of the .arff file
+     */
+    public static void readInInstances(String filename)  throws Exception{
+        BufferedReader reader = new BufferedReader(new FileReader(filename));
+        data = new Instances(reader);
+    }
+
+    /**
+     * The numbering of the symbols by their strings, as the discrete
+     * HMM distances numbered them before.
+     */
+    private static HashMap<String, Integer> stringSymbols(Instance[] insts) {
+    	int length = 0;
+    	for (Instance inst: insts) {
+    		length += inst.numAttributes();
+    	}
+    	double[][] pairs = new double[length/2][];
+    	int pos = 0;
+    	for (Instance inst: insts) {
+    		double[] array = inst.toDoubleArray();
+    		for (int i = 0; i < array.length; i += 2) {
+    			pairs[pos++] = new double[]{array[i], array[i+1]};
+    		}
+    	}
+    	Arrays.sort(pairs, new java.util.Comparator<double[]>() {
+    		public int compare(double[] a, double[] b) {
+    			return Double.compare(a[0], b[0]);
+    		}
+    	});
+    	HashMap<String, Integer> symbols = new HashMap<String, Integer>();
+    	for (double[] pair: pairs) {
+    		String key = Arrays.toString(pair);
+    		if (!symbols.containsKey(key)) {
+    			symbols.put(key, symbols.size());
+    		}
+    	}
+    	return symbols;
+    }
+
+    /**
+     * Testing that the symbols are numbered as by their strings: by
+     * increasing in value, then by first appearance.
+     */
+    @Test
+    public final void testNumbering() throws Exception{
+    	readInInstances("./data/testMultiD.arff");
+    	Instance[] insts = SymbolAlphabet.toArray(data);
+    	SymbolAlphabet alphabet = new SymbolAlphabet(insts);
+    	HashMap<String, Integer> expected = stringSymbols(insts);
+    	assertEquals(expected.size(), alphabet.size());
+    	for (Instance inst: insts) {
+    		int[] seq = alphabet.sequence(inst);
+    		assertEquals(inst.numAttributes() / 2, seq.length);
+    		for (int i = 0; i < seq.length; i++) {
+    			String key = Arrays.toString(new double[]{
+    					inst.value(2*i), inst.value(2*i+1)});
+    			assertEquals((int) expected.get(key), seq[i]);
+    			assertEquals(inst.value(2*i), alphabet.in(seq[i]), 0.0);
+    			assertEquals(inst.value(2*i+1), alphabet.out(seq[i]), 0.0);
+    		}
+    	}
+    	// the destroy state has the smallest in value
+    	assertEquals(0, alphabet.symbol(-1, -1));
+    	assertEquals(-1, alphabet.symbol(100, 100));
+    }
+
+    /**
+     * Testing that 0.0 and -0.0 are different symbols, as their
+     * strings are.
+     */
+    @Test
+    public final void testSignedZeros() throws Exception{
+    	Instance x = new Instance(4);
+    	x.setValue(0, 0.0);
+    	x.setValue(1, 1.0);
+    	x.setValue(2, -0.0);
+    	x.setValue(3, 1.0);
+    	SymbolAlphabet alphabet = new SymbolAlphabet(new Instance[]{x});
+    	assertEquals(2, alphabet.size());
+    	assertEquals(stringSymbols(new Instance[]{x}).size(), alphabet.size());
+    	assertEquals(0, alphabet.symbol(-0.0, 1.0));
+    	assertEquals(1, alphabet.symbol(0.0, 1.0));
+    }
+
+    /**
+     * Testing that the table grows with the distinct symbols rather
+     * than the windows: many windows of few symbols keep it small, and
+     * many symbols are all found after the table has grown.
+     */
+    @Test
+    public final void testTableGrowth() throws Exception{
+    	Instance repeated = new Instance(20000);
+    	for (int i = 0; i < 20000; i += 2) {
+    		repeated.setValue(i, i % 6);
+    		repeated.setValue(i + 1, 0);
+    	}
+    	SymbolAlphabet small = new SymbolAlphabet(new Instance[]{repeated});
+    	assertEquals(3, small.size());
+    	assertTrue(small.capacity() <= 64);
+
+    	Instance distinct = new Instance(20000);
+    	for (int i = 0; i < 20000; i += 2) {
+    		distinct.setValue(i, i / 2);
+    		distinct.setValue(i + 1, -i);
+    	}
+    	SymbolAlphabet large = new SymbolAlphabet(new Instance[]{distinct});
+    	assertEquals(10000, large.size());
+    	assertTrue(large.capacity() >= 2 * large.size());
+    	assertTrue(large.capacity() < 4 * large.size());
+    	int[] seq = large.sequence(distinct);
+    	for (int s = 0; s < seq.length; s++) {
+    		// numbered by increasing in value
+    		assertEquals(s, seq[s]);
+    		assertEquals(-2.0 * s, large.out(s), 0.0);
+    	}
+    	assertEquals(-1, large.symbol(0, 1));
+    }
+
+    /**
+     * Testing that pairs outside the alphabet are mapped to the closest
+     * symbol, and pairs in it to themselves.
+     */
+    @Test
+    public final void testNearestSymbol() throws Exception{
+    	Instance x = new Instance(6);
+    	x.setValue(0, -1);
+    	x.setValue(1, -1);
+    	x.setValue(2, 2);
+    	x.setValue(3, 3);
+    	x.setValue(4, 10);
+    	x.setValue(5, 0);
+    	SymbolAlphabet alphabet = new SymbolAlphabet(new Instance[]{x});
+    	assertEquals(1, alphabet.nearestSymbol(2, 3));
+    	assertEquals(1, alphabet.nearestSymbol(2.5, 2));
+    	assertEquals(2, alphabet.nearestSymbol(8, 1));
+    	assertEquals(0, alphabet.nearestSymbol(-0.5, -1));
+    	Instance y = new Instance(4);
+    	y.setValue(0, 2);
+    	y.setValue(1, 3);
+    	y.setValue(2, 9.5);
+    	y.setValue(3, 0.5);
+    	assertArrayEquals(new int[]{1, 2}, alphabet.nearestSequence(y));
+    }
+
+}
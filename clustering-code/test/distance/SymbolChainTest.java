@@ -0,0 +1,77 @@
+package distance;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import be.ac.ulg.montefiore.run.jahmm.Hmm;
+import be.ac.ulg.montefiore.run.jahmm.ObservationInteger;
+import be.ac.ulg.montefiore.run.jahmm.OpdfInteger;
+import be.ac.ulg.montefiore.run.jahmm.OpdfIntegerFactory;
+
+/**
+ * Tests for SymbolChain
+ *
+ * @author Shalisa Pattarawuttiwong
+ */
+public class SymbolChainTest {
+
+	/**
+	 * An HMM of one state emitting independent symbols
+	 */
+	private static Hmm<ObservationInteger> independent(double[] p) {
+		Hmm<ObservationInteger> hmm = new Hmm<ObservationInteger>(1,
+				new OpdfIntegerFactory(p.length));
+		hmm.setOpdf(0, new OpdfInteger(p));
+		return hmm;
+	}
+
+	/**
+	 * Testing that the KL rate between HMMs emitting independent
+	 * symbols is the KL divergence between their distributions.
+	 */
+	@Test
+	public final void testIndependentSymbols() {
+		double[] p = {0.5, 0.3, 0.2};
+		double[] q = {0.2, 0.2, 0.6};
+		SymbolChain cp = new SymbolChain(independent(p), 500);
+		SymbolChain cq = new SymbolChain(independent(q), 500);
+		double expected = 0.;
+		for (int o = 0; o < p.length; o++) {
+			expected += p[o] * Math.log(p[o] / q[o]);
+		}
+		assertEquals(3, cp.numSymbols());
+		assertEquals(expected, cp.klRate(cq), 1e-5);
+		assertEquals(0.0, cp.klRate(cp), 0.0);
+	}
+
+	/**
+	 * Testing that the rates between random HMMs with a destroy state
+	 * are finite and not negative, including symbols one of them cannot
+	 * emit, and that the number of symbols must match.
+	 */
+	@Test
+	public final void testRandomHmms() {
+		Random rand = new Random(23);
+		for (int trial = 0; trial < 20; trial++) {
+			int states = 2 + rand.nextInt(4);
+			int symbols = 2 + rand.nextInt(6);
+			SymbolChain x = new SymbolChain(
+					FlatHmmTest.randomHmm(rand, states, symbols), 500);
+			SymbolChain y = new SymbolChain(
+					FlatHmmTest.randomHmm(rand, states, symbols), 500);
+			double rate = x.klRate(y);
+			assertTrue(rate >= 0 && !Double.isInfinite(rate));
+			assertEquals(0.0, x.klRate(x), 1e-12);
+		}
+		try {
+			new SymbolChain(FlatHmmTest.randomHmm(rand, 3, 4), 500).klRate(
+					new SymbolChain(FlatHmmTest.randomHmm(rand, 3, 5), 500));
+			fail("Expected IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+}
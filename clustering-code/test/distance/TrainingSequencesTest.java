@@ -0,0 +1,69 @@
+package distance;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for TrainingSequences
+ *
+ * @author Shalisa Pattarawuttiwong
+ */
+public class TrainingSequencesTest {
+
+	/**
+	 * Testing that the observed symbols are split at runs of destroy
+	 * symbols, that the padding stays on the last segment, and that
+	 * segments too short to train on are left out.
+	 */
+	@Test
+	public final void testObserved() {
+		int[][] segments = TrainingSequences.observed(
+				new int[] {0, 1, 2, 3, 0, 0, 4, 0, 2, 1, 0, 0});
+		assertEquals(2, segments.length);
+		assertArrayEquals(new int[] {1, 2, 3}, segments[0]);
+		assertArrayEquals(new int[] {2, 1, 0, 0}, segments[1]);
+
+		segments = TrainingSequences.observed(new int[] {3, 0, 0, 0});
+		assertEquals(1, segments.length);
+		assertArrayEquals(new int[] {3, 0, 0, 0}, segments[0]);
+
+		assertEquals(0, TrainingSequences.observed(new int[] {0, 0, 0}).length);
+		assertEquals(0, TrainingSequences.observed(new int[] {5}).length);
+	}
+
+	/**
+	 * Testing that the bootstrap resamples follow the segments, have
+	 * their lengths and padding, and only hold their symbols.
+	 */
+	@Test
+	public final void testBootstrap() {
+		int[][] segments = new int[][] {
+				{1, 2, 3, 4, 5, 6, 7, 8, 9, 0, 0},
+				{4, 5}};
+		int[][] sequences = TrainingSequences.bootstrap(segments, 3,
+				new Random(3));
+		assertEquals(8, sequences.length);
+		assertSame(segments[0], sequences[0]);
+		assertSame(segments[1], sequences[1]);
+		for (int s = 2; s < sequences.length; s++) {
+			int[] segment = segments[s % 2];
+			int[] resample = sequences[s];
+			assertEquals(segment.length, resample.length);
+			int active = (s % 2 == 0) ? 9 : 2;
+			for (int t = 0; t < resample.length; t++) {
+				if (t < active) {
+					assertTrue(resample[t] > 0);
+					assertTrue(Arrays.binarySearch(segment, 0, active,
+							resample[t]) >= 0);
+				} else {
+					assertEquals(0, resample[t]);
+				}
+			}
+		}
+	}
+
+}